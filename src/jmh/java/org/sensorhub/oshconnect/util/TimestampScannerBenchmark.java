@@ -0,0 +1,101 @@
+package org.sensorhub.oshconnect.util;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sensorhub.oshconnect.net.RequestFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the time stamp extraction of {@link TimestampScanner} with the previous implementation of
+ * {@code StreamListener.determineTimestamp}, for each format.
+ * Run with {@code ./gradlew jmh}; add {@code -prof gc} to the JMH arguments to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampScannerBenchmark {
+    private static final String DATE_TIME = "2024-05-14T18:32:07.123Z";
+    private static final String DATE_REGEX_XML = "<[^>]+>(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d+Z)</[^>]+>";
+
+    @Param({"JSON", "SWE_XML", "SWE_CSV", "SWE_BINARY"})
+    public RequestFormat format;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        switch (format) {
+            case JSON -> data = bytes("{\"id\":\"0k7g2v4d1c20\",\"datastream@id\":\"038q21d6vrs0\",\"samplingFeature@id\":\"0hf4g0e3rqkg\","
+                    + "\"phenomenonTime\":\"" + DATE_TIME + "\",\"resultTime\":\"" + DATE_TIME + "\","
+                    + "\"result\":{\"temperature\":21.5,\"pressure\":1013.25,\"windSpeed\":3.2,\"windDirection\":270.0}}");
+            case SWE_XML -> data = bytes("<swe:DataRecord><swe:field name=\"time\"><swe:Time>" + DATE_TIME + "</swe:Time></swe:field>"
+                    + "<swe:field name=\"temperature\"><swe:Quantity>21.5</swe:Quantity></swe:field></swe:DataRecord>");
+            case SWE_CSV -> data = bytes(DATE_TIME + ",21.5,1013.25,3.2,270.0\n");
+            case SWE_BINARY -> data = ByteBuffer.allocate(40)
+                    .putDouble(Instant.parse(DATE_TIME).toEpochMilli() / 1000.0)
+                    .putDouble(21.5).putDouble(1013.25).putDouble(3.2).putDouble(270.0)
+                    .array();
+            default -> throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    @Benchmark
+    public long scanner() {
+        return switch (format) {
+            case JSON -> TimestampScanner.scanJson(data, 0, data.length);
+            case SWE_XML -> TimestampScanner.scanXml(data, 0, data.length);
+            case SWE_CSV -> TimestampScanner.scanCsv(data, 0, data.length);
+            case SWE_BINARY -> TimestampScanner.scanBinary(data, 0, data.length);
+            default -> -1;
+        };
+    }
+
+    @Benchmark
+    public long legacy() {
+        switch (format) {
+            case JSON -> {
+                JSONObject json = new JSONObject(new String(data));
+                return Instant.parse(json.getString("phenomenonTime")).toEpochMilli();
+            }
+            case SWE_XML -> {
+                Matcher matcher = Pattern.compile(DATE_REGEX_XML).matcher(new String(data));
+                return matcher.find() ? Instant.parse(matcher.group(1)).toEpochMilli() : -1;
+            }
+            case SWE_CSV -> {
+                String[] parts = new String(data).split(",");
+                return Instant.parse(parts[0]).toEpochMilli();
+            }
+            case SWE_BINARY -> {
+                ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOfRange(data, 0, 8));
+                return (long) (buffer.getDouble() * 1000);
+            }
+            default -> {
+                return -1;
+            }
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,298 @@
+package org.sensorhub.oshconnect;
+
+import org.sensorhub.oshconnect.net.RequestExecutors;
+import org.sensorhub.oshconnect.net.RequestLimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Discovers systems, data streams, and control streams on all nodes concurrently.
+ * <p>
+ * Discovery fans out across nodes, then across the systems of each node,
+ * with at most {@link #getMaxConcurrency()} discovery requests running at the same time.
+ * Each node must complete within {@link #getNodeTimeout()}, counted from the moment its first request starts,
+ * so nodes waiting for a free slot are not timed out;
+ * a node that fails or times out is reported in {@link DiscoveryResult#getFailures()}
+ * without holding up the other nodes, and none of its resources are added to the result.
+ */
+public class DiscoveryManager {
+    /**
+     * The default maximum number of discovery requests running at the same time.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+    /**
+     * The default maximum time discovery may take on a single node.
+     */
+    public static final Duration DEFAULT_NODE_TIMEOUT = Duration.ofSeconds(30);
+
+    private static Executor defaultExecutor;
+
+    private final NodeManager nodeManager;
+    private Executor executor;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private Duration nodeTimeout = DEFAULT_NODE_TIMEOUT;
+
+    /**
+     * Package-private constructor, to be used by OSHConnect.
+     */
+    DiscoveryManager(NodeManager nodeManager) {
+        this.nodeManager = nodeManager;
+    }
+
+    /**
+     * Discover the systems of all nodes, then the data streams and control streams of these systems.
+     *
+     * @return A future completed with the discovered resources once every node has completed, failed, or timed out.
+     */
+    public CompletableFuture<DiscoveryResult> discoverAll() {
+        return discover(true, true, true);
+    }
+
+    /**
+     * Discover the systems of all nodes.
+     *
+     * @return A future completed with the discovered systems once every node has completed, failed, or timed out.
+     */
+    public CompletableFuture<DiscoveryResult> discoverSystems() {
+        return discover(true, false, false);
+    }
+
+    /**
+     * Discover the data streams of the systems previously discovered on all nodes.
+     *
+     * @return A future completed with the discovered data streams once every node has completed, failed, or timed out.
+     */
+    public CompletableFuture<DiscoveryResult> discoverDataStreams() {
+        return discover(false, true, false);
+    }
+
+    /**
+     * Discover the control streams of the systems previously discovered on all nodes.
+     *
+     * @return A future completed with the discovered control streams once every node has completed, failed, or timed out.
+     */
+    public CompletableFuture<DiscoveryResult> discoverControlStreams() {
+        return discover(false, false, true);
+    }
+
+    private CompletableFuture<DiscoveryResult> discover(boolean systems, boolean dataStreams, boolean controlStreams) {
+        DiscoveryResult result = new DiscoveryResult();
+        RequestLimiter limiter = new RequestLimiter(maxConcurrency);
+        Executor taskExecutor = executor != null ? executor : getDefaultExecutor();
+
+        List<CompletableFuture<Void>> nodeTasks = new ArrayList<>();
+        for (OSHNode node : nodeManager.getNodes()) {
+            NodeDiscovery discovery = new NodeDiscovery(node, nodeTimeout);
+
+            CompletableFuture<List<OSHSystem>> nodeSystems;
+            if (systems) {
+                nodeSystems = run(limiter, taskExecutor, discovery, node::discoverSystems)
+                        .thenApply(discovered -> {
+                            discovery.addToResult(() -> result.addSystems(discovered));
+                            return discovered;
+                        });
+            } else {
+                nodeSystems = CompletableFuture.completedFuture(node.getSystems());
+            }
+
+            nodeSystems.thenCompose(discovered -> {
+                // Systems hold their own data streams and control streams, so they can be discovered concurrently
+                List<CompletableFuture<?>> systemTasks = new ArrayList<>();
+                for (OSHSystem system : discovered) {
+                    if (dataStreams) {
+                        systemTasks.add(run(limiter, taskExecutor, discovery, system::discoverDataStreams)
+                                .thenAccept(found -> discovery.addToResult(() -> result.addDataStreams(found))));
+                    }
+                    if (controlStreams) {
+                        systemTasks.add(run(limiter, taskExecutor, discovery, system::discoverControlStreams)
+                                .thenAccept(found -> discovery.addToResult(() -> result.addControlStreams(found))));
+                    }
+                }
+                return CompletableFuture.allOf(systemTasks.toArray(new CompletableFuture[0]));
+            }).whenComplete(discovery::complete);
+
+            nodeTasks.add(discovery.outcome
+                    .exceptionally(error -> {
+                        result.addFailure(node, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                        return null;
+                    }));
+        }
+
+        return CompletableFuture.allOf(nodeTasks.toArray(new CompletableFuture[0]))
+                .thenApply(done -> result);
+    }
+
+    /**
+     * Run a blocking discovery call on the executor, within the concurrency limit.
+     * The timeout of the node starts when its first call leaves the limiter;
+     * once the node has timed out, its calls still waiting in the limiter are skipped.
+     */
+    private static <T> CompletableFuture<T> run(RequestLimiter limiter, Executor executor, NodeDiscovery discovery, Callable<T> call) {
+        return limiter.submit(() -> {
+            if (!discovery.start()) {
+                return CompletableFuture.failedFuture(new CancellationException("Node discovery timed out."));
+            }
+
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return call.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        });
+    }
+
+    /**
+     * The progress of a discovery on a single node.
+     */
+    private static class NodeDiscovery {
+        private final OSHNode node;
+        private final Duration timeout;
+        /**
+         * Completed once every call of the node has completed, or when the node fails or times out.
+         */
+        private final CompletableFuture<Void> outcome = new CompletableFuture<>();
+        private boolean started;
+        private boolean timedOut;
+
+        NodeDiscovery(OSHNode node, Duration timeout) {
+            this.node = node;
+            this.timeout = timeout;
+        }
+
+        /**
+         * Start the timeout when called for the first time.
+         *
+         * @return false if the node has already timed out.
+         */
+        synchronized boolean start() {
+            if (timedOut) return false;
+
+            if (!started) {
+                started = true;
+                CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(this::timeOut);
+            }
+            return true;
+        }
+
+        private synchronized void timeOut() {
+            if (outcome.isDone()) return;
+
+            timedOut = true;
+            outcome.completeExceptionally(new TimeoutException("Discovery timed out on node " + node.getName() + "."));
+        }
+
+        /**
+         * Add the resources discovered by a call to the result, unless the node has timed out meanwhile.
+         */
+        synchronized void addToResult(Runnable add) {
+            if (!timedOut) {
+                add.run();
+            }
+        }
+
+        void complete(Void done, Throwable error) {
+            if (error != null) {
+                outcome.completeExceptionally(error);
+            } else {
+                outcome.complete(null);
+            }
+        }
+    }
+
+    /**
+     * The executor used when none is set, created on first use.
+     * Discovery calls block while their responses are decoded on the request executor,
+     * so they must not share a bounded pool with it.
+     */
+    private static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            if (RequestExecutors.isVirtualThreadSupported()) {
+                defaultExecutor = RequestExecutors.newVirtualThreadExecutor();
+            } else {
+                // The number of threads is bounded by the maximum concurrency of each discovery
+                AtomicInteger count = new AtomicInteger();
+                defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "oshconnect-discovery-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * The executor running discovery calls.
+     * If null, a dedicated executor is used.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor running discovery calls, which block while waiting for the nodes.
+     * It must not be a bounded executor also used as the request executor of the nodes,
+     * or discovery calls may wait for responses that have no thread left to be decoded on.
+     *
+     * @param executor The executor, or null to use a dedicated executor.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * The maximum number of discovery requests running at the same time, across all nodes.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of discovery requests running at the same time, across all nodes.
+     * Requests to a single node are also bounded by its maximum number of connections.
+     *
+     * @param maxConcurrency The maximum number of concurrent discovery requests.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Maximum concurrency must be greater than 0");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * The maximum time discovery may take on a single node.
+     */
+    public Duration getNodeTimeout() {
+        return nodeTimeout;
+    }
+
+    /**
+     * Sets the maximum time discovery may take on a single node, from the moment its first request starts.
+     * A node exceeding it is reported as failed with a {@link TimeoutException},
+     * and its requests still waiting for a free slot are not sent;
+     * requests already sent to the node are not interrupted and may still update its resources,
+     * until they complete or reach the request timeout of the node, see {@link OSHNode#setRequestTimeoutMS(long)}.
+     *
+     * @param nodeTimeout The timeout.
+     */
+    public void setNodeTimeout(Duration nodeTimeout) {
+        if (nodeTimeout == null || nodeTimeout.isZero() || nodeTimeout.isNegative()) {
+            throw new IllegalArgumentException("Node timeout must be positive");
+        }
+        this.nodeTimeout = nodeTimeout;
+    }
+}
@@ -0,0 +1,75 @@
+package org.sensorhub.oshconnect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a discovery across several nodes.
+ * Holds everything discovered on the nodes that answered,
+ * along with the error of each node that failed or timed out.
+ */
+public class DiscoveryResult {
+    private final List<OSHSystem> systems = new ArrayList<>();
+    private final List<OSHDataStream> dataStreams = new ArrayList<>();
+    private final List<OSHControlStream> controlStreams = new ArrayList<>();
+    private final Map<OSHNode, Throwable> failures = new LinkedHashMap<>();
+
+    DiscoveryResult() {
+    }
+
+    synchronized void addSystems(Collection<OSHSystem> systems) {
+        this.systems.addAll(systems);
+    }
+
+    synchronized void addDataStreams(Collection<OSHDataStream> dataStreams) {
+        this.dataStreams.addAll(dataStreams);
+    }
+
+    synchronized void addControlStreams(Collection<OSHControlStream> controlStreams) {
+        this.controlStreams.addAll(controlStreams);
+    }
+
+    synchronized void addFailure(OSHNode node, Throwable error) {
+        failures.putIfAbsent(node, error);
+    }
+
+    /**
+     * The systems discovered.
+     */
+    public synchronized List<OSHSystem> getSystems() {
+        return List.copyOf(systems);
+    }
+
+    /**
+     * The data streams discovered.
+     */
+    public synchronized List<OSHDataStream> getDataStreams() {
+        return List.copyOf(dataStreams);
+    }
+
+    /**
+     * The control streams discovered.
+     */
+    public synchronized List<OSHControlStream> getControlStreams() {
+        return List.copyOf(controlStreams);
+    }
+
+    /**
+     * The nodes for which discovery failed or timed out, with the first error of each node.
+     * Resources discovered on these nodes before the error are still included in the results.
+     */
+    public synchronized Map<OSHNode, Throwable> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    /**
+     * Whether discovery succeeded on every node.
+     */
+    public synchronized boolean isComplete() {
+        return failures.isEmpty();
+    }
+}
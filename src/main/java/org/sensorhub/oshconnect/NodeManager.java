@@ -1,6 +1,7 @@
 package org.sensorhub.oshconnect;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 
 public class NodeManager {
     /**
@@ -8,6 +9,18 @@ public class NodeManager {
      */
     private final Set<OSHNode> oshNodes = new HashSet<>();
     private final NotificationManager notificationManager;
+    /**
+     * The executor running REST requests for all nodes, or null to use the default executor.
+     */
+    private Executor requestExecutor;
+    /**
+     * The maximum number of requests in flight to each node, or zero or less to keep the setting of each node.
+     */
+    private int maxRequestsPerNode;
+    /**
+     * The executor running WebSocket connections for all nodes, or null to keep the setting of each node.
+     */
+    private Executor webSocketExecutor;
 
     NodeManager(NotificationManager notificationManager) {
         this.notificationManager = notificationManager;
@@ -30,6 +43,9 @@ public class NodeManager {
                 return false;
         }
 
+        oshNode.applyRequestSettings(requestExecutor, maxRequestsPerNode);
+        if (webSocketExecutor != null)
+            oshNode.setWebSocketExecutor(webSocketExecutor);
         oshNodes.add(oshNode);
         notificationManager.notifyNodeAdded(oshNode);
         return true;
@@ -93,7 +109,32 @@ public class NodeManager {
                 .orElse(null);
     }
 
+    /**
+     * Sets the executor running REST requests for all nodes, including nodes added later.
+     */
+    void setRequestExecutor(Executor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+        oshNodes.forEach(node -> node.setRequestExecutor(requestExecutor));
+    }
+
+    /**
+     * Sets the maximum number of requests in flight to each node, including nodes added later.
+     */
+    void setMaxRequestsPerNode(int maxRequestsPerNode) {
+        this.maxRequestsPerNode = maxRequestsPerNode;
+        oshNodes.forEach(node -> node.setMaxConnections(maxRequestsPerNode));
+    }
+
+    /**
+     * Sets the executor running WebSocket connections for all nodes, including nodes added later.
+     */
+    void setWebSocketExecutor(Executor webSocketExecutor) {
+        this.webSocketExecutor = webSocketExecutor;
+        oshNodes.forEach(node -> node.setWebSocketExecutor(webSocketExecutor));
+    }
+
     void shutdown() {
+        oshNodes.forEach(node -> node.getWebSocketClient().stop());
         removeAllNodes();
     }
 }
@@ -2,10 +2,15 @@ package org.sensorhub.oshconnect;
 
 import org.sensorhub.oshconnect.config.ConfigManager;
 import org.sensorhub.oshconnect.config.ConfigManagerJson;
+import org.sensorhub.oshconnect.net.ConSysApiClientExtras;
+import org.sensorhub.oshconnect.net.RequestExecutors;
+import org.sensorhub.oshconnect.time.SharedTimingService;
+import org.sensorhub.oshconnect.time.TimingService;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * OSHConnect is the main class for connecting to OpenSensorHub servers and managing data streams.
@@ -31,10 +36,36 @@ public class OSHConnect {
      * The notification manager, used to notify listeners of changes to nodes, systems, and data streams.
      */
     private final NotificationManager notificationManager;
+    /**
+     * The discovery manager, used to discover resources on all nodes concurrently.
+     */
+    private final DiscoveryManager discoveryManager;
     /**
      * The configuration manager, used to export and import configuration data.
      */
     private ConfigManager configManager = new ConfigManagerJson(this);
+    /**
+     * The executor running REST requests and response decoding for all nodes.
+     * If null, {@link RequestExecutors#getDefaultExecutor()} is used.
+     */
+    private Executor requestExecutor;
+    /**
+     * The maximum number of REST requests in flight to each node.
+     */
+    private int maxRequestsPerNode = ConSysApiClientExtras.DEFAULT_MAX_CONNECTIONS;
+    /**
+     * The executor running WebSocket connections for all nodes.
+     * If null, each node's WebSocket client creates its own thread pool.
+     */
+    private Executor webSocketExecutor;
+    /**
+     * The timing service driving the time synchronization of all stream handlers.
+     */
+    private TimingService timingService;
+    /**
+     * The timing service created by this instance, stopped by {@link #shutdown()}.
+     */
+    private final SharedTimingService ownTimingService = new SharedTimingService();
 
     /**
      * Create a new OSHConnect instance.
@@ -54,6 +85,8 @@ public class OSHConnect {
         this.controlStreamManager = new StreamManager();
         this.notificationManager = new NotificationManager();
         this.nodeManager = new NodeManager(notificationManager);
+        this.discoveryManager = new DiscoveryManager(nodeManager);
+        setTimingService(ownTimingService);
     }
 
     /**
@@ -78,49 +111,45 @@ public class OSHConnect {
 
     /**
      * Query all nodes for their systems.
+     * Nodes are queried concurrently; see {@link DiscoveryManager} for the concurrency limit and node timeout.
      *
      * @return A list of all systems discovered by OSHConnect.
+     * @throws ExecutionException If discovery failed or timed out on any node.
+     *                            Use {@link DiscoveryManager#discoverSystems()} to get partial results instead.
      */
     public List<OSHSystem> discoverSystems() throws ExecutionException, InterruptedException {
-        List<OSHSystem> result = new ArrayList<>();
-        for (OSHNode node : nodeManager.getNodes()) {
-            result.addAll(node.discoverSystems());
-        }
-        return result;
+        return checkComplete(discoveryManager.discoverSystems().get()).getSystems();
     }
 
     /**
      * Query all nodes for their data streams for all systems previously discovered by OSHConnect.
      * This method should be called after discoverSystems().
-     * Note: This method may take a long time to complete if there are many systems and data streams to discover;
-     * it is recommended to call {@link OSHSystem#discoverDataStreams()} on individual systems containing the data streams of interest.
+     * Nodes and systems are queried concurrently; see {@link DiscoveryManager} for the concurrency limit and node timeout.
      *
      * @return A list of all data streams discovered by OSHConnect.
+     * @throws ExecutionException If discovery failed or timed out on any node.
+     *                            Use {@link DiscoveryManager#discoverDataStreams()} to get partial results instead.
      */
     public List<OSHDataStream> discoverDataStreams() throws ExecutionException, InterruptedException {
-        List<OSHDataStream> result = new ArrayList<>();
-        for (OSHNode node : nodeManager.getNodes()) {
-            for (OSHSystem system : node.getSystems()) {
-                result.addAll(system.discoverDataStreams());
-            }
-        }
-        return result;
+        return checkComplete(discoveryManager.discoverDataStreams().get()).getDataStreams();
     }
 
     /**
      * Query all nodes for their control streams for all systems previously discovered by OSHConnect.
      * This method should be called after discoverSystems().
-     * Note: This method may take a long time to complete if there are many systems and control streams to discover;
-     * it is recommended to call {@link OSHSystem#discoverControlStreams()} on individual systems containing the control streams of interest.
+     * Nodes and systems are queried concurrently; see {@link DiscoveryManager} for the concurrency limit and node timeout.
      *
      * @return A list of all control streams discovered by OSHConnect.
+     * @throws ExecutionException If discovery failed or timed out on any node.
+     *                            Use {@link DiscoveryManager#discoverControlStreams()} to get partial results instead.
      */
     public List<OSHControlStream> discoverControlStreams() throws ExecutionException, InterruptedException {
-        List<OSHControlStream> result = new ArrayList<>();
-        for (OSHNode node : nodeManager.getNodes()) {
-            for (OSHSystem system : node.getSystems()) {
-                result.addAll(system.discoverControlStreams());
-            }
+        return checkComplete(discoveryManager.discoverControlStreams().get()).getControlStreams();
+    }
+
+    private static DiscoveryResult checkComplete(DiscoveryResult result) throws ExecutionException {
+        if (!result.isComplete()) {
+            throw new ExecutionException(result.getFailures().values().iterator().next());
         }
         return result;
     }
@@ -171,6 +200,7 @@ public class OSHConnect {
         dataStreamManager.shutdown();
         nodeManager.shutdown();
         notificationManager.shutdown();
+        ownTimingService.shutdown();
     }
 
     /**
@@ -208,6 +238,100 @@ public class OSHConnect {
         return notificationManager;
     }
 
+    /**
+     * The executor running REST requests and response decoding for all nodes.
+     * If null, {@link RequestExecutors#getDefaultExecutor()} is used.
+     */
+    public Executor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * Sets the executor running REST requests and response decoding for all nodes,
+     * including nodes added later.
+     * Use {@link RequestExecutors#newVirtualThreadExecutor()} on Java 21 or later,
+     * or {@link RequestExecutors#newBoundedExecutor(int, int)} to bound the number of threads and queued tasks.
+     * Note: The executor is not shut down by {@link #shutdown()}; it remains owned by the caller.
+     *
+     * @param requestExecutor The executor, or null to use the default executor.
+     */
+    public void setRequestExecutor(Executor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+        nodeManager.setRequestExecutor(requestExecutor);
+    }
+
+    /**
+     * The executor running WebSocket connections for all nodes.
+     * If null, each node's WebSocket client creates its own thread pool.
+     */
+    public Executor getWebSocketExecutor() {
+        return webSocketExecutor;
+    }
+
+    /**
+     * Sets the executor running WebSocket connections for all nodes, including nodes added later,
+     * so that all stream listeners share a single pool of threads.
+     * The WebSocket clients of the nodes are replaced, so this can only be called while no connection is open.
+     * Note: The executor is not shut down by {@link #shutdown()}; it remains owned by the caller.
+     *
+     * @param webSocketExecutor The executor, or null to let each node's WebSocket client create its own thread pool.
+     * @throws IllegalStateException if WebSocket connections to a node are open.
+     */
+    public void setWebSocketExecutor(Executor webSocketExecutor) {
+        this.webSocketExecutor = webSocketExecutor;
+        nodeManager.setWebSocketExecutor(webSocketExecutor);
+    }
+
+    /**
+     * The timing service driving the time synchronization of all stream handlers.
+     * By default, a single timer thread owned by this instance.
+     */
+    public TimingService getTimingService() {
+        return timingService;
+    }
+
+    /**
+     * Sets the timing service driving the time synchronization of all stream handlers,
+     * including handlers added later.
+     * Note: A timing service set with this method is not shut down by {@link #shutdown()}; it remains owned by the caller.
+     *
+     * @param timingService The timing service, or null to use the timing service owned by this instance.
+     */
+    public void setTimingService(TimingService timingService) {
+        this.timingService = timingService != null ? timingService : ownTimingService;
+        dataStreamManager.setTimingService(this.timingService);
+        controlStreamManager.setTimingService(this.timingService);
+    }
+
+    /**
+     * The maximum number of REST requests in flight to each node.
+     */
+    public int getMaxRequestsPerNode() {
+        return maxRequestsPerNode;
+    }
+
+    /**
+     * Sets the maximum number of REST requests in flight to each node, including nodes added later.
+     * Requests beyond the limit are queued without holding a thread,
+     * so a slow node cannot exhaust the request executor.
+     *
+     * @param maxRequestsPerNode The maximum number of concurrent requests per node.
+     */
+    public void setMaxRequestsPerNode(int maxRequestsPerNode) {
+        if (maxRequestsPerNode <= 0) {
+            throw new IllegalArgumentException("Maximum requests per node must be greater than 0");
+        }
+        this.maxRequestsPerNode = maxRequestsPerNode;
+        nodeManager.setMaxRequestsPerNode(maxRequestsPerNode);
+    }
+
+    /**
+     * The discovery manager, used to discover resources on all nodes concurrently.
+     */
+    public DiscoveryManager getDiscoveryManager() {
+        return discoveryManager;
+    }
+
     /**
      * The configuration manager, used to export and import configuration data.
      */
@@ -4,18 +4,50 @@ import org.sensorhub.api.data.IDataStreamInfo;
 import org.sensorhub.impl.service.consys.client.ConSysApiClient;
 import org.sensorhub.impl.service.consys.resource.ResourceFormat;
 import org.sensorhub.oshconnect.constants.Service;
+import org.sensorhub.oshconnect.datamodels.CollectionPage;
+import org.sensorhub.oshconnect.datamodels.Link;
 import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.datamodels.ObservationDecoder;
+import org.sensorhub.oshconnect.datamodels.ObservationDecoderOmJson;
+import org.sensorhub.oshconnect.datamodels.ObservationDecoderSwe;
 import org.sensorhub.oshconnect.net.ConSysApiClientExtras;
+import org.sensorhub.oshconnect.net.ObservationBatchPublisher;
+import org.sensorhub.oshconnect.net.ObservationSpool;
+import org.sensorhub.oshconnect.net.PagedObservationIterator;
+import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.net.ShardedObservationDownload;
 import org.sensorhub.oshconnect.util.ObservationsQueryBuilder;
+import org.sensorhub.oshconnect.util.QueryStringBuilder;
 import org.sensorhub.oshconnect.util.Utilities;
+import org.vast.util.TimeExtent;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class OSHDataStream implements OSHStream {
     private final OSHSystem parentSystem;
     private final String id;
     private IDataStreamInfo dataStreamResource;
+    private transient ObservationSpool spool;
+    /**
+     * The observation decoders by format, prepared for {@link #decodersDataStreamResource}.
+     */
+    private transient Map<RequestFormat, ObservationDecoder> observationDecoders;
+    private transient IDataStreamInfo decodersDataStreamResource;
 
     public OSHDataStream(OSHSystem parentSystem, String id, IDataStreamInfo dataStreamResource) {
         this.parentSystem = parentSystem;
@@ -62,16 +94,265 @@ public class OSHDataStream implements OSHStream {
         return getConnectedSystemsApiClientExtras().getObservations(this.id, dataStreamResource, query).get();
     }
 
+    /**
+     * Query the node for the observations of this data stream with the specified parameters,
+     * requesting the given format.
+     * {@link ResourceFormat#SWE_BINARY} avoids text parsing for numeric data streams,
+     * and falls back to {@link ResourceFormat#OM_JSON} if the node does not support it for this data stream.
+     *
+     * @param query  The query parameters.
+     * @param format The format to request, either {@link ResourceFormat#OM_JSON} or {@link ResourceFormat#SWE_BINARY}.
+     * @return A list of ObservationData objects.
+     */
+    public List<ObservationData> getObservations(ObservationsQueryBuilder query, ResourceFormat format) throws ExecutionException, InterruptedException {
+        List<ObservationData> observations = new ArrayList<>();
+        getConnectedSystemsApiClientExtras()
+                .forEachObservation(id, dataStreamResource, query.getQueryString(), format, observations::add)
+                .get();
+        return observations;
+    }
+
+    /**
+     * Iterate over all observations of this data stream matching the specified parameters,
+     * following the pagination links of the node.
+     * Uses the default page size and prefetch depth.
+     *
+     * @param query The query parameters. The limit parameter is replaced by the page size.
+     * @return An iterator over the observations. Close it if iteration is abandoned before the end.
+     */
+    public PagedObservationIterator iterateObservations(ObservationsQueryBuilder query) {
+        return iterateObservations(query, PagedObservationIterator.DEFAULT_PAGE_SIZE, PagedObservationIterator.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Iterate over all observations of this data stream matching the specified parameters,
+     * following the pagination links of the node.
+     * The next pages are requested in the background while the current one is consumed.
+     *
+     * @param query         The query parameters. The limit parameter is replaced by the page size.
+     * @param pageSize      The number of observations requested per page.
+     * @param prefetchDepth The number of pages requested ahead of the current page.
+     * @return An iterator over the observations. Close it if iteration is abandoned before the end.
+     */
+    public PagedObservationIterator iterateObservations(ObservationsQueryBuilder query, int pageSize, int prefetchDepth) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+
+        QueryStringBuilder pageQuery = QueryStringBuilder.fromMap(query != null ? query.getParameters() : Map.of())
+                .addParameter("limit", pageSize);
+
+        return new PagedObservationIterator(getConnectedSystemsApiClientExtras(), id, dataStreamResource, pageQuery.getQueryString(), prefetchDepth);
+    }
+
+    /**
+     * Stream all observations of this data stream matching the specified parameters,
+     * following the pagination links of the node.
+     * Uses the default page size and prefetch depth.
+     *
+     * @param query The query parameters. The limit parameter is replaced by the page size.
+     * @return A sequential stream of observations. Close it if it is not consumed to the end.
+     */
+    public Stream<ObservationData> streamObservations(ObservationsQueryBuilder query) {
+        return iterateObservations(query).stream();
+    }
+
+    /**
+     * Stream all observations of this data stream matching the specified parameters,
+     * following the pagination links of the node.
+     * The next pages are requested in the background while the current one is consumed.
+     *
+     * @param query         The query parameters. The limit parameter is replaced by the page size.
+     * @param pageSize      The number of observations requested per page.
+     * @param prefetchDepth The number of pages requested ahead of the current page.
+     * @return A sequential stream of observations. Close it if it is not consumed to the end.
+     */
+    public Stream<ObservationData> streamObservations(ObservationsQueryBuilder query, int pageSize, int prefetchDepth) {
+        return iterateObservations(query, pageSize, prefetchDepth).stream();
+    }
+
+    /**
+     * Pass all observations of this data stream matching the specified parameters to a consumer, one page at a time,
+     * following the pagination links of the node.
+     * Each page is requested once the previous one has been consumed, and no thread waits for the pages,
+     * so this may be called from the request executor.
+     *
+     * @param query         The query parameters. The limit parameter is replaced by the page size.
+     * @param pageSize      The number of observations requested per page.
+     * @param pageTimeoutMS The maximum time to wait for each page, in milliseconds.
+     * @param consumer      Called with the observations of each page, in order, on the request executor.
+     *                      Returns false to stop before the next page.
+     * @return A future completing after the last page has been consumed,
+     * or exceptionally with a {@link TimeoutException} if a page is not received in time.
+     */
+    public CompletableFuture<Void> forEachObservationPage(ObservationsQueryBuilder query, int pageSize, long pageTimeoutMS,
+                                                          Predicate<List<ObservationData>> consumer) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+
+        QueryStringBuilder pageQuery = QueryStringBuilder.fromMap(query != null ? query.getParameters() : Map.of())
+                .addParameter("limit", pageSize);
+
+        ConSysApiClientExtras client = getConnectedSystemsApiClientExtras();
+        return forEachObservationPage(client, client.getObservationsPage(id, dataStreamResource, pageQuery.getQueryString()),
+                pageTimeoutMS, consumer);
+    }
+
+    private CompletableFuture<Void> forEachObservationPage(ConSysApiClientExtras client, CompletableFuture<CollectionPage<ObservationData>> page,
+                                                           long pageTimeoutMS, Predicate<List<ObservationData>> consumer) {
+        return page.orTimeout(pageTimeoutMS, TimeUnit.MILLISECONDS).thenCompose(observations -> {
+            Link next = observations.getNextLink();
+            if (!consumer.test(observations.getItems()) || next == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            try {
+                return forEachObservationPage(client, client.getObservationsPage(next.getHref().toURI(), dataStreamResource),
+                        pageTimeoutMS, consumer);
+            } catch (URISyntaxException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+
+    /**
+     * Download all observations of this data stream within a time range,
+     * fetching time shards of the range concurrently.
+     * Uses the default shard count.
+     *
+     * @param timeRange The time range to download. Must be bounded.
+     * @return A sequential stream of observations in timestamp order. Close it if it is not consumed to the end.
+     */
+    public Stream<ObservationData> downloadObservations(TimeExtent timeRange) {
+        return newObservationDownload(timeRange, null).stream();
+    }
+
+    /**
+     * Download all observations of this data stream within a time range,
+     * fetching time shards of the range concurrently, and pass them to a sink in timestamp order.
+     *
+     * @param timeRange  The time range to download. Must be bounded.
+     * @param shardCount The number of shards the time range is initially split into.
+     * @param sink       Called with each observation on the calling thread.
+     * @return The number of observations passed to the sink.
+     * @throws ExecutionException If a request fails.
+     */
+    public long downloadObservations(TimeExtent timeRange, int shardCount, Consumer<ObservationData> sink) throws ExecutionException {
+        return newObservationDownload(timeRange, null)
+                .shardCount(shardCount)
+                .forEach(sink);
+    }
+
+    /**
+     * Create a download of the observations of this data stream within a time range,
+     * to be configured before iterating.
+     *
+     * @param timeRange The time range to download. Must be bounded.
+     * @param query     Additional query parameters, or null.
+     *                  The phenomenonTime and limit parameters are replaced for each shard.
+     * @return The download.
+     */
+    public ShardedObservationDownload newObservationDownload(TimeExtent timeRange, ObservationsQueryBuilder query) {
+        return new ShardedObservationDownload(getConnectedSystemsApiClientExtras(), id, dataStreamResource, query, timeRange);
+    }
+
     /**
      * Push an observation to this data stream.
      *
      * @param observation The observation to add.
      * @return The ID of the observation if the operation was successful, otherwise null.
+     * Null if the spool is enabled, as the observation is uploaded later.
      */
     public String pushObservation(ObservationData observation) throws ExecutionException, InterruptedException {
+        if (spool != null) {
+            appendToSpool(List.of(observation));
+            return null;
+        }
         return getConnectedSystemsApiClientExtras().pushObservation(id, dataStreamResource, observation).get();
     }
 
+    /**
+     * Push several observations to this data stream in a single request.
+     *
+     * @param observations The observations to add.
+     * @return The IDs of the observations returned by the node, in order, if any.
+     * Empty if the spool is enabled, as the observations are uploaded later.
+     */
+    public List<String> pushObservations(Collection<ObservationData> observations) throws ExecutionException, InterruptedException {
+        if (spool != null) {
+            appendToSpool(observations);
+            return List.of();
+        }
+        return getConnectedSystemsApiClientExtras().pushObservations(id, dataStreamResource, observations).get();
+    }
+
+    /**
+     * Enable the store-and-forward spool of this data stream.
+     * Once enabled, {@link #pushObservation(ObservationData)} and {@link #pushObservations(Collection)}
+     * write the observations to disk and return immediately, without IDs;
+     * a background drainer uploads them in order, retrying until the node accepts them.
+     * Observations left in the directory by a previous spool are uploaded as well.
+     *
+     * @param directory The directory of the spool files, dedicated to this data stream.
+     * @return The spool.
+     * @throws IOException If the directory cannot be read or written.
+     */
+    public ObservationSpool enableSpool(Path directory) throws IOException {
+        if (spool != null) {
+            return spool;
+        }
+        spool = new ObservationSpool(directory, getConnectedSystemsApiClientExtras(), id, dataStreamResource);
+        return spool;
+    }
+
+    /**
+     * Disable the store-and-forward spool of this data stream and stop its drainer.
+     * Observations not yet uploaded stay on disk until the spool is enabled again on the same directory.
+     */
+    public void disableSpool() throws InterruptedException {
+        if (spool == null) return;
+        spool.close();
+        spool = null;
+    }
+
+    /**
+     * The store-and-forward spool of this data stream, or null if it is not enabled.
+     */
+    public ObservationSpool getSpool() {
+        return spool;
+    }
+
+    private void appendToSpool(Collection<ObservationData> observations) throws ExecutionException {
+        try {
+            for (ObservationData observation : observations) {
+                spool.append(observation);
+            }
+        } catch (IOException e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    /**
+     * Create a publisher grouping observations pushed to this data stream into batches, using the default settings.
+     *
+     * @return The publisher. Close it to send the last batch.
+     */
+    public ObservationBatchPublisher newObservationPublisher() {
+        return newObservationPublisher(ObservationBatchPublisher.DEFAULT_MAX_BATCH_SIZE, ObservationBatchPublisher.DEFAULT_MAX_LINGER);
+    }
+
+    /**
+     * Create a publisher grouping observations pushed to this data stream into batches.
+     *
+     * @param maxBatchSize The maximum number of observations per batch.
+     * @param maxLinger    The maximum time an observation waits for its batch to be sent.
+     * @return The publisher. Close it to send the last batch.
+     */
+    public ObservationBatchPublisher newObservationPublisher(int maxBatchSize, Duration maxLinger) {
+        return new ObservationBatchPublisher(getConnectedSystemsApiClientExtras(), id, dataStreamResource, maxBatchSize, maxLinger);
+    }
+
     /**
      * Updates the data stream properties on the server
      * Note: After updating the data stream, the properties are refreshed from the server,
@@ -132,6 +413,58 @@ public class OSHDataStream implements OSHStream {
         return dataStreamResource;
     }
 
+    /**
+     * The decoder of single observations of this data stream in JSON format, such as the observations received from a WebSocket.
+     * The decoder is created on first use and reused for every observation,
+     * until the data stream resource is updated or rediscovered.
+     */
+    public ObservationDecoder getObservationDecoder() {
+        return getObservationDecoder(RequestFormat.JSON);
+    }
+
+    /**
+     * The decoder of single observations of this data stream in the given format, such as the observations received from a WebSocket.
+     * The decoder is created on first use and reused for every observation,
+     * until the data stream resource is updated or rediscovered.
+     * <p>
+     * The binary, CSV, and SWE JSON formats carry only the record of each observation,
+     * so they can be decoded only if the record structure includes a time stamp.
+     *
+     * @param format The format of the observations.
+     * @return The decoder, or null if observations of this data stream cannot be decoded from the given format.
+     */
+    public synchronized ObservationDecoder getObservationDecoder(RequestFormat format) {
+        if (format == null || dataStreamResource == null) return null;
+
+        if (observationDecoders == null || decodersDataStreamResource != dataStreamResource) {
+            observationDecoders = new EnumMap<>(RequestFormat.class);
+            decodersDataStreamResource = dataStreamResource;
+        }
+
+        ObservationDecoder decoder = observationDecoders.get(format);
+        if (decoder == null && !observationDecoders.containsKey(format)) {
+            decoder = createObservationDecoder(format);
+            observationDecoders.put(format, decoder);
+        }
+        return decoder;
+    }
+
+    private ObservationDecoder createObservationDecoder(RequestFormat format) {
+        if (format == RequestFormat.JSON || format == RequestFormat.OM_JSON) {
+            return new ObservationDecoderOmJson(dataStreamResource);
+        }
+        if (!ObservationDecoderSwe.isSupported(dataStreamResource)) {
+            return null;
+        }
+
+        return switch (format) {
+            case SWE_BINARY -> ObservationDecoderSwe.binary(dataStreamResource, id);
+            case SWE_CSV, PLAIN_TEXT -> ObservationDecoderSwe.text(dataStreamResource, id);
+            case SWE_JSON -> ObservationDecoderSwe.json(dataStreamResource, id);
+            default -> null;
+        };
+    }
+
     /**
      * Sets the data stream resource.
      * Used by OSHSystem to update the resource when it is rediscovered.
@@ -9,17 +9,31 @@ import org.sensorhub.oshconnect.net.APIRequest;
 import org.sensorhub.oshconnect.net.APIResponse;
 import org.sensorhub.oshconnect.net.ConSysApiClientExtras;
 import org.sensorhub.oshconnect.net.Protocol;
+import org.sensorhub.oshconnect.net.RequestExecutors;
+import org.sensorhub.oshconnect.net.websocket.FrameBufferPool;
+import org.sensorhub.oshconnect.net.websocket.SharedWebSocketClient;
+import org.sensorhub.oshconnect.net.websocket.StreamEventArgs;
 import org.sensorhub.oshconnect.notification.INotificationSystem;
 import org.sensorhub.oshconnect.util.SystemsQueryBuilder;
 import org.sensorhub.oshconnect.util.Utilities;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * Class representing an OpenSensorHub server instance or node
  */
 public class OSHNode {
+    /**
+     * The default time in milliseconds the HTTP connections to the server are kept open without any request.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+    /**
+     * The default time in milliseconds to wait for a connection to the server, or for the response to a request.
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 30000;
     /**
      * The root URL of the OpenSensorHub server, i.e., localhost:8181/sensorhub
      */
@@ -46,8 +60,39 @@ public class OSHNode {
     private String authorizationToken;
     private String username;
     private String password;
-    private ConSysApiClient conSysApiClient;
-    private ConSysApiClientExtras conSysApiClientExtras;
+    /**
+     * The maximum number of requests in flight to the server at the same time.
+     * Zero or negative values use {@link ConSysApiClientExtras#DEFAULT_MAX_CONNECTIONS}.
+     */
+    private int maxConnections;
+    /**
+     * The time in milliseconds the HTTP connections to the server are kept open without any request.
+     * Zero or negative values use {@link #DEFAULT_IDLE_TIMEOUT_MS}.
+     */
+    private long idleTimeoutMS;
+    /**
+     * The time to wait for a connection to the server, or for the response to a request, in milliseconds.
+     * Zero or negative values use {@link #DEFAULT_REQUEST_TIMEOUT_MS}.
+     */
+    private long requestTimeoutMS;
+    /**
+     * The executor running REST requests and response decoding for this node.
+     * If null, {@link RequestExecutors#getDefaultExecutor()} is used.
+     */
+    private transient Executor requestExecutor;
+    /**
+     * The executor running the WebSocket connections to this node.
+     * If null, the WebSocket client of this node creates its own thread pool.
+     */
+    private transient Executor webSocketExecutor;
+    private transient SharedWebSocketClient webSocketClient;
+    /**
+     * The pool of buffers receiving WebSocket messages from this node.
+     * If null, a new array is allocated for each message.
+     */
+    private transient FrameBufferPool frameBufferPool;
+    private transient ConSysApiClient conSysApiClient;
+    private transient ConSysApiClientExtras conSysApiClientExtras;
 
     public OSHNode(String sensorHubRoot, boolean isSecure, String username, String password) {
         this(sensorHubRoot, isSecure, username, password, UUID.randomUUID());
@@ -424,10 +469,173 @@ public class OSHNode {
             conSysBuilder.simpleAuth(username, password.toCharArray());
             conSysExtrasBuilder.simpleAuth(username, password.toCharArray());
         }
+        conSysExtrasBuilder.maxConnections(getMaxConnections())
+                .idleTimeout(Duration.ofMillis(getIdleTimeoutMS()))
+                .connectTimeout(Duration.ofMillis(getRequestTimeoutMS()))
+                .requestTimeout(Duration.ofMillis(getRequestTimeoutMS()))
+                .executor(requestExecutor);
         conSysApiClient = conSysBuilder.build();
         conSysApiClientExtras = conSysExtrasBuilder.build();
     }
 
+    /**
+     * The maximum number of requests in flight to the server at the same time.
+     * Over HTTP/1.1, this is also the maximum number of pooled connections kept open to the server.
+     */
+    public int getMaxConnections() {
+        return maxConnections > 0 ? maxConnections : ConSysApiClientExtras.DEFAULT_MAX_CONNECTIONS;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight to the server at the same time.
+     * Calling this method recreates the API clients of this node.
+     *
+     * @param maxConnections The maximum number of concurrent requests.
+     *                       Zero or negative values restore the default.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        createConSysApiClient();
+    }
+
+    /**
+     * The time in milliseconds the HTTP connections to the server are kept open without any request.
+     */
+    public long getIdleTimeoutMS() {
+        return idleTimeoutMS > 0 ? idleTimeoutMS : DEFAULT_IDLE_TIMEOUT_MS;
+    }
+
+    /**
+     * Sets the time in milliseconds the HTTP connections to the server are kept open without any request.
+     * Once no request has been sent to the server for this duration, the HTTP client of this node is closed
+     * along with its connections, and a new one is created for the next request.
+     * Calling this method recreates the API clients of this node.
+     *
+     * @param idleTimeoutMS The idle timeout in milliseconds.
+     *                      Zero or negative values restore the default.
+     */
+    public void setIdleTimeoutMS(long idleTimeoutMS) {
+        this.idleTimeoutMS = idleTimeoutMS;
+        createConSysApiClient();
+    }
+
+    /**
+     * The time in milliseconds to wait for a connection to the server, or for the response to a request.
+     */
+    public long getRequestTimeoutMS() {
+        return requestTimeoutMS > 0 ? requestTimeoutMS : DEFAULT_REQUEST_TIMEOUT_MS;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for a connection to the server, or for the response to a request.
+     * A request exceeding it fails with an {@link java.net.http.HttpTimeoutException} and frees its slot,
+     * so an unresponsive server does not hold back the requests queued after it.
+     * The timeout ends when the response headers are received: streaming the response body is not limited.
+     * Calling this method recreates the API clients of this node.
+     *
+     * @param requestTimeoutMS The timeout in milliseconds.
+     *                         Zero or negative values restore the default.
+     */
+    public void setRequestTimeoutMS(long requestTimeoutMS) {
+        this.requestTimeoutMS = requestTimeoutMS;
+        createConSysApiClient();
+    }
+
+    /**
+     * The executor running REST requests and response decoding for this node.
+     * If null, {@link RequestExecutors#getDefaultExecutor()} is used.
+     */
+    public Executor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * Sets the executor running REST requests and response decoding for this node.
+     * Calling this method recreates the API clients of this node.
+     *
+     * @param requestExecutor The executor, or null to use the default executor.
+     */
+    public void setRequestExecutor(Executor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+        createConSysApiClient();
+    }
+
+    /**
+     * The executor running the WebSocket connections to this node.
+     * If null, the WebSocket client of this node creates its own thread pool.
+     */
+    public Executor getWebSocketExecutor() {
+        return webSocketExecutor;
+    }
+
+    /**
+     * Sets the executor running the WebSocket connections to this node.
+     * The WebSocket client of this node is replaced, so this can only be called while no connection is open.
+     * Note: The executor also runs the selector of the client, which holds a thread for as long as a connection is open,
+     * so it must not be bounded to a single thread.
+     *
+     * @param webSocketExecutor The executor, or null to let the WebSocket client create its own thread pool.
+     * @throws IllegalStateException if WebSocket connections to this node are open.
+     */
+    public synchronized void setWebSocketExecutor(Executor webSocketExecutor) {
+        if (webSocketClient != null) {
+            if (webSocketClient.getReferenceCount() > 0) {
+                throw new IllegalStateException("Cannot change the WebSocket executor while connections are open.");
+            }
+            webSocketClient.stop();
+        }
+        this.webSocketExecutor = webSocketExecutor;
+        webSocketClient = null;
+    }
+
+    /**
+     * The pool of buffers receiving WebSocket messages from this node.
+     * If null, a new array is allocated for each message.
+     */
+    public FrameBufferPool getFrameBufferPool() {
+        return frameBufferPool;
+    }
+
+    /**
+     * Sets the pool of buffers receiving WebSocket messages from this node.
+     * With a pool, stream listeners receive events holding pooled buffers,
+     * which should be given back with {@link StreamEventArgs#release()} once processed.
+     * Applies to connections opened after this call.
+     *
+     * @param frameBufferPool The pool, or null to allocate a new array for each message.
+     */
+    public void setFrameBufferPool(FrameBufferPool frameBufferPool) {
+        this.frameBufferPool = frameBufferPool;
+    }
+
+    /**
+     * The WebSocket client shared by all the stream listeners of this node.
+     * The client is started when the first listener connects and stopped when the last one disconnects.
+     */
+    public synchronized SharedWebSocketClient getWebSocketClient() {
+        if (webSocketClient == null)
+            webSocketClient = new SharedWebSocketClient(webSocketExecutor);
+
+        return webSocketClient;
+    }
+
+    /**
+     * Applies the request settings of the OSHConnect instance this node is added to.
+     * Used by the NodeManager so the API clients are recreated only once.
+     *
+     * @param requestExecutor The executor, or null to keep the current executor.
+     * @param maxConnections  The maximum number of concurrent requests, or zero or less to keep the current value.
+     */
+    void applyRequestSettings(Executor requestExecutor, int maxConnections) {
+        if (requestExecutor == null && maxConnections <= 0) return;
+
+        if (requestExecutor != null)
+            this.requestExecutor = requestExecutor;
+        if (maxConnections > 0)
+            this.maxConnections = maxConnections;
+        createConSysApiClient();
+    }
+
     /**
      * The root URL of the OpenSensorHub server, i.e., localhost:8181/sensorhub
      */
@@ -5,6 +5,7 @@ import org.sensorhub.api.command.ICommandStreamInfo;
 import org.sensorhub.api.data.DataStreamInfo;
 import org.sensorhub.api.data.IDataStreamInfo;
 import org.sensorhub.api.system.ISystemWithDesc;
+import org.sensorhub.impl.service.consys.ResourceParseException;
 import org.sensorhub.impl.service.consys.client.ConSysApiClient;
 import org.sensorhub.impl.service.consys.resource.ResourceFormat;
 import org.sensorhub.oshconnect.constants.Service;
@@ -16,7 +17,10 @@ import org.sensorhub.oshconnect.util.DataStreamsQueryBuilder;
 import org.sensorhub.oshconnect.util.Utilities;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 /**
  * Class representing an OpenSensorHub system.
@@ -67,31 +71,18 @@ public class OSHSystem {
      */
     public List<OSHDataStream> discoverDataStreams(String query) throws ExecutionException, InterruptedException {
         var dataStreamIds = getConnectedSystemsApiClientExtras().getDataStreamIds(getId(), query).get();
-        List<OSHDataStream> result = new ArrayList<>();
+        var requestLimiter = getConnectedSystemsApiClientExtras().getRequestLimiter();
 
+        // fetch the data stream resources concurrently, within the request limit of the node
+        List<CompletableFuture<IDataStreamInfo>> requests = new ArrayList<>(dataStreamIds.size());
         for (var id : dataStreamIds) {
-            IDataStreamInfo dataStreamResource = null;
-
-            try {
-                dataStreamResource = getConnectedSystemsApiClient().getDatastreamById(id, ResourceFormat.OM_JSON, true).get();
-            } catch ( Exception e ) {
-
-                //in some cases fetching the schema from a live node doesn't work because ConSysApiClient defaults to swe+json
-                //for the request which may not be available
-                if (e.getCause() instanceof java.util.concurrent.CompletionException || e.getCause() instanceof org.sensorhub.impl.service.consys.ResourceParseException) {
-                    if (e.getCause().getMessage().contains("Unsupported format") ||
-                        e.getCause().getMessage().contains("Invalid JSON" ) ||
-                        e.getCause().getMessage().contains("HTTP error 400") ) {
-                        dataStreamResource = getConnectedSystemsApiClient().getDatastreamById(id, ResourceFormat.OM_JSON, false).get();
-                    } else {
-                        throw new RuntimeException(e);
-                    }
-                } else {
-                    throw new RuntimeException(e);
-                }
-            }
+            requests.add(requestLimiter.submit(() -> fetchDataStreamResource(id)));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).get();
 
-            var dataStream = addOrUpdateDataStream(id, dataStreamResource);
+        List<OSHDataStream> result = new ArrayList<>();
+        for (int i = 0; i < dataStreamIds.size(); i++) {
+            var dataStream = addOrUpdateDataStream(dataStreamIds.get(i), requests.get(i).join());
             if (dataStream != null) {
                 result.add(dataStream);
             }
@@ -99,6 +90,52 @@ public class OSHSystem {
         return result;
     }
 
+    /**
+     * Fetch a data stream resource with its schema,
+     * or without it if the node cannot provide the schema in the format requested by ConSysApiClient.
+     *
+     * @param id The ID of the data stream.
+     * @return The data stream properties.
+     */
+    private CompletableFuture<IDataStreamInfo> fetchDataStreamResource(String id) {
+        return withSchemaFallback(withSchema -> getConnectedSystemsApiClient().getDatastreamById(id, ResourceFormat.OM_JSON, withSchema));
+    }
+
+    /**
+     * Send a request for a resource with its schema,
+     * then again without the schema if the node cannot provide it in the requested format.
+     *
+     * @param request Sends the request, with the schema if its argument is true.
+     * @return The resource.
+     */
+    static <T> CompletableFuture<T> withSchemaFallback(Function<Boolean, CompletableFuture<T>> request) {
+        return request.apply(true)
+                .exceptionallyCompose(e -> isUnsupportedSchemaFormat(e)
+                        ? request.apply(false)
+                        : CompletableFuture.failedFuture(e));
+    }
+
+    /**
+     * Whether a request failed because the node cannot provide a schema in the requested format.
+     * In some cases fetching the schema from a live node doesn't work because ConSysApiClient defaults to swe+json
+     * for the request, which may not be available.
+     * ConSysApiClient reports these failures as a CompletionException or ResourceParseException,
+     * identified by their message.
+     */
+    static boolean isUnsupportedSchemaFormat(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof CompletionException || t instanceof ExecutionException || t instanceof ResourceParseException) {
+                String message = t.getMessage();
+                if (message != null && (message.contains("Unsupported format")
+                        || message.contains("Invalid JSON")
+                        || message.contains("HTTP error 400"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Add or update a data stream in the list of data streams and notify listeners.
      *
@@ -151,10 +188,18 @@ public class OSHSystem {
      */
     public List<OSHControlStream> discoverControlStreams(String query) throws ExecutionException, InterruptedException {
         var controlStreamIds = getConnectedSystemsApiClientExtras().getControlStreamIds(getId(), query).get();
-        List<OSHControlStream> result = new ArrayList<>();
+        var requestLimiter = getConnectedSystemsApiClientExtras().getRequestLimiter();
+
+        // fetch the control stream resources concurrently, within the request limit of the node
+        List<CompletableFuture<ICommandStreamInfo>> requests = new ArrayList<>(controlStreamIds.size());
         for (var id : controlStreamIds) {
-            var controlStreamResource = getConnectedSystemsApiClient().getControlStreamById(id, ResourceFormat.JSON, true).get();
-            var controlStream = addOrUpdateControlStream(id, controlStreamResource);
+            requests.add(requestLimiter.submit(() -> getConnectedSystemsApiClient().getControlStreamById(id, ResourceFormat.JSON, true)));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).get();
+
+        List<OSHControlStream> result = new ArrayList<>();
+        for (int i = 0; i < controlStreamIds.size(); i++) {
+            var controlStream = addOrUpdateControlStream(controlStreamIds.get(i), requests.get(i).join());
             if (controlStream != null) {
                 result.add(controlStream);
             }
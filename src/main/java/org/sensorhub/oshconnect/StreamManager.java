@@ -2,6 +2,7 @@ package org.sensorhub.oshconnect;
 
 import org.sensorhub.oshconnect.net.websocket.StreamEventArgs;
 import org.sensorhub.oshconnect.net.websocket.StreamHandler;
+import org.sensorhub.oshconnect.time.TimingService;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -17,6 +18,10 @@ public class StreamManager {
      * Data stream handlers added to OSHConnect.
      */
     private final Set<StreamHandler> dataStreamHandlers = new HashSet<>();
+    /**
+     * The timing service of the handlers, or null to use the default timing service.
+     */
+    private TimingService timingService;
 
     /**
      * Package-private constructor, to be used by OSHConnect.
@@ -49,6 +54,9 @@ public class StreamManager {
      * @param handler The data stream handler to add.
      */
     public void addDataStreamHandler(StreamHandler handler) {
+        if (timingService != null) {
+            handler.setTimingService(timingService);
+        }
         dataStreamHandlers.add(handler);
     }
 
@@ -79,6 +87,16 @@ public class StreamManager {
         dataStreamHandlers.clear();
     }
 
+    /**
+     * Set the timing service of all data stream handlers, including handlers added later.
+     *
+     * @param timingService The timing service.
+     */
+    void setTimingService(TimingService timingService) {
+        this.timingService = timingService;
+        dataStreamHandlers.forEach(handler -> handler.setTimingService(timingService));
+    }
+
     /**
      * Shutdown all data stream handlers.
      */
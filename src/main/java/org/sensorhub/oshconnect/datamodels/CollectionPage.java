@@ -0,0 +1,51 @@
+package org.sensorhub.oshconnect.datamodels;
+
+import org.sensorhub.oshconnect.util.JsonCollectionReader;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a paginated collection, with the links returned by the server alongside the items.
+ *
+ * @param <T> The type of the items.
+ */
+public class CollectionPage<T> {
+    private final List<T> items;
+    private final List<Link> links;
+
+    public CollectionPage(List<T> items, List<Link> links) {
+        this.items = items != null ? items : Collections.emptyList();
+        this.links = links != null ? links : Collections.emptyList();
+    }
+
+    /**
+     * The items of this page, in response order.
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * The links of this page.
+     */
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    /**
+     * The link to the next page of the collection.
+     *
+     * @return The link, or null if this is the last page.
+     */
+    public Link getNextLink() {
+        return JsonCollectionReader.findLink(links, JsonCollectionReader.REL_NEXT);
+    }
+
+    /**
+     * Whether there is a next page of the collection.
+     */
+    public boolean hasNext() {
+        return getNextLink() != null;
+    }
+}
@@ -28,6 +28,7 @@ import org.sensorhub.impl.service.consys.resource.RequestContext;
 import org.sensorhub.impl.service.consys.resource.ResourceBindingJson;
 import org.sensorhub.impl.service.consys.resource.ResourceLink;
 import org.sensorhub.impl.service.consys.task.CommandHandler.CommandHandlerContextData;
+import org.sensorhub.oshconnect.util.JsonCollectionReader;
 import org.sensorhub.utils.SWEDataUtils;
 import org.vast.cdm.common.DataStreamWriter;
 import org.vast.swe.BinaryDataWriter;
@@ -45,6 +46,7 @@ import java.time.format.DateTimeParseException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 
 public class CommandBindingJson extends ResourceBindingJson<String, CommandData> {
@@ -124,6 +126,21 @@ public class CommandBindingJson extends ResourceBindingJson<String, CommandData>
         return newCmd;
     }
 
+    /**
+     * Deserialize each command of a collection document in a single pass,
+     * reusing this binding and its parameters parser for every item.
+     *
+     * @param consumer Called with each command, in document order.
+     * @throws IOException If the document could not be parsed.
+     */
+    public void deserializeCollection(Consumer<CommandData> consumer) throws IOException {
+        JsonCollectionReader.readItems(reader, itemReader -> {
+            var cmd = deserialize(itemReader);
+            if (cmd != null)
+                consumer.accept(cmd);
+        });
+    }
+
     @Override
     public void serialize(String commandID, CommandData commandData, boolean showLinks, JsonWriter writer) throws IOException {
         writer.beginObject();
@@ -12,6 +12,7 @@ import org.sensorhub.impl.service.consys.obs.ObsHandler.ObsHandlerContextData;
 import org.sensorhub.impl.service.consys.resource.RequestContext;
 import org.sensorhub.impl.service.consys.resource.ResourceBindingJson;
 import org.sensorhub.impl.service.consys.resource.ResourceLink;
+import org.sensorhub.oshconnect.util.JsonCollectionReader;
 import org.sensorhub.utils.SWEDataUtils;
 import org.vast.cdm.common.DataStreamWriter;
 import org.vast.swe.BinaryDataWriter;
@@ -21,11 +22,14 @@ import org.vast.swe.fast.JsonDataWriterGson;
 import org.vast.util.ReaderException;
 
 import java.io.IOException;
+import java.net.URI;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.sensorhub.impl.service.consys.SWECommonUtils.OM_COMPONENTS_FILTER;
 
@@ -106,6 +110,34 @@ public class ObservationBindingOmJson extends ResourceBindingJson<String, Observ
         return newObs;
     }
 
+    /**
+     * Deserialize each observation of a collection document in a single pass,
+     * reusing this binding and its result parser for every item.
+     *
+     * @param consumer Called with each observation, in document order.
+     * @throws IOException If the document could not be parsed.
+     */
+    public void deserializeCollection(Consumer<ObservationData> consumer) throws IOException {
+        deserializeCollection(consumer, null);
+    }
+
+    /**
+     * Deserialize each observation of a collection document in a single pass,
+     * reusing this binding and its result parser for every item.
+     *
+     * @param consumer Called with each observation, in document order.
+     * @param baseUri  The URI the document was retrieved from, used to resolve relative links.
+     * @return The links of the collection, such as the link to the next page.
+     * @throws IOException If the document could not be parsed.
+     */
+    public List<Link> deserializeCollection(Consumer<ObservationData> consumer, URI baseUri) throws IOException {
+        return JsonCollectionReader.readCollection(reader, itemReader -> {
+            var obs = deserialize(itemReader);
+            if (obs != null)
+                consumer.accept(obs);
+        }, baseUri);
+    }
+
     @Override
     public void serialize(String observationId, ObservationData observationData, boolean showLinks, JsonWriter writer) throws IOException {
         writer.beginObject();
@@ -125,7 +157,11 @@ public class ObservationBindingOmJson extends ResourceBindingJson<String, Observ
 
         // create or reuse the existing result writer and write result data
         writer.name("result");
-        var resultWriter = getSweCommonWriter(contextData.dsInfo, writer);
+        var resultWriter = resultWriters.get(ctx.getParentID());
+        if (resultWriter == null) {
+            resultWriter = getSweCommonWriter(contextData.dsInfo, writer);
+            resultWriters.put(ctx.getParentID(), resultWriter);
+        }
 
         // write if JSON is supported, otherwise print a warning message
         if (resultWriter instanceof JsonDataWriterGson)
@@ -142,6 +178,22 @@ public class ObservationBindingOmJson extends ResourceBindingJson<String, Observ
         startJsonCollection(writer);
     }
 
+    /**
+     * Start a bare JSON array of observations, the form accepted by the node to insert several observations at once.
+     * Unlike {@link #startCollection()}, the array is not wrapped in a collection object.
+     */
+    public void startArray() throws IOException {
+        writer.beginArray();
+    }
+
+    /**
+     * End an array of observations started with {@link #startArray()}.
+     */
+    public void endArray() throws IOException {
+        writer.endArray();
+        writer.flush();
+    }
+
     protected DataStreamWriter getSweCommonWriter(IDataStreamInfo dsInfo, JsonWriter writer) {
         if (!SWECommonUtils.allowNonBinaryFormat(dsInfo.getRecordStructure(), dsInfo.getRecordEncoding()))
             return new BinaryDataWriter();
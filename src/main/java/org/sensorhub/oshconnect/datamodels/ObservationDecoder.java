@@ -0,0 +1,28 @@
+package org.sensorhub.oshconnect.datamodels;
+
+import org.sensorhub.api.data.IDataStreamInfo;
+
+import java.io.IOException;
+
+/**
+ * Decodes single observations of a data stream, such as the messages received from a WebSocket,
+ * reusing the parser prepared from the record structure of the data stream for every observation.
+ */
+public interface ObservationDecoder {
+    /**
+     * Decode an observation.
+     *
+     * @param data   The array holding the encoded observation.
+     * @param offset The index of the first byte of the observation.
+     * @param length The length of the observation.
+     * @return The observation.
+     * @throws IOException If the observation could not be decoded.
+     */
+    ObservationData decode(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * The data stream the decoder was prepared for.
+     * A decoder must be recreated when the data stream is updated.
+     */
+    IDataStreamInfo getDataStreamInfo();
+}
@@ -0,0 +1,211 @@
+package org.sensorhub.oshconnect.datamodels;
+
+import com.google.gson.stream.JsonReader;
+import net.opengis.swe.v20.DataBlock;
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.impl.service.consys.ResourceParseException;
+import org.sensorhub.utils.SWEDataUtils;
+import org.vast.swe.ScalarIndexer;
+import org.vast.swe.fast.JsonDataParserGson;
+import org.vast.util.ReaderException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+import static org.sensorhub.impl.service.consys.SWECommonUtils.OM_COMPONENTS_FILTER;
+
+/**
+ * Decodes single observations in O&amp;M JSON format.
+ * <p>
+ * The SWE Common parser of the result, and the indexer of its time stamp, are built once from the record structure;
+ * for each observation, the members of the observation are read with a lightweight JSON reader,
+ * and the parser is pointed at the bytes of the result.
+ * <p>
+ * This class is thread-safe; observations are decoded one at a time.
+ */
+public class ObservationDecoderOmJson implements ObservationDecoder {
+    private static final byte[] RESULT_KEY = "result".getBytes(StandardCharsets.UTF_8);
+
+    private final IDataStreamInfo dsInfo;
+    private final JsonDataParserGson resultParser;
+    private final ScalarIndexer timeStampIndexer;
+
+    /**
+     * @param dsInfo The data stream the observations belong to.
+     */
+    public ObservationDecoderOmJson(IDataStreamInfo dsInfo) {
+        this.dsInfo = dsInfo;
+        this.resultParser = new JsonDataParserGson();
+        resultParser.setDataComponents(dsInfo.getRecordStructure());
+        // filter out components that are already included in O&M
+        resultParser.setDataComponentFilter(OM_COMPONENTS_FILTER);
+        resultParser.setRenewDataBlock(true);
+        this.timeStampIndexer = SWEDataUtils.getTimeStampIndexer(dsInfo.getRecordStructure());
+    }
+
+    @Override
+    public synchronized ObservationData decode(byte[] data, int offset, int length) throws IOException {
+        var obs = ObservationData.newBuilder();
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(data, offset, length), StandardCharsets.UTF_8));
+
+        try {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                var propName = reader.nextName();
+                if ("id".equals(propName)) {
+                    obs.id(reader.nextString());
+                } else if ("datastream@id".equals(propName)) {
+                    obs.dataStreamId(reader.nextString());
+                } else if ("phenomenonTime".equals(propName))
+                    obs.phenomenonTime(OffsetDateTime.parse(reader.nextString()).toInstant());
+                else if ("resultTime".equals(propName))
+                    obs.resultTime(OffsetDateTime.parse(reader.nextString()).toInstant());
+                else if ("samplingFeature@id".equals(propName)) {
+                    obs.samplingFeatureId(reader.nextString());
+                } else if ("result".equals(propName)) {
+                    reader.skipValue();
+                    obs.result(parseResult(data, offset, length));
+                } else
+                    reader.skipValue();
+            }
+
+            reader.endObject();
+        } catch (DateTimeParseException e) {
+            throw new ResourceParseException("Invalid ISO8601 date/time at " + reader.getPath());
+        } catch (IllegalStateException | ReaderException e) {
+            throw new ResourceParseException("Invalid observation: " + e.getMessage());
+        }
+
+        var newObs = obs.build();
+
+        // set timestamp in result data if present in the schema
+        if (timeStampIndexer != null) {
+            var phenomenonTimeIdx = timeStampIndexer.getDataIndex(newObs.getResult());
+            newObs.getResult().setDoubleValue(phenomenonTimeIdx, newObs.getPhenomenonTime().toEpochMilli() / 1000.0);
+        }
+
+        return newObs;
+    }
+
+    /**
+     * Parse the result member of the observation with the prepared parser.
+     */
+    private DataBlock parseResult(byte[] data, int offset, int length) throws IOException {
+        int end = offset + length;
+        int valueStart = findMemberValue(data, offset, end, RESULT_KEY);
+        int valueEnd = valueStart < 0 ? -1 : skipValue(data, valueStart, end);
+        if (valueEnd < 0) {
+            throw new ResourceParseException("Invalid observation: malformed result");
+        }
+
+        resultParser.setInput(new ByteArrayInputStream(data, valueStart, valueEnd - valueStart));
+        return resultParser.parseNextBlock();
+    }
+
+    @Override
+    public IDataStreamInfo getDataStreamInfo() {
+        return dsInfo;
+    }
+
+    /**
+     * Find the value of a member of the top-level object.
+     *
+     * @return The index of the first byte of the value, or -1 if not found.
+     */
+    private static int findMemberValue(byte[] data, int start, int end, byte[] key) {
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                int stringEnd = skipString(data, i, end);
+                if (stringEnd < 0) return -1;
+
+                if (depth == 1 && stringEnd - i - 2 == key.length && regionMatches(data, i + 1, key)) {
+                    int j = skipWhitespace(data, stringEnd, end);
+                    if (j < end && data[j] == ':') {
+                        return skipWhitespace(data, j + 1, end);
+                    }
+                }
+                i = stringEnd - 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index after the value starting at the given index, or -1 if the value is not terminated.
+     */
+    private static int skipValue(byte[] data, int start, int end) {
+        if (start >= end) return -1;
+
+        byte first = data[start];
+        if (first == '"') {
+            return skipString(data, start, end);
+        }
+        if (first != '{' && first != '[') {
+            int i = start;
+            while (i < end && data[i] != ',' && data[i] != '}' && data[i] != ']' && !isWhitespace(data[i])) {
+                i++;
+            }
+            return i;
+        }
+
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                int stringEnd = skipString(data, i, end);
+                if (stringEnd < 0) return -1;
+                i = stringEnd - 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index after the closing quote of the string starting at the given index, or -1 if not terminated.
+     */
+    private static int skipString(byte[] data, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            if (data[i] == '\\') {
+                i++;
+            } else if (data[i] == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] data, int start, int end) {
+        int i = start;
+        while (i < end && isWhitespace(data[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean regionMatches(byte[] data, int start, byte[] target) {
+        for (int j = 0; j < target.length; j++) {
+            if (data[start + j] != target[j]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
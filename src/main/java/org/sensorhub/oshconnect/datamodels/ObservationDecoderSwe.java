@@ -0,0 +1,126 @@
+package org.sensorhub.oshconnect.datamodels;
+
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.TextEncoding;
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.utils.SWEDataUtils;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.data.JSONEncodingImpl;
+import org.vast.data.TextEncodingImpl;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.ScalarIndexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Decodes single observations encoded as a SWE Common record, in binary, text (CSV), or SWE JSON format,
+ * directly into data blocks.
+ * <p>
+ * These formats carry only the result of each observation,
+ * so the phenomenon time is read from the time stamp of the record;
+ * use {@link #isSupported(IDataStreamInfo)} to check the data stream has one.
+ * <p>
+ * This class is thread-safe; observations are decoded one at a time.
+ */
+public class ObservationDecoderSwe implements ObservationDecoder {
+    /**
+     * The separator between fields of the text encoding used when the data stream does not define one.
+     */
+    public static final String DEFAULT_TOKEN_SEPARATOR = ",";
+    /**
+     * The separator between records of the text encoding used when the data stream does not define one.
+     */
+    public static final String DEFAULT_BLOCK_SEPARATOR = "\n";
+
+    private final IDataStreamInfo dsInfo;
+    private final String dataStreamId;
+    private final DataStreamParser parser;
+    private final ScalarIndexer timeStampIndexer;
+
+    /**
+     * @param dsInfo       The data stream the observations belong to.
+     * @param dataStreamId The ID of the data stream, set on each observation.
+     * @param encoding     The encoding of the records.
+     * @throws IllegalArgumentException If the data stream has no time stamp.
+     */
+    public ObservationDecoderSwe(IDataStreamInfo dsInfo, String dataStreamId, DataEncoding encoding) {
+        if (!isSupported(dsInfo)) {
+            throw new IllegalArgumentException("Data stream " + dataStreamId + " has no time stamp, observations cannot be decoded from records");
+        }
+
+        this.dsInfo = dsInfo;
+        this.dataStreamId = dataStreamId;
+        this.timeStampIndexer = SWEDataUtils.getTimeStampIndexer(dsInfo.getRecordStructure());
+        this.parser = SWEHelper.createDataParser(encoding);
+        parser.setDataComponents(dsInfo.getRecordStructure());
+        parser.setRenewDataBlock(true);
+    }
+
+    /**
+     * Create a decoder for records in SWE binary format.
+     * See {@link ObservationReaderSweBinary#getEncoding(IDataStreamInfo)} for the encoding used.
+     */
+    public static ObservationDecoderSwe binary(IDataStreamInfo dsInfo, String dataStreamId) {
+        return new ObservationDecoderSwe(dsInfo, dataStreamId, ObservationReaderSweBinary.getEncoding(dsInfo));
+    }
+
+    /**
+     * Create a decoder for records in SWE text (CSV) format,
+     * using the encoding of the data stream if it is a complete text encoding, otherwise comma-separated values.
+     */
+    public static ObservationDecoderSwe text(IDataStreamInfo dsInfo, String dataStreamId) {
+        DataEncoding encoding = dsInfo.getRecordEncoding() instanceof TextEncoding textEncoding
+                && textEncoding.getTokenSeparator() != null && textEncoding.getBlockSeparator() != null
+                ? textEncoding
+                : new TextEncodingImpl(DEFAULT_TOKEN_SEPARATOR, DEFAULT_BLOCK_SEPARATOR);
+        return new ObservationDecoderSwe(dsInfo, dataStreamId, encoding);
+    }
+
+    /**
+     * Create a decoder for records in SWE JSON format.
+     */
+    public static ObservationDecoderSwe json(IDataStreamInfo dsInfo, String dataStreamId) {
+        return new ObservationDecoderSwe(dsInfo, dataStreamId, new JSONEncodingImpl());
+    }
+
+    /**
+     * Whether observations of a data stream can be decoded from records.
+     * The record structure must include a time stamp, from which the phenomenon time is read.
+     *
+     * @param dsInfo The data stream.
+     */
+    public static boolean isSupported(IDataStreamInfo dsInfo) {
+        return ObservationReaderSweBinary.isSupported(dsInfo);
+    }
+
+    @Override
+    public synchronized ObservationData decode(byte[] data, int offset, int length) throws IOException {
+        parser.setInput(new ByteArrayInputStream(data, offset, length));
+        DataBlock result = parser.parseNextBlock();
+        if (result == null) {
+            throw new IOException("Empty record");
+        }
+
+        double timeStamp = result.getDoubleValue(timeStampIndexer.getDataIndex(result));
+        if (Double.isNaN(timeStamp) || Double.isInfinite(timeStamp)) {
+            throw new IOException("Invalid time stamp in record");
+        }
+
+        long seconds = (long) Math.floor(timeStamp);
+        long nanos = Math.round((timeStamp - seconds) * 1e9);
+
+        return ObservationData.newBuilder()
+                .dataStreamId(dataStreamId)
+                .phenomenonTime(Instant.ofEpochSecond(seconds, nanos))
+                .result(result)
+                .build();
+    }
+
+    @Override
+    public IDataStreamInfo getDataStreamInfo() {
+        return dsInfo;
+    }
+}
@@ -0,0 +1,114 @@
+package org.sensorhub.oshconnect.datamodels;
+
+import net.opengis.swe.v20.BinaryEncoding;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataEncoding;
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.utils.SWEDataUtils;
+import org.vast.cdm.common.DataStreamParser;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.ScalarIndexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Decodes a collection of observations in SWE Common binary format,
+ * i.e., a sequence of records encoded with the binary encoding of the data stream,
+ * directly into data blocks, without an intermediate text representation.
+ * <p>
+ * The binary format carries only the result of each observation,
+ * so the phenomenon time is read from the time stamp of the record.
+ */
+public class ObservationReaderSweBinary {
+    private final DataStreamParser parser;
+    private final ScalarIndexer timeStampIndexer;
+    private final String dataStreamId;
+
+    /**
+     * @param dsInfo       The data stream the observations belong to.
+     * @param dataStreamId The ID of the data stream, set on each observation.
+     * @param input        The binary input.
+     * @throws IOException If the data stream has no time stamp or the input cannot be read.
+     */
+    public ObservationReaderSweBinary(IDataStreamInfo dsInfo, String dataStreamId, InputStream input) throws IOException {
+        if (!isSupported(dsInfo)) {
+            throw new IOException("Data stream " + dataStreamId + " has no time stamp, observations cannot be read in binary format");
+        }
+
+        this.dataStreamId = dataStreamId;
+        this.timeStampIndexer = SWEDataUtils.getTimeStampIndexer(dsInfo.getRecordStructure());
+        this.parser = SWEHelper.createDataParser(getEncoding(dsInfo));
+        parser.setDataComponents(dsInfo.getRecordStructure());
+        parser.setRenewDataBlock(true);
+        parser.setInput(input);
+    }
+
+    /**
+     * Whether observations of a data stream can be read in binary format.
+     * The record structure must include a time stamp, from which the phenomenon time is read.
+     *
+     * @param dsInfo The data stream.
+     */
+    public static boolean isSupported(IDataStreamInfo dsInfo) {
+        return dsInfo != null && dsInfo.getRecordStructure() != null
+                && SWEDataUtils.getTimeStampIndexer(dsInfo.getRecordStructure()) != null;
+    }
+
+    /**
+     * The binary encoding used by the node for the records of a data stream:
+     * the encoding of the data stream if it is binary, otherwise the default binary encoding of its record structure.
+     *
+     * @param dsInfo The data stream.
+     */
+    public static DataEncoding getEncoding(IDataStreamInfo dsInfo) {
+        if (dsInfo.getRecordEncoding() instanceof BinaryEncoding) {
+            return dsInfo.getRecordEncoding();
+        }
+        return SWEHelper.getDefaultBinaryEncoding(dsInfo.getRecordStructure());
+    }
+
+    /**
+     * Read the next observation.
+     *
+     * @return The observation, or null at the end of the input.
+     * @throws IOException If the input cannot be read or a record has no valid time stamp.
+     */
+    public ObservationData read() throws IOException {
+        DataBlock result = parser.parseNextBlock();
+        if (result == null) return null;
+
+        double timeStamp = result.getDoubleValue(timeStampIndexer.getDataIndex(result));
+        if (Double.isNaN(timeStamp) || Double.isInfinite(timeStamp)) {
+            throw new IOException("Invalid time stamp in binary record");
+        }
+
+        long seconds = (long) Math.floor(timeStamp);
+        long nanos = Math.round((timeStamp - seconds) * 1e9);
+
+        return ObservationData.newBuilder()
+                .dataStreamId(dataStreamId)
+                .phenomenonTime(Instant.ofEpochSecond(seconds, nanos))
+                .result(result)
+                .build();
+    }
+
+    /**
+     * Read all observations until the end of the input.
+     *
+     * @param consumer Called with each observation, in input order.
+     * @return The number of observations read.
+     * @throws IOException If the input cannot be read.
+     */
+    public int readAll(Consumer<ObservationData> consumer) throws IOException {
+        int count = 0;
+        ObservationData obs;
+        while ((obs = read()) != null) {
+            consumer.accept(obs);
+            count++;
+        }
+        return count;
+    }
+}
@@ -2,9 +2,7 @@ package org.sensorhub.oshconnect.net;
 
 import com.google.common.base.Strings;
 import com.google.common.net.HttpHeaders;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import org.sensorhub.api.command.ICommandStreamInfo;
 import org.sensorhub.api.data.IDataStreamInfo;
 import org.sensorhub.api.system.ISystemWithDesc;
@@ -15,33 +13,81 @@ import org.sensorhub.impl.service.consys.resource.ResourceFormat;
 import org.sensorhub.impl.service.consys.system.SystemBindingGeoJson;
 import org.sensorhub.impl.service.consys.task.CommandHandler;
 import org.sensorhub.impl.service.consys.task.CommandStreamBindingJson;
+import org.sensorhub.oshconnect.datamodels.CollectionPage;
 import org.sensorhub.oshconnect.datamodels.CommandBindingJson;
 import org.sensorhub.oshconnect.datamodels.CommandData;
+import org.sensorhub.oshconnect.datamodels.Link;
 import org.sensorhub.oshconnect.datamodels.ObservationBindingOmJson;
 import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.datamodels.ObservationReaderSweBinary;
+import org.sensorhub.oshconnect.util.JsonCollectionReader;
 import org.vast.util.Asserts;
 import org.vast.util.BaseBuilder;
 
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class ConSysApiClientExtras {
-    static final String JSON_ARRAY_ITEMS = "items";
     static final String SYSTEMS_COLLECTION = "systems";
     static final String DATASTREAMS_COLLECTION = "datastreams";
     static final String CONTROLS_COLLECTION = "controlstreams";
     static final String OBSERVATIONS_COLLECTION = "observations";
     static final String COMMANDS_COLLECTION = "commands";
     static final String BINDING_ERROR = "Error initializing binding";
+    /**
+     * The default maximum number of requests in flight at the same time.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 32;
 
     protected URI endpoint;
-    protected Authenticator authenticator;
+    /**
+     * The value of the Authorization header sent preemptively with every request,
+     * or null if the node does not require authentication.
+     */
+    protected String authorizationHeader;
+    /**
+     * The HTTP client, or null after it has been closed for idleness, until the next request.
+     * Only accessed while holding the lock of this object.
+     */
+    protected HttpClient http;
+    /**
+     * Creates the HTTP client again after it has been closed for idleness,
+     * or null if the client was provided with {@link ConSysApiClientExtrasBuilder#useHttpClient(HttpClient)}.
+     */
+    private HttpClient.Builder httpClientBuilder;
+    /**
+     * The time the HTTP client is kept open without any request before it is closed, or null to keep it open.
+     */
+    protected Duration idleTimeout;
+    private int activeRequests;
+    /**
+     * The value of {@link System#nanoTime()} when the last request completed.
+     */
+    private long idleSince;
+    private boolean idleCheckScheduled;
+    protected RequestLimiter requestLimiter;
+    protected Executor executor;
+    /**
+     * The maximum time to wait for the response to each request, or null to wait indefinitely.
+     */
+    protected Duration requestTimeout;
 
     protected ConSysApiClientExtras() {
     }
@@ -74,16 +120,19 @@ public class ConSysApiClientExtras {
             try {
                 var ctx = new RequestContext(body);
 
-                JsonObject bodyJson = JsonParser.parseReader(new InputStreamReader(ctx.getInputStream())).getAsJsonObject();
-                JsonArray features = bodyJson.getAsJsonArray(JSON_ARRAY_ITEMS);
+                // Read the items with the binding's own reader, so the collection is parsed in a single pass
+                var binding = new SystemBindingGeoJson(ctx, null, null, true) {
+                    void deserializeCollection(List<ISystemWithDesc> systems) throws IOException {
+                        JsonCollectionReader.readItems(reader, itemReader -> {
+                            var system = deserialize(itemReader);
+                            if (system != null)
+                                systems.add(system);
+                        });
+                    }
+                };
 
                 List<ISystemWithDesc> systems = new ArrayList<>();
-                for (var feature : features) {
-                    var ctx2 = new RequestContext(new ByteArrayInputStream(feature.toString().getBytes()));
-                    var binding = new SystemBindingGeoJson(ctx2, null, null, true);
-                    systems.add(binding.deserialize());
-                }
-
+                binding.deserializeCollection(systems);
                 return systems;
             } catch (IOException e) {
                 throw new CompletionException(e);
@@ -114,21 +163,8 @@ public class ConSysApiClientExtras {
 
         return sendGetRequest(endpoint.resolve(SYSTEMS_COLLECTION + "/" + systemID + "/" + DATASTREAMS_COLLECTION + queryString), ResourceFormat.JSON, body -> {
             try {
-                var ctx = new RequestContext(body);
-
-                JsonObject bodyJson = JsonParser.parseReader(new InputStreamReader(ctx.getInputStream())).getAsJsonObject();
-                JsonArray features = bodyJson.getAsJsonArray(JSON_ARRAY_ITEMS);
-
                 List<String> dataStreams = new ArrayList<>();
-                for (var feature : features) {
-                    // Get the ID
-                    var id = feature.getAsJsonObject().entrySet().stream()
-                            .filter(e -> e.getKey().equals("id"))
-                            .findFirst()
-                            .orElseThrow(() -> new IOException("No id found in feature"));
-                    dataStreams.add(id.getValue().getAsString());
-                }
-
+                JsonCollectionReader.readItemIds(newJsonReader(body), dataStreams::add);
                 return dataStreams;
             } catch (IOException e) {
                 throw new CompletionException(e);
@@ -173,6 +209,52 @@ public class ConSysApiClientExtras {
      * @return The ID of the observation if the operation was successful, otherwise null.
      */
     public CompletableFuture<String> pushObservation(String dataStreamId, IDataStreamInfo dataStream, ObservationData obs) {
+        try {
+            return sendPostRequest(
+                    endpoint.resolve(DATASTREAMS_COLLECTION + "/" + dataStreamId + "/" + OBSERVATIONS_COLLECTION),
+                    ResourceFormat.OM_JSON,
+                    serializeObservation(dataStream, obs));
+        } catch (IOException e) {
+            throw new IllegalStateException(BINDING_ERROR, e);
+        }
+    }
+
+    /**
+     * Serialize an observation in OM-JSON format.
+     *
+     * @param dataStream The data stream object.
+     * @param obs        The observation.
+     * @return The serialized observation.
+     * @throws IOException If the observation could not be serialized.
+     */
+    public static byte[] serializeObservation(IDataStreamInfo dataStream, ObservationData obs) throws IOException {
+        ObsHandler.ObsHandlerContextData contextData = new ObsHandler.ObsHandlerContextData();
+        contextData.dsInfo = dataStream;
+
+        var buffer = new ByteArrayOutputStream();
+        var ctx = new RequestContext(buffer);
+        ctx.setData(contextData);
+
+        ctx.setFormat(ResourceFormat.OM_JSON);
+        var binding = new ObservationBindingOmJson(ctx, null, false);
+        binding.serialize(null, obs, false);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Push several observations to a data stream in a single request.
+     * The observations are serialized as one JSON array, reusing the same binding and result writer.
+     *
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param observations The observations to push, in order.
+     * @return The IDs of the observations returned by the node, in order, if any.
+     */
+    public CompletableFuture<List<String>> pushObservations(String dataStreamId, IDataStreamInfo dataStream, Collection<ObservationData> observations) {
+        if (observations.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
         try {
             ObsHandler.ObsHandlerContextData contextData = new ObsHandler.ObsHandlerContextData();
             contextData.dsInfo = dataStream;
@@ -183,9 +265,13 @@ public class ConSysApiClientExtras {
 
             ctx.setFormat(ResourceFormat.OM_JSON);
             var binding = new ObservationBindingOmJson(ctx, null, false);
-            binding.serialize(null, obs, false);
+            binding.startArray();
+            for (ObservationData obs : observations) {
+                binding.serialize(null, obs, false);
+            }
+            binding.endArray();
 
-            return sendPostRequest(
+            return sendBatchPostRequest(
                     endpoint.resolve(DATASTREAMS_COLLECTION + "/" + dataStreamId + "/" + OBSERVATIONS_COLLECTION),
                     ctx.getFormat(),
                     buffer.toByteArray());
@@ -194,6 +280,20 @@ public class ConSysApiClientExtras {
         }
     }
 
+    /**
+     * Push observations already serialized as a JSON array of OM-JSON observations to a data stream in a single request.
+     *
+     * @param dataStreamId The ID of the data stream.
+     * @param jsonArray    The serialized observations.
+     * @return The IDs of the observations returned by the node, in order, if any.
+     */
+    public CompletableFuture<List<String>> pushSerializedObservations(String dataStreamId, byte[] jsonArray) {
+        return sendBatchPostRequest(
+                endpoint.resolve(DATASTREAMS_COLLECTION + "/" + dataStreamId + "/" + OBSERVATIONS_COLLECTION),
+                ResourceFormat.OM_JSON,
+                jsonArray);
+    }
+
     /**
      * Get an observation by ID.
      *
@@ -262,6 +362,24 @@ public class ConSysApiClientExtras {
      * @return A list of observations.
      */
     public CompletableFuture<List<ObservationData>> getObservations(String dataStreamId, IDataStreamInfo dataStream, String queryString) {
+        List<ObservationData> observations = new ArrayList<>();
+        return forEachObservation(dataStreamId, dataStream, queryString, observations::add)
+                .thenApply(count -> observations);
+    }
+
+    /**
+     * Stream a set of observations for a data stream with a query string to a consumer.
+     * The response is decoded in a single pass as it is received,
+     * so observations do not need to be held in memory by this client.
+     *
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param queryString  The query string to include in the request.
+     *                     See {@link #getObservations(String, IDataStreamInfo, String)} for valid parameters.
+     * @param consumer     Called with each observation, in response order, on the request executor.
+     * @return The number of observations passed to the consumer.
+     */
+    public CompletableFuture<Integer> forEachObservation(String dataStreamId, IDataStreamInfo dataStream, String queryString, Consumer<ObservationData> consumer) {
         if (queryString == null)
             queryString = "";
         if (!queryString.isEmpty() && !queryString.startsWith("?"))
@@ -275,21 +393,122 @@ public class ConSysApiClientExtras {
                 contextData.dsInfo = dataStream;
 
                 var ctx = new RequestContext(body);
+                ctx.setData(contextData);
+                ctx.setFormat(ResourceFormat.OM_JSON);
 
-                JsonObject bodyJson = JsonParser.parseReader(new InputStreamReader(ctx.getInputStream())).getAsJsonObject();
-                JsonArray features = bodyJson.getAsJsonArray(JSON_ARRAY_ITEMS);
+                int[] count = {0};
+                var binding = new ObservationBindingOmJson(ctx, null, true);
+                binding.deserializeCollection(obs -> {
+                    consumer.accept(obs);
+                    count[0]++;
+                });
 
-                List<ObservationData> observations = new ArrayList<>();
-                for (var feature : features) {
-                    var ctx2 = new RequestContext(new ByteArrayInputStream(feature.toString().getBytes()));
-                    ctx2.setData(contextData);
-                    ctx2.setFormat(ResourceFormat.OM_JSON);
+                return count[0];
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Stream a set of observations for a data stream with a query string to a consumer, requesting the given format.
+     * With {@link ResourceFormat#SWE_BINARY}, results are decoded directly into data blocks
+     * using the record structure of the data stream;
+     * if the node refuses the format with 406 or 415, or the data stream has no time stamp,
+     * the observations are requested in {@link ResourceFormat#OM_JSON} instead.
+     *
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param queryString  The query string to include in the request.
+     *                     See {@link #getObservations(String, IDataStreamInfo, String)} for valid parameters.
+     * @param format       The format to request, either {@link ResourceFormat#OM_JSON} or {@link ResourceFormat#SWE_BINARY}.
+     * @param consumer     Called with each observation, in response order, on the request executor.
+     * @return The number of observations passed to the consumer.
+     */
+    public CompletableFuture<Integer> forEachObservation(String dataStreamId, IDataStreamInfo dataStream, String queryString,
+                                                        ResourceFormat format, Consumer<ObservationData> consumer) {
+        if (!ResourceFormat.SWE_BINARY.equals(format) || !ObservationReaderSweBinary.isSupported(dataStream)) {
+            return forEachObservation(dataStreamId, dataStream, queryString, consumer);
+        }
+
+        if (queryString == null)
+            queryString = "";
+        if (!queryString.isEmpty() && !queryString.startsWith("?"))
+            queryString = "?" + queryString;
+
+        String url = DATASTREAMS_COLLECTION + "/" + dataStreamId + "/" + OBSERVATIONS_COLLECTION + queryString;
+        String jsonQueryString = queryString;
+
+        CompletableFuture<Integer> binary = sendGetRequest(endpoint.resolve(url), ResourceFormat.SWE_BINARY, body -> {
+            try {
+                return new ObservationReaderSweBinary(dataStream, dataStreamId, body).readAll(consumer);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        // The consumer has not been called if the node refused the format
+        return binary.handle((count, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(count);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof HttpStatusException && ((HttpStatusException) cause).isUnsupportedFormat()) {
+                return forEachObservation(dataStreamId, dataStream, jsonQueryString, consumer);
+            }
+            return CompletableFuture.<Integer>failedFuture(cause);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Get the first page of a set of observations for a data stream with a query string.
+     * Use {@link #getObservationsPage(URI, IDataStreamInfo)} with the link returned by
+     * {@link CollectionPage#getNextLink()} to get the following pages.
+     *
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param queryString  The query string to include in the request.
+     *                     See {@link #getObservations(String, IDataStreamInfo, String)} for valid parameters.
+     *                     The limit parameter sets the page size.
+     * @return The page of observations.
+     */
+    public CompletableFuture<CollectionPage<ObservationData>> getObservationsPage(String dataStreamId, IDataStreamInfo dataStream, String queryString) {
+        if (queryString == null)
+            queryString = "";
+        if (!queryString.isEmpty() && !queryString.startsWith("?"))
+            queryString = "?" + queryString;
+
+        String url = DATASTREAMS_COLLECTION + "/" + dataStreamId + "/" + OBSERVATIONS_COLLECTION + queryString;
+        return getObservationsPage(endpoint.resolve(url), dataStream);
+    }
 
-                    var binding = new ObservationBindingOmJson(ctx2, null, true);
-                    observations.add(binding.deserialize());
-                }
+    /**
+     * Get a page of observations for a data stream from its URI,
+     * typically the link to the next page of a previous response.
+     *
+     * @param pageUri    The URI of the page. Must be on this node, as credentials are sent with the request.
+     * @param dataStream The data stream object.
+     * @return The page of observations.
+     */
+    public CompletableFuture<CollectionPage<ObservationData>> getObservationsPage(URI pageUri, IDataStreamInfo dataStream) {
+        if (!isSameOrigin(pageUri)) {
+            return CompletableFuture.failedFuture(new IOException("Page is not on this node: " + pageUri));
+        }
 
-                return observations;
+        return sendGetRequest(pageUri, ResourceFormat.OM_JSON, body -> {
+            try {
+                ObsHandler.ObsHandlerContextData contextData = new ObsHandler.ObsHandlerContextData();
+                contextData.dsInfo = dataStream;
+
+                var ctx = new RequestContext(body);
+                ctx.setData(contextData);
+                ctx.setFormat(ResourceFormat.OM_JSON);
+
+                List<ObservationData> observations = new ArrayList<>();
+                var binding = new ObservationBindingOmJson(ctx, null, true);
+                List<Link> links = binding.deserializeCollection(observations::add, pageUri);
+
+                return new CollectionPage<>(observations, links);
             } catch (IOException e) {
                 throw new CompletionException(e);
             }
@@ -319,21 +538,8 @@ public class ConSysApiClientExtras {
 
         return sendGetRequest(endpoint.resolve(SYSTEMS_COLLECTION + "/" + systemID + "/" + CONTROLS_COLLECTION + queryString), ResourceFormat.JSON, body -> {
             try {
-                var ctx = new RequestContext(body);
-
-                JsonObject bodyJson = JsonParser.parseReader(new InputStreamReader(ctx.getInputStream())).getAsJsonObject();
-                JsonArray features = bodyJson.getAsJsonArray(JSON_ARRAY_ITEMS);
-
                 List<String> controlStreams = new ArrayList<>();
-                for (var feature : features) {
-                    // Get the ID
-                    var id = feature.getAsJsonObject().entrySet().stream()
-                            .filter(e -> e.getKey().equals("id"))
-                            .findFirst()
-                            .orElseThrow(() -> new IOException("No id found in feature"));
-                    controlStreams.add(id.getValue().getAsString());
-                }
-
+                JsonCollectionReader.readItemIds(newJsonReader(body), controlStreams::add);
                 return controlStreams;
             } catch (IOException e) {
                 throw new CompletionException(e);
@@ -463,151 +669,290 @@ public class ConSysApiClientExtras {
                 contextData.csInfo = commandStreamInfo;
 
                 var ctx = new RequestContext(body);
-                JsonObject bodyJson = JsonParser.parseReader(new InputStreamReader(ctx.getInputStream())).getAsJsonObject();
-                JsonArray features = bodyJson.getAsJsonArray(JSON_ARRAY_ITEMS);
-
-                List<CommandData> observations = new ArrayList<>();
-                for (var feature : features) {
-                    var ctx2 = new RequestContext(new ByteArrayInputStream(feature.toString().getBytes()));
-                    ctx2.setData(contextData);
-                    ctx2.setFormat(ResourceFormat.OM_JSON);
+                ctx.setData(contextData);
+                ctx.setFormat(ResourceFormat.OM_JSON);
 
-                    var binding = new CommandBindingJson(ctx2, null, true);
-                    observations.add(binding.deserialize());
-                }
+                List<CommandData> commands = new ArrayList<>();
+                var binding = new CommandBindingJson(ctx, null, true);
+                binding.deserializeCollection(commands::add);
 
-                return observations;
+                return commands;
             } catch (IOException e) {
                 throw new CompletionException(e);
             }
         });
     }
 
+    /**
+     * Whether the URI has the same scheme, host and port as the endpoint of this client.
+     */
+    protected boolean isSameOrigin(URI uri) {
+        return uri != null && uri.getScheme() != null && uri.getHost() != null
+                && endpoint.getScheme().equalsIgnoreCase(uri.getScheme())
+                && endpoint.getHost().equalsIgnoreCase(uri.getHost())
+                && effectivePort(endpoint) == effectivePort(uri);
+    }
+
+    private static int effectivePort(URI uri) {
+        if (uri.getPort() != -1) return uri.getPort();
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    /**
+     * Create a JSON reader over a response body.
+     *
+     * @param body The response body.
+     * @return The JSON reader.
+     */
+    protected JsonReader newJsonReader(InputStream body) {
+        return new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
     protected <T> CompletableFuture<T> sendGetRequest(URI collectionUri, ResourceFormat format, Function<InputStream, T> bodyMapper) {
-        return CompletableFuture.supplyAsync(() -> {
-            HttpURLConnection connection = null;
-            try {
-                URL url = collectionUri.toURL();
-                connection = (HttpURLConnection) url.openConnection();
-                if (authenticator != null) {
-                    Authenticator.setDefault(authenticator);
-                }
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty(HttpHeaders.ACCEPT, format.getMimeType());
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == 200) {
-                    try (InputStream is = connection.getInputStream()) {
-                        return bodyMapper.apply(is);
-                    }
-                } else {
-                    throw new CompletionException("HTTP error " + responseCode, null);
-                }
-            } catch (IOException e) {
-                throw new CompletionException(e);
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
+        HttpRequest request = newRequestBuilder(collectionUri)
+                .GET()
+                .header(HttpHeaders.ACCEPT, format.getMimeType())
+                .build();
+
+        return requestLimiter.submit(() -> {
+            // Fail the request before sending it, rather than after its response has been received
+            if (RequestExecutors.isSaturated(executor)) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Request executor is saturated."));
             }
+
+            return exchange(client -> {
+                CompletableFuture<T> result = new CompletableFuture<>();
+                client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).whenComplete((response, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                        return;
+                    }
+
+                    try {
+                        executor.execute(() -> {
+                            try (InputStream is = response.body()) {
+                                if (response.statusCode() == 200) {
+                                    result.complete(bodyMapper.apply(is));
+                                } else {
+                                    result.completeExceptionally(new CompletionException(new HttpStatusException(response.statusCode())));
+                                }
+                            } catch (IOException e) {
+                                result.completeExceptionally(new CompletionException(e));
+                            } catch (RuntimeException e) {
+                                result.completeExceptionally(e);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // The executor filled up while the request was in flight
+                        closeQuietly(response.body());
+                        result.completeExceptionally(e);
+                    }
+                });
+                return result;
+            });
         });
     }
 
-    protected CompletableFuture<String> sendPostRequest(URI collectionUri, ResourceFormat format, byte[] body) {
-        return CompletableFuture.supplyAsync(() -> {
-            HttpURLConnection connection = null;
+    /**
+     * Run an exchange with the HTTP client, creating the client again if it was closed for idleness.
+     * The client is not closed until the future returned by the exchange completes.
+     */
+    private <T> CompletableFuture<T> exchange(Function<HttpClient, CompletableFuture<T>> exchange) {
+        HttpClient client = acquireHttpClient();
+        CompletableFuture<T> future;
+        try {
+            future = exchange.apply(client);
+        } catch (RuntimeException e) {
+            releaseHttpClient();
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, error) -> releaseHttpClient());
+        return future;
+    }
+
+    private synchronized HttpClient acquireHttpClient() {
+        if (http == null) {
+            http = httpClientBuilder.build();
+        }
+        activeRequests++;
+        return http;
+    }
+
+    private synchronized void releaseHttpClient() {
+        if (--activeRequests > 0 || idleTimeout == null || httpClientBuilder == null) return;
+
+        idleSince = System.nanoTime();
+        if (!idleCheckScheduled) {
+            idleCheckScheduled = true;
+            scheduleIdleCheck(idleTimeout.toNanos());
+        }
+    }
+
+    private void scheduleIdleCheck(long delayNanos) {
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(this::closeIfIdle);
+    }
+
+    /**
+     * Close the HTTP client, and with it the connections it keeps open,
+     * if no request was sent to the node for the idle timeout; the next request creates a new client.
+     */
+    private void closeIfIdle() {
+        HttpClient idleClient;
+        synchronized (this) {
+            if (activeRequests > 0) {
+                // The check is scheduled again when the last request in flight completes
+                idleCheckScheduled = false;
+                return;
+            }
+
+            long remaining = idleTimeout.toNanos() - (System.nanoTime() - idleSince);
+            if (remaining > 0) {
+                scheduleIdleCheck(remaining);
+                return;
+            }
+
+            idleCheckScheduled = false;
+            idleClient = http;
+            http = null;
+        }
+
+        // HttpClient can be closed from Java 21; on earlier versions, its connections are closed once it is garbage collected
+        if (idleClient instanceof AutoCloseable closeable) {
             try {
-                URL url = collectionUri.toURL();
-                connection = (HttpURLConnection) url.openConnection();
-                if (authenticator != null) {
-                    Authenticator.setDefault(authenticator);
-                }
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType());
-                connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, format.getMimeType());
-                connection.setDoOutput(true);
-
-                try (OutputStream os = connection.getOutputStream()) {
-                    os.write(body);
-                }
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == 201 || responseCode == 303) {
-                    String location = connection.getHeaderField(HttpHeaders.LOCATION);
-                    if (location == null) {
-                        throw new IllegalStateException("Missing Location header in response");
+                closeable.close();
+            } catch (Exception e) {
+                // The client is discarded regardless
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // The response is discarded regardless
+        }
+    }
+
+    protected CompletableFuture<String> sendPostRequest(URI collectionUri, ResourceFormat format, byte[] body) {
+        HttpRequest request = newRequestBuilder(collectionUri)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType())
+                .header(HttpHeaders.CONTENT_TYPE, format.getMimeType())
+                .build();
+
+        return requestLimiter.submit(() -> exchange(client -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    int responseCode = response.statusCode();
+                    if (responseCode == 201 || responseCode == 303) {
+                        String location = response.headers().firstValue(HttpHeaders.LOCATION)
+                                .orElseThrow(() -> new IllegalStateException("Missing Location header in response"));
+                        return location.substring(location.lastIndexOf('/') + 1);
+                    } else if (responseCode == 200) {
+                        return response.body();
+                    } else {
+                        throw new CompletionException(new HttpStatusException(responseCode));
                     }
-                    return location.substring(location.lastIndexOf('/') + 1);
-                } else if (responseCode == 200) {
-                    try (InputStream is = connection.getInputStream()) {
-                        return new String(is.readAllBytes());
+                })));
+    }
+
+    /**
+     * Send a POST request creating several resources.
+     *
+     * @return The IDs of the created resources, from the Location headers of the response, in order.
+     */
+    protected CompletableFuture<List<String>> sendBatchPostRequest(URI collectionUri, ResourceFormat format, byte[] body) {
+        HttpRequest request = newRequestBuilder(collectionUri)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType())
+                .header(HttpHeaders.CONTENT_TYPE, format.getMimeType())
+                .build();
+
+        return requestLimiter.submit(() -> exchange(client -> client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> {
+                    int responseCode = response.statusCode();
+                    if (responseCode != 200 && responseCode != 201 && responseCode != 204 && responseCode != 303) {
+                        throw new CompletionException(new HttpStatusException(responseCode));
                     }
-                } else {
-                    throw new CompletionException("HTTP error " + responseCode, null);
-                }
-            } catch (IOException e) {
-                throw new CompletionException(e);
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            }
-        });
+
+                    List<String> ids = new ArrayList<>();
+                    for (String location : response.headers().allValues(HttpHeaders.LOCATION)) {
+                        ids.add(location.substring(location.lastIndexOf('/') + 1));
+                    }
+                    return ids;
+                })));
     }
 
     protected CompletableFuture<Integer> sendPutRequest(URI collectionUri, ResourceFormat format, byte[] body) {
-        return CompletableFuture.supplyAsync(() -> {
-            HttpURLConnection connection = null;
-            try {
-                URL url = collectionUri.toURL();
-                connection = (HttpURLConnection) url.openConnection();
-                if (authenticator != null) {
-                    Authenticator.setDefault(authenticator);
-                }
-                connection.setRequestMethod("PUT");
-                connection.setRequestProperty(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType());
-                connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, format.getMimeType());
-                connection.setDoOutput(true);
-
-                try (OutputStream os = connection.getOutputStream()) {
-                    os.write(body);
-                }
-
-                return connection.getResponseCode();
-            } catch (IOException e) {
-                throw new CompletionException(e);
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            }
-        });
+        HttpRequest request = newRequestBuilder(collectionUri)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType())
+                .header(HttpHeaders.CONTENT_TYPE, format.getMimeType())
+                .build();
+
+        return requestLimiter.submit(() -> exchange(client -> client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpResponse::statusCode)));
     }
 
     protected CompletableFuture<Integer> sendDeleteRequest(URI collectionUri) {
-        return CompletableFuture.supplyAsync(() -> {
-            HttpURLConnection connection = null;
-            try {
-                URL url = collectionUri.toURL();
-                connection = (HttpURLConnection) url.openConnection();
-                if (authenticator != null) {
-                    Authenticator.setDefault(authenticator);
-                }
-                connection.setRequestMethod("DELETE");
-                connection.setRequestProperty(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType());
-
-                return connection.getResponseCode();
-            } catch (IOException e) {
-                throw new CompletionException(e);
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            }
-        });
+        HttpRequest request = newRequestBuilder(collectionUri)
+                .DELETE()
+                .header(HttpHeaders.ACCEPT, ResourceFormat.JSON.getMimeType())
+                .build();
+
+        return requestLimiter.submit(() -> exchange(client -> client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpResponse::statusCode)));
+    }
+
+    /**
+     * Create a request builder for the given URI, including the Authorization header if credentials were provided.
+     * Credentials are sent preemptively, so authenticated requests do not wait for a 401 challenge.
+     *
+     * @param uri The URI of the request.
+     * @return The request builder.
+     */
+    protected HttpRequest.Builder newRequestBuilder(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        if (authorizationHeader != null) {
+            builder.header(HttpHeaders.AUTHORIZATION, authorizationHeader);
+        }
+        return builder;
+    }
+
+    /**
+     * The underlying HTTP client.
+     * Connections are kept alive and reused across requests,
+     * and HTTP/2 is negotiated when the server supports it.
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (http == null) {
+            http = httpClientBuilder.build();
+        }
+        return http;
+    }
+
+    /**
+     * The executor running response decoding, which may block while the response body is streamed.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The limiter bounding the number of requests this client has in flight.
+     */
+    public RequestLimiter getRequestLimiter() {
+        return requestLimiter;
     }
 
     public static class ConSysApiClientExtrasBuilder extends BaseBuilder<ConSysApiClientExtras> {
+        private final HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2);
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
         ConSysApiClientExtrasBuilder(String endpoint) {
             this.instance = new ConSysApiClientExtras();
 
@@ -620,22 +965,106 @@ public class ConSysApiClientExtras {
             }
         }
 
+        /**
+         * Use HTTP basic authentication for all requests of this client.
+         * The credentials are sent preemptively with every request, instead of waiting for a 401 challenge.
+         *
+         * @param user     The username.
+         * @param password The password.
+         */
         public ConSysApiClientExtras.ConSysApiClientExtrasBuilder simpleAuth(String user, char[] password) {
             if (!Strings.isNullOrEmpty(user)) {
                 var finalPwd = password != null ? password : new char[0];
-                instance.authenticator = new Authenticator() {
-                    @Override
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(user, finalPwd);
-                    }
-                };
+                String credentials = user + ":" + new String(finalPwd);
+                instance.authorizationHeader = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+            }
+
+            return this;
+        }
+
+        /**
+         * Use an existing HTTP client instead of creating a new one,
+         * for example to share a connection pool between clients.
+         * The connection settings of this builder are ignored when an HTTP client is provided.
+         *
+         * @param http The HTTP client.
+         */
+        public ConSysApiClientExtras.ConSysApiClientExtrasBuilder useHttpClient(HttpClient http) {
+            instance.http = http;
+            return this;
+        }
+
+        /**
+         * The maximum number of requests in flight at the same time.
+         * Over HTTP/1.1, this is also the maximum number of pooled connections opened to the node;
+         * over HTTP/2, requests are multiplexed over a single connection.
+         * Zero or negative values mean no limit.
+         *
+         * @param maxConnections The maximum number of concurrent requests.
+         */
+        public ConSysApiClientExtras.ConSysApiClientExtrasBuilder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * The time the connections of this client are kept open without any request.
+         * Once no request has been sent for this duration, the HTTP client is closed along with its connections,
+         * and a new one is created for the next request.
+         * Ignored when an HTTP client is provided.
+         *
+         * @param idleTimeout The idle timeout, or null to keep the connections open.
+         */
+        public ConSysApiClientExtras.ConSysApiClientExtrasBuilder idleTimeout(Duration idleTimeout) {
+            instance.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * The executor running response decoding.
+         * If not set, {@link RequestExecutors#getDefaultExecutor()} is used.
+         *
+         * @param executor The executor.
+         */
+        public ConSysApiClientExtras.ConSysApiClientExtrasBuilder executor(Executor executor) {
+            instance.executor = executor;
+            return this;
+        }
+
+        /**
+         * The maximum time to wait for a connection to the node to be established.
+         *
+         * @param connectTimeout The connection timeout.
+         */
+        public ConSysApiClientExtras.ConSysApiClientExtrasBuilder connectTimeout(Duration connectTimeout) {
+            if (connectTimeout != null) {
+                httpClientBuilder.connectTimeout(connectTimeout);
             }
+            return this;
+        }
 
+        /**
+         * The maximum time to wait for the response to each request, up to the response headers;
+         * streaming the response body is not limited.
+         * A request exceeding it fails with an {@link java.net.http.HttpTimeoutException}, freeing its slot in the request limiter.
+         *
+         * @param requestTimeout The request timeout, or null to wait indefinitely.
+         */
+        public ConSysApiClientExtras.ConSysApiClientExtrasBuilder requestTimeout(Duration requestTimeout) {
+            instance.requestTimeout = requestTimeout;
             return this;
         }
 
         @Override
         public ConSysApiClientExtras build() {
+            if (instance.http == null) {
+                instance.httpClientBuilder = httpClientBuilder;
+                instance.http = httpClientBuilder.build();
+            }
+            if (instance.executor == null) {
+                instance.executor = RequestExecutors.getDefaultExecutor();
+            }
+            instance.requestLimiter = new RequestLimiter(maxConnections);
             return instance;
         }
     }
@@ -0,0 +1,37 @@
+package org.sensorhub.oshconnect.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a node answers a request with an unexpected HTTP status code.
+ */
+public class HttpStatusException extends IOException {
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode) {
+        super("HTTP error " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * The HTTP status code of the response.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Whether the request was rejected by the node, as opposed to failing on the node.
+     */
+    public boolean isClientError() {
+        return statusCode >= 400 && statusCode < 500;
+    }
+
+    /**
+     * Whether the node refused the format of the request or of the response,
+     * i.e., 406 Not Acceptable or 415 Unsupported Media Type.
+     */
+    public boolean isUnsupportedFormat() {
+        return statusCode == 406 || statusCode == 415;
+    }
+}
@@ -0,0 +1,183 @@
+package org.sensorhub.oshconnect.net;
+
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups observations published to a data stream into batches, each sent to the node in a single request.
+ * <p>
+ * A batch is sent when it reaches the maximum batch size,
+ * or when its first observation has waited for the maximum linger time, whichever comes first.
+ * Publishing never blocks on the network; the returned future completes when the batch is accepted by the node.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ObservationBatchPublisher implements AutoCloseable {
+    /**
+     * The default maximum number of observations per batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    /**
+     * The default maximum time an observation waits for its batch to be sent.
+     */
+    public static final Duration DEFAULT_MAX_LINGER = Duration.ofMillis(100);
+    private static ScheduledExecutorService lingerScheduler;
+
+    private final ConSysApiClientExtras client;
+    private final String dataStreamId;
+    private final IDataStreamInfo dataStream;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+
+    private List<ObservationData> batch;
+    private CompletableFuture<List<String>> batchResult;
+    private ScheduledFuture<?> lingerTimer;
+    private CompletableFuture<Void> lastSent = CompletableFuture.completedFuture(null);
+    private boolean closed;
+
+    /**
+     * @param client       The client used to send the requests.
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param maxBatchSize The maximum number of observations per batch.
+     * @param maxLinger    The maximum time an observation waits for its batch to be sent.
+     */
+    public ObservationBatchPublisher(ConSysApiClientExtras client, String dataStreamId, IDataStreamInfo dataStream,
+                                     int maxBatchSize, Duration maxLinger) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max batch size must be greater than 0");
+        }
+        if (maxLinger == null || maxLinger.isNegative()) {
+            throw new IllegalArgumentException("Max linger must not be negative");
+        }
+
+        this.client = client;
+        this.dataStreamId = dataStreamId;
+        this.dataStream = dataStream;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = maxLinger.toNanos();
+    }
+
+    /**
+     * Add an observation to the current batch.
+     *
+     * @param observation The observation.
+     * @return A future completed with the IDs of the observations of the batch when the batch is accepted by the node,
+     * or completed exceptionally if the batch could not be sent.
+     * @throws IllegalStateException If the publisher is closed.
+     */
+    public synchronized CompletableFuture<List<String>> publish(ObservationData observation) {
+        if (closed) {
+            throw new IllegalStateException("Publisher is closed");
+        }
+
+        if (batch == null) {
+            batch = new ArrayList<>(Math.min(maxBatchSize, 1024));
+            batchResult = new CompletableFuture<>();
+            if (maxLingerNanos > 0 && maxBatchSize > 1) {
+                List<ObservationData> lingering = batch;
+                lingerTimer = getLingerScheduler().schedule(() -> flush(lingering), maxLingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        batch.add(observation);
+        CompletableFuture<List<String>> result = batchResult;
+        if (batch.size() >= maxBatchSize || maxLingerNanos == 0) {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * Send the current batch now, without waiting for it to fill up or for the linger time to elapse.
+     *
+     * @return A future completed when all batches sent so far are done.
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        if (batch == null) {
+            return lastSent;
+        }
+
+        if (lingerTimer != null) {
+            lingerTimer.cancel(false);
+            lingerTimer = null;
+        }
+
+        List<ObservationData> toSend = batch;
+        CompletableFuture<List<String>> result = batchResult;
+        batch = null;
+        batchResult = null;
+
+        CompletableFuture<List<String>> sent;
+        try {
+            sent = client.pushObservations(dataStreamId, dataStream, toSend);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((ids, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(ids);
+            }
+        });
+
+        CompletableFuture<Void> batchDone = result.handle((ids, error) -> null);
+        lastSent = CompletableFuture.allOf(lastSent, batchDone);
+        return lastSent;
+    }
+
+    /**
+     * Send a batch when its linger time has elapsed, unless it has already been sent.
+     */
+    private synchronized void flush(List<ObservationData> lingering) {
+        if (batch == lingering) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the current batch and stop accepting observations.
+     * Does not wait for the batches to be sent; use {@link #flush()} for that.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        flush();
+        closed = true;
+    }
+
+    /**
+     * The maximum number of observations per batch.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * The maximum time an observation waits for its batch to be sent.
+     */
+    public Duration getMaxLinger() {
+        return Duration.ofNanos(maxLingerNanos);
+    }
+
+    private static synchronized ScheduledExecutorService getLingerScheduler() {
+        if (lingerScheduler == null) {
+            lingerScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "oshconnect-batch-linger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return lingerScheduler;
+    }
+}
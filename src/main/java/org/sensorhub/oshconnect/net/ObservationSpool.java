@@ -0,0 +1,572 @@
+package org.sensorhub.oshconnect.net;
+
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.impl.service.consys.obs.ObsHandler;
+import org.sensorhub.impl.service.consys.resource.RequestContext;
+import org.sensorhub.impl.service.consys.resource.ResourceFormat;
+import org.sensorhub.oshconnect.datamodels.ObservationBindingOmJson;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable store-and-forward spool for the observations of a data stream.
+ * <p>
+ * Observations are appended to a log of memory-mapped segment files in a directory,
+ * each record being the OM-JSON encoding of an observation prefixed by its length.
+ * A background drainer uploads the records in order, in batches of up to {@code batchSize} observations,
+ * and persists the position of the first record not yet accepted by the node in an acknowledgement file
+ * protected by a CRC32.
+ * Fully acknowledged segments are deleted. Failed uploads are retried with exponential backoff,
+ * so observations are kept on disk, not on the heap, while the node is unreachable.
+ * <p>
+ * Delivery is at least once: after a crash, the records following the last acknowledged position are uploaded again.
+ * Records are written to the page cache of the operating system, so they survive a crash of the process;
+ * call {@link #sync()} to also write them to the storage device.
+ * When the node rejects a batch as invalid (HTTP 400 or 422), the batch is bisected and its halves uploaded again,
+ * until the invalid records are isolated. Only those records are skipped and counted in {@link #getRejectedCount()},
+ * so a single invalid record neither blocks the spool nor discards the valid records of its batch.
+ * Any other error, including a missing data stream, is retried and keeps the records on disk.
+ * <p>
+ * This class is thread-safe. A directory must be used by a single spool at a time.
+ */
+public class ObservationSpool implements AutoCloseable {
+    /**
+     * The default size of a segment file, in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * The default maximum number of observations per upload.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    static final long MIN_RETRY_DELAY_MS = 500;
+    static final long MAX_RETRY_DELAY_MS = 30_000;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACK_FILE = "ack";
+    private static final int ACK_FILE_SIZE = 20;
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final Path directory;
+    private final ConSysApiClientExtras client;
+    private final String dataStreamId;
+    private final IDataStreamInfo dataStream;
+    private final int segmentSize;
+    private final int batchSize;
+    private final CRC32 ackCrc = new CRC32();
+    private final ByteBuffer ackPosition = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final TreeSet<Long> segments = new TreeSet<>();
+    private final MappedByteBuffer ackBuffer;
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong uploadedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private int writeOffset;
+
+    private long ackSegment;
+    private int ackOffset;
+    private long readSegment = -1;
+    private MappedByteBuffer readBuffer;
+
+    /**
+     * Open a spool in a directory, recovering the records not yet uploaded, and start its drainer.
+     *
+     * @param directory    The directory of the segment files, created if needed.
+     * @param client       The client used to upload the observations.
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param segmentSize  The size of a segment file, in bytes.
+     * @param batchSize    The maximum number of observations per upload.
+     * @throws IOException If the directory cannot be read or written.
+     */
+    public ObservationSpool(Path directory, ConSysApiClientExtras client, String dataStreamId, IDataStreamInfo dataStream,
+                            int segmentSize, int batchSize) throws IOException {
+        if (segmentSize <= LENGTH_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + LENGTH_SIZE);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+
+        this.directory = directory;
+        this.client = client;
+        this.dataStreamId = dataStreamId;
+        this.dataStream = dataStream;
+        this.segmentSize = segmentSize;
+        this.batchSize = batchSize;
+
+        Files.createDirectories(directory);
+        ackBuffer = map(directory.resolve(ACK_FILE), ACK_FILE_SIZE);
+        recover();
+
+        drainer = new Thread(this::drain, "oshconnect-spool-" + dataStreamId);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Open a spool in a directory with the default segment and batch sizes.
+     *
+     * @see #ObservationSpool(Path, ConSysApiClientExtras, String, IDataStreamInfo, int, int)
+     */
+    public ObservationSpool(Path directory, ConSysApiClientExtras client, String dataStreamId, IDataStreamInfo dataStream) throws IOException {
+        this(directory, client, dataStreamId, dataStream, DEFAULT_SEGMENT_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Append an observation to the spool, to be uploaded by the drainer.
+     *
+     * @param observation The observation.
+     * @throws IOException If the observation cannot be written.
+     */
+    public void append(ObservationData observation) throws IOException {
+        byte[] record = serialize(observation);
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Spool is closed");
+            }
+
+            if (writeOffset + LENGTH_SIZE + record.length > writeBuffer.capacity()) {
+                rollSegment(record.length);
+            }
+
+            // Write the record before its length, so a partially written record is never read
+            writeBuffer.put(writeOffset + LENGTH_SIZE, record);
+            writeBuffer.putInt(writeOffset, record.length);
+            writeOffset += LENGTH_SIZE + record.length;
+
+            pendingCount.incrementAndGet();
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the records appended so far to the storage device.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            writeBuffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the drainer and release the current segment.
+     * Records not yet uploaded are kept on disk and recovered when a spool is opened on the same directory.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            writeBuffer.force();
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        drainer.interrupt();
+        drainer.join();
+    }
+
+    /**
+     * The number of observations not yet accepted by the node.
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * The number of observations uploaded since the spool was opened.
+     */
+    public long getUploadedCount() {
+        return uploadedCount.get();
+    }
+
+    /**
+     * The number of observations skipped since the spool was opened because the node rejected them as invalid.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * The directory of the segment files.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private byte[] serialize(ObservationData observation) throws IOException {
+        ObsHandler.ObsHandlerContextData contextData = new ObsHandler.ObsHandlerContextData();
+        contextData.dsInfo = dataStream;
+
+        var buffer = new ByteArrayOutputStream();
+        var ctx = new RequestContext(buffer);
+        ctx.setData(contextData);
+        ctx.setFormat(ResourceFormat.OM_JSON);
+
+        new ObservationBindingOmJson(ctx, null, false).serialize(null, observation, false);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Restore the acknowledged position, delete acknowledged segments,
+     * and find the end of the last segment to resume writing.
+     */
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment of this spool
+                }
+            }
+        }
+
+        long savedSegment = ackBuffer.getLong(0);
+        int savedOffset = ackBuffer.getInt(8);
+        if (ackBuffer.getLong(12) == ackChecksum(savedSegment, savedOffset)) {
+            ackSegment = savedSegment;
+            ackOffset = savedOffset;
+        } else {
+            // No or torn acknowledgement: upload everything again
+            ackSegment = segments.isEmpty() ? 0 : segments.first();
+            ackOffset = 0;
+        }
+
+        while (!segments.isEmpty() && segments.first() < ackSegment) {
+            Files.deleteIfExists(segmentPath(segments.pollFirst()));
+        }
+
+        if (segments.isEmpty()) {
+            writeSegment = ackSegment;
+            writeBuffer = map(segmentPath(writeSegment), segmentSize);
+            writeOffset = 0;
+            segments.add(writeSegment);
+            ackOffset = 0;
+            return;
+        }
+
+        if (segments.first() > ackSegment) {
+            ackSegment = segments.first();
+            ackOffset = 0;
+        }
+
+        long count = 0;
+        for (long segment : segments) {
+            MappedByteBuffer buffer = map(segmentPath(segment), 0);
+            int offset = segment == ackSegment ? ackOffset : 0;
+            int end = offset;
+            while (true) {
+                int length = recordLength(buffer, end);
+                if (length <= 0) break;
+                end += LENGTH_SIZE + length;
+                count++;
+            }
+
+            if (segment == segments.last()) {
+                writeSegment = segment;
+                writeBuffer = buffer;
+                writeOffset = end;
+            }
+        }
+        pendingCount.set(count);
+    }
+
+    /**
+     * Seal the current segment and start a new one large enough for the next record.
+     */
+    private void rollSegment(int recordLength) throws IOException {
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(segmentPath(writeSegment), Math.max(segmentSize, LENGTH_SIZE + recordLength));
+        writeOffset = 0;
+        segments.add(writeSegment);
+    }
+
+    /**
+     * Upload batches of records in order until the spool is closed.
+     */
+    private void drain() {
+        long retryDelay = MIN_RETRY_DELAY_MS;
+
+        while (!closed) {
+            Batch batch;
+            try {
+                batch = awaitBatch();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!sleep(retryDelay)) return;
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+                continue;
+            }
+            if (batch == null) continue;
+
+            try {
+                upload(batch, 0, batch.size());
+                retryDelay = MIN_RETRY_DELAY_MS;
+            } catch (InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                // The records following the last acknowledged one are read again on the next attempt
+                if (!sleep(retryDelay)) return;
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * Upload a range of the records of a batch and acknowledge them.
+     * A range rejected as invalid is bisected until the invalid records are isolated and skipped.
+     *
+     * @param from The index of the first record, inclusive.
+     * @param to   The index of the last record, exclusive.
+     * @throws ExecutionException If the upload failed for another reason than invalid records,
+     *                            in which case the records from the first one not acknowledged must be uploaded again.
+     */
+    private void upload(Batch batch, int from, int to) throws InterruptedException, ExecutionException {
+        try {
+            client.pushSerializedObservations(dataStreamId, batch.body(from, to)).get();
+            uploadedCount.addAndGet(to - from);
+        } catch (ExecutionException e) {
+            if (!isRejected(e.getCause())) throw e;
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                upload(batch, from, middle);
+                upload(batch, middle, to);
+                return;
+            }
+            rejectedCount.incrementAndGet();
+        }
+
+        try {
+            acknowledge(batch, to);
+        } catch (IOException e) {
+            // The acknowledgement will be persisted with the next records
+        }
+    }
+
+    /**
+     * Wait for records to upload and read the next batch.
+     *
+     * @return The batch, or null if the spool was closed or the wait timed out.
+     */
+    private Batch awaitBatch() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            while (!closed) {
+                Batch batch = readBatch();
+                if (batch != null) return batch;
+                if (!dataAvailable.await(1, TimeUnit.SECONDS)) return null;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the records following the acknowledged position as a JSON array.
+     * Must be called with the lock held.
+     *
+     * @return The batch, or null if there are no records.
+     */
+    private Batch readBatch() throws IOException {
+        long segment = ackSegment;
+        int offset = ackOffset;
+        Batch batch = new Batch();
+
+        while (batch.size() < batchSize) {
+            MappedByteBuffer buffer = segmentBuffer(segment);
+            int length = recordLength(buffer, offset);
+            if (length <= 0) {
+                Long next = segments.higher(segment);
+                if (next == null) break;
+                segment = next;
+                offset = 0;
+                continue;
+            }
+
+            byte[] record = new byte[length];
+            buffer.get(offset + LENGTH_SIZE, record);
+            offset += LENGTH_SIZE + length;
+            batch.add(record, segment, offset);
+        }
+
+        return batch.size() > 0 ? batch : null;
+    }
+
+    /**
+     * Persist the position following the first records of a batch and delete the segments before it.
+     *
+     * @param count The number of records of the batch accepted or skipped so far.
+     */
+    private void acknowledge(Batch batch, int count) throws IOException {
+        lock.lock();
+        try {
+            ackSegment = batch.endSegments[count - 1];
+            ackOffset = batch.endOffsets[count - 1];
+            pendingCount.addAndGet(-(count - batch.acknowledged));
+            batch.acknowledged = count;
+
+            ackBuffer.putLong(0, ackSegment);
+            ackBuffer.putInt(8, ackOffset);
+            ackBuffer.putLong(12, ackChecksum(ackSegment, ackOffset));
+            ackBuffer.force();
+
+            while (segments.first() < ackSegment) {
+                long segment = segments.pollFirst();
+                if (segment == readSegment) {
+                    readSegment = -1;
+                    readBuffer = null;
+                }
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MappedByteBuffer segmentBuffer(long segment) throws IOException {
+        if (segment == writeSegment) return writeBuffer;
+        if (segment != readSegment) {
+            readBuffer = map(segmentPath(segment), 0);
+            readSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    /**
+     * The length of the record at an offset, or 0 if there is no record.
+     */
+    private static int recordLength(MappedByteBuffer buffer, int offset) {
+        if (offset + LENGTH_SIZE > buffer.capacity()) return 0;
+        int length = buffer.getInt(offset);
+        if (length < 0 || offset + LENGTH_SIZE + length > buffer.capacity()) return 0;
+        return length;
+    }
+
+    /**
+     * The CRC32 of an acknowledged position. Must be called with the lock held or before the drainer is started.
+     */
+    private long ackChecksum(long segment, int offset) {
+        ackPosition.clear();
+        ackPosition.putLong(segment).putInt(offset).flip();
+        ackCrc.reset();
+        ackCrc.update(ackPosition);
+        return ackCrc.getValue();
+    }
+
+    /**
+     * Whether the node rejected the records as invalid, so uploading them again can never succeed.
+     * A missing data stream (404), authorization errors and throttling are not rejections, as they do not depend on the records.
+     */
+    private static boolean isRejected(Throwable error) {
+        if (!(error instanceof HttpStatusException)) return false;
+        int status = ((HttpStatusException) error).getStatusCode();
+        return status == 400 || status == 422;
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Map a file in read-write mode.
+     *
+     * @param size The size of the file, or 0 to map the existing file.
+     */
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long mappedSize = size > 0 ? Math.max(size, channel.size()) : channel.size();
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        }
+    }
+
+    /**
+     * A batch of records read from the spool, and the position following each record.
+     */
+    private class Batch {
+        final List<byte[]> records = new ArrayList<>();
+        final long[] endSegments = new long[batchSize];
+        final int[] endOffsets = new int[batchSize];
+        int acknowledged;
+
+        void add(byte[] record, long endSegment, int endOffset) {
+            endSegments[records.size()] = endSegment;
+            endOffsets[records.size()] = endOffset;
+            records.add(record);
+        }
+
+        int size() {
+            return records.size();
+        }
+
+        /**
+         * A range of the records as a JSON array.
+         */
+        byte[] body(int from, int to) {
+            int size = 1;
+            for (int i = from; i < to; i++) {
+                size += records.get(i).length + 1;
+            }
+
+            byte[] body = new byte[size];
+            int position = 0;
+            body[position++] = '[';
+            for (int i = from; i < to; i++) {
+                if (i > from) body[position++] = ',';
+                byte[] record = records.get(i);
+                System.arraycopy(record, 0, body, position, record.length);
+                position += record.length;
+            }
+            body[position] = ']';
+            return body;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.sensorhub.oshconnect.net;
+
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.oshconnect.datamodels.CollectionPage;
+import org.sensorhub.oshconnect.datamodels.Link;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
+
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the observations of a data stream one page at a time, following the {@code next} links of the server.
+ * <p>
+ * Pages are requested in the background while the caller consumes the current one:
+ * up to {@code prefetchDepth} pages beyond the current page are requested or held in memory at any time,
+ * so memory use is bounded by the page size and prefetch depth, regardless of the size of the result set.
+ * Each page is requested as soon as the link to it is known.
+ * <p>
+ * This iterator is not thread-safe.
+ * Close it to cancel outstanding requests when iteration is abandoned before the last page.
+ */
+public class PagedObservationIterator implements Iterator<ObservationData>, AutoCloseable {
+    /**
+     * The default number of observations requested per page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    /**
+     * The default number of pages requested ahead of the current page.
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 2;
+
+    private final ConSysApiClientExtras client;
+    private final IDataStreamInfo dataStream;
+    private final int prefetchDepth;
+    /**
+     * Pages requested ahead of the current page, in order.
+     * A page completing with null marks the end of the collection.
+     */
+    private final Deque<CompletableFuture<CollectionPage<ObservationData>>> pages = new ArrayDeque<>();
+    private Iterator<ObservationData> current = Collections.emptyIterator();
+    private boolean finished;
+    private volatile boolean closed;
+
+    /**
+     * Start iterating over the observations of a data stream.
+     * The first page is requested immediately.
+     *
+     * @param client        The client used to send the requests.
+     * @param dataStreamId  The ID of the data stream.
+     * @param dataStream    The data stream object.
+     * @param queryString   The query string of the first request, including the limit parameter setting the page size.
+     * @param prefetchDepth The number of pages to request ahead of the current page. Must be at least 1.
+     */
+    public PagedObservationIterator(ConSysApiClientExtras client, String dataStreamId, IDataStreamInfo dataStream, String queryString, int prefetchDepth) {
+        if (prefetchDepth < 1) {
+            throw new IllegalArgumentException("Prefetch depth must be at least 1");
+        }
+
+        this.client = client;
+        this.dataStream = dataStream;
+        this.prefetchDepth = prefetchDepth;
+
+        pages.add(client.getObservationsPage(dataStreamId, dataStream, queryString));
+        prefetch();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (finished || closed) return false;
+
+            CollectionPage<ObservationData> page;
+            try {
+                page = pages.removeFirst().join();
+            } catch (CancellationException e) {
+                finished = true;
+                return false;
+            } catch (CompletionException e) {
+                close();
+                throw e;
+            }
+
+            if (page == null) {
+                finished = true;
+                pages.clear();
+                return false;
+            }
+
+            current = page.getItems().iterator();
+            prefetch();
+        }
+        return true;
+    }
+
+    @Override
+    public ObservationData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Chain requests for the following pages until {@code prefetchDepth} pages are pending.
+     * Each request is sent when the previous page completes and its next link is known.
+     */
+    private void prefetch() {
+        while (pages.size() < prefetchDepth) {
+            CompletableFuture<CollectionPage<ObservationData>> last = pages.peekLast();
+            if (last == null) return;
+
+            pages.addLast(last.thenCompose(page -> {
+                if (page == null || closed) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                Link next = page.getNextLink();
+                if (next == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                try {
+                    return client.getObservationsPage(next.getHref().toURI(), dataStream);
+                } catch (URISyntaxException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Wrap this iterator in a sequential stream.
+     * Closing the stream closes this iterator.
+     */
+    public Stream<ObservationData> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Stop iterating and cancel the outstanding page requests.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        current = Collections.emptyIterator();
+        for (CompletableFuture<CollectionPage<ObservationData>> page : pages) {
+            page.cancel(false);
+        }
+        pages.clear();
+    }
+}
@@ -0,0 +1,155 @@
+package org.sensorhub.oshconnect.net;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the executors running REST requests and response decoding.
+ * <p>
+ * Blocking I/O should not run on the common ForkJoinPool,
+ * as it would starve every other parallel task of the process.
+ * On Java 21 or later, a virtual thread per task is the preferred option;
+ * on earlier versions, a bounded pool of platform threads is used instead.
+ * <p>
+ * Tasks are never run on the submitting thread, which may be an internal thread of the HTTP client:
+ * backpressure is applied before the requests are sent, by the {@link RequestLimiter} of each client,
+ * and a request is failed with a {@link RejectedExecutionException}, without being sent,
+ * while its executor has no room left for the decoding task.
+ */
+public class RequestExecutors {
+    /**
+     * The default number of queued tasks for a bounded executor.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final String THREAD_NAME_PREFIX = "oshconnect-io-";
+    private static ExecutorService defaultExecutor;
+
+    private RequestExecutors() {
+    }
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor starting a new virtual thread for each task.
+     *
+     * @return The executor.
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Looked up at runtime, as this library targets Java 17.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Error creating virtual thread executor", e.getCause());
+        }
+    }
+
+    /**
+     * Create a bounded executor of platform threads, with the default queue capacity.
+     *
+     * @param threads The maximum number of threads.
+     * @return The executor.
+     * @see #newBoundedExecutor(int, int)
+     */
+    public static ExecutorService newBoundedExecutor(int threads) {
+        return newBoundedExecutor(threads, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create a bounded executor of platform threads.
+     * Tasks submitted while all the threads are busy wait in a queue;
+     * when the queue is full, tasks are rejected with a {@link RejectedExecutionException}.
+     * The API clients check for room before sending a request, see {@link #isSaturated(Executor)},
+     * so a saturated executor fails new requests instead of queuing their responses.
+     *
+     * @param threads       The maximum number of threads.
+     * @param queueCapacity The maximum number of tasks waiting for a thread.
+     * @return The executor.
+     */
+    public static ExecutorService newBoundedExecutor(int threads, int queueCapacity) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be greater than 0");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be greater than 0");
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                newDaemonThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Create the preferred executor for the running JVM:
+     * a virtual thread per task if supported, otherwise a bounded pool of platform threads.
+     *
+     * @return The executor.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        if (isVirtualThreadSupported()) {
+            return newVirtualThreadExecutor();
+        }
+        return newBoundedExecutor(Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+    }
+
+    /**
+     * The executor shared by API clients that were not given one, created on first use.
+     */
+    public static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = newDefaultExecutor();
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Whether a task submitted to an executor now would be rejected,
+     * i.e., the executor is a thread pool whose threads are all busy and whose queue is full, or it has been shut down.
+     * Other executors are assumed to accept every task.
+     *
+     * @param executor The executor.
+     * @return true if the executor has no room for another task.
+     */
+    public static boolean isSaturated(Executor executor) {
+        if (executor instanceof ExecutorService service && service.isShutdown()) {
+            return true;
+        }
+        if (executor instanceof ThreadPoolExecutor pool) {
+            return pool.getQueue().remainingCapacity() == 0 && pool.getActiveCount() >= pool.getMaximumPoolSize();
+        }
+        return false;
+    }
+
+    private static ThreadFactory newDaemonThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
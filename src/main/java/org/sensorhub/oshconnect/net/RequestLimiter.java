@@ -0,0 +1,111 @@
+package org.sensorhub.oshconnect.net;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of requests a client may have in flight at the same time.
+ * <p>
+ * Requests submitted beyond the limit are queued without holding a thread,
+ * and are started in submission order as earlier requests complete.
+ * A limit of zero or less disables the limiter.
+ */
+public class RequestLimiter {
+    private final int maxInFlight;
+    private final Queue<Runnable> pendingRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param maxInFlight The maximum number of requests in flight at the same time.
+     *                    Zero or negative values disable the limit.
+     */
+    public RequestLimiter(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Submit a request.
+     * The request is started immediately if the limit has not been reached, otherwise it is queued.
+     *
+     * @param request Supplier starting the request and returning a future completed when the request is done.
+     * @return A future completed with the result of the request.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        if (maxInFlight <= 0) {
+            return request.get();
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pendingRequests.add(() -> {
+            CompletableFuture<T> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            future.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        startPendingRequests();
+
+        return result;
+    }
+
+    /**
+     * Release the slot held by a completed request and start the next pending request, if any.
+     */
+    private void release() {
+        inFlight.decrementAndGet();
+        startPendingRequests();
+    }
+
+    /**
+     * Start pending requests until the limit is reached or no requests are pending.
+     */
+    private void startPendingRequests() {
+        while (!pendingRequests.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) return;
+            if (!inFlight.compareAndSet(current, current + 1)) continue;
+
+            Runnable next = pendingRequests.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            next.run();
+        }
+    }
+
+    /**
+     * The maximum number of requests in flight at the same time.
+     * Zero or negative values mean no limit.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * The number of requests currently in flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * The number of requests waiting for a free slot.
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+}
@@ -0,0 +1,503 @@
+package org.sensorhub.oshconnect.net;
+
+import org.sensorhub.api.data.IDataStreamInfo;
+import org.sensorhub.oshconnect.datamodels.CollectionPage;
+import org.sensorhub.oshconnect.datamodels.Link;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.util.QueryStringBuilder;
+import org.vast.util.TimeExtent;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Downloads the observations of a data stream over a time range by splitting the range into shards
+ * fetched concurrently, each with its own {@code phenomenonTime} filter.
+ * Observations are returned in timestamp order, as if the range had been requested in a single query.
+ * <p>
+ * Shards adapt to the data: when a shard holds more than one page of observations,
+ * the remainder of the shard is split again according to the observation density of the first page,
+ * and the page size is adjusted so that each request takes about {@link #targetRequestTime(Duration)}.
+ * <p>
+ * Each observation is assigned to exactly one shard: shards cover {@code [start, end)},
+ * except for the last one, which also includes the end of the time range.
+ * <p>
+ * The download only reads ahead of the caller up to {@link #maxBufferedObservations(int)}:
+ * once that many observations have been received but not yet taken by the caller, no new shard is requested
+ * until the caller catches up, except the shard the caller is waiting for.
+ * <p>
+ * Configure the download before iterating; the download starts on the first call to {@link #hasNext()}.
+ * This iterator is not thread-safe. Close it to cancel outstanding requests when iteration is abandoned.
+ */
+public class ShardedObservationDownload implements Iterator<ObservationData>, AutoCloseable {
+    /**
+     * The default number of shards the time range is initially split into.
+     */
+    public static final int DEFAULT_SHARD_COUNT = 8;
+    /**
+     * The default duration of a single page request.
+     */
+    public static final Duration DEFAULT_TARGET_REQUEST_TIME = Duration.ofSeconds(1);
+    /**
+     * The default number of observations received ahead of the caller before the download pauses.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_OBSERVATIONS = 50_000;
+    static final int MIN_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 10000;
+    private static final String PHENOMENON_TIME = "phenomenonTime";
+    private static final String LIMIT = "limit";
+    private static final Instant MIN_TIME = Instant.parse("0000-01-01T00:00:00Z");
+    private static final Instant MAX_TIME = Instant.parse("9999-12-31T23:59:59.999Z");
+
+    private final ConSysApiClientExtras client;
+    private final String dataStreamId;
+    private final IDataStreamInfo dataStream;
+    private final Map<String, String> baseParameters;
+    private final Instant begin;
+    private final Instant end;
+    private int shardCount = DEFAULT_SHARD_COUNT;
+    private int maxConcurrency;
+    private long targetRequestNanos = DEFAULT_TARGET_REQUEST_TIME.toNanos();
+    private volatile int pageSize = PagedObservationIterator.DEFAULT_PAGE_SIZE;
+    private int minPageSize = MIN_PAGE_SIZE;
+    private int maxBufferedObservations = DEFAULT_MAX_BUFFERED_OBSERVATIONS;
+
+    /**
+     * Shards waiting for a free slot, earliest first.
+     */
+    private final Deque<Shard> pendingShards = new ArrayDeque<>();
+    /**
+     * Shards not yet returned to the caller, in timestamp order.
+     */
+    private final Deque<Shard> orderedShards = new ArrayDeque<>();
+    private final List<CompletableFuture<?>> requests = Collections.synchronizedList(new ArrayList<>());
+    private int inFlight;
+    /**
+     * The number of observations received in shards not yet taken by the caller.
+     */
+    private int bufferedObservations;
+    /**
+     * The shard the caller is waiting for, started even if the read-ahead limit is reached.
+     */
+    private Shard awaitedShard;
+    private boolean started;
+    private volatile boolean closed;
+    private Iterator<ObservationData> current = Collections.emptyIterator();
+
+    /**
+     * @param client       The client used to send the requests.
+     * @param dataStreamId The ID of the data stream.
+     * @param dataStream   The data stream object.
+     * @param query        Additional query parameters, or null.
+     *                     The phenomenonTime and limit parameters are replaced for each shard.
+     * @param timeRange    The time range to download. Must be bounded.
+     */
+    public ShardedObservationDownload(ConSysApiClientExtras client, String dataStreamId, IDataStreamInfo dataStream,
+                                      QueryStringBuilder query, TimeExtent timeRange) {
+        if (timeRange == null || timeRange.isNow() || !isBounded(timeRange.begin()) || !isBounded(timeRange.end())) {
+            throw new IllegalArgumentException("Time range must be bounded");
+        }
+
+        this.client = client;
+        this.dataStreamId = dataStreamId;
+        this.dataStream = dataStream;
+        this.baseParameters = query != null ? Map.copyOf(query.getParameters()) : Map.of();
+        this.begin = timeRange.begin();
+        this.end = timeRange.end();
+    }
+
+    /**
+     * The number of shards the time range is initially split into.
+     * Defaults to {@value #DEFAULT_SHARD_COUNT}.
+     */
+    public ShardedObservationDownload shardCount(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be greater than 0");
+        }
+        checkNotStarted();
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    /**
+     * The maximum number of shards requested at the same time.
+     * Defaults to the shard count.
+     * The number of requests to a node is also bounded by its maximum number of connections.
+     */
+    public ShardedObservationDownload maxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency must be greater than 0");
+        }
+        checkNotStarted();
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * The maximum number of observations received ahead of the caller.
+     * Once reached, no new shard is requested until the caller has taken enough observations,
+     * so a slow caller does not accumulate the whole time range in memory.
+     * Requests already in flight still complete, so the limit can be exceeded by up to a page per request.
+     * Defaults to {@value #DEFAULT_MAX_BUFFERED_OBSERVATIONS}.
+     */
+    public ShardedObservationDownload maxBufferedObservations(int maxBufferedObservations) {
+        if (maxBufferedObservations <= 0) {
+            throw new IllegalArgumentException("Max buffered observations must be greater than 0");
+        }
+        checkNotStarted();
+        this.maxBufferedObservations = maxBufferedObservations;
+        return this;
+    }
+
+    /**
+     * The initial number of observations requested per page.
+     * The page size is then adjusted according to the observed response times.
+     */
+    public ShardedObservationDownload pageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        checkNotStarted();
+        this.pageSize = pageSize;
+        this.minPageSize = Math.min(MIN_PAGE_SIZE, pageSize);
+        return this;
+    }
+
+    /**
+     * The duration each page request should take.
+     * Shorter response times increase the page size, longer response times decrease it.
+     */
+    public ShardedObservationDownload targetRequestTime(Duration targetRequestTime) {
+        if (targetRequestTime == null || targetRequestTime.isZero() || targetRequestTime.isNegative()) {
+            throw new IllegalArgumentException("Target request time must be positive");
+        }
+        checkNotStarted();
+        this.targetRequestNanos = targetRequestTime.toNanos();
+        return this;
+    }
+
+    /**
+     * The current number of observations requested per page.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        start();
+
+        while (!current.hasNext()) {
+            Shard shard;
+            synchronized (this) {
+                shard = orderedShards.pollFirst();
+                if (shard != null && !shard.done.isDone()) {
+                    // The shard may not have been started because of the read-ahead limit
+                    awaitedShard = shard;
+                    schedule();
+                }
+            }
+            if (shard == null || closed) return false;
+
+            List<Shard> following;
+            try {
+                following = shard.done.join();
+            } catch (CancellationException e) {
+                return false;
+            } catch (CompletionException e) {
+                close();
+                throw e;
+            }
+
+            synchronized (this) {
+                awaitedShard = null;
+                for (int i = following.size() - 1; i >= 0; i--) {
+                    orderedShards.addFirst(following.get(i));
+                }
+                bufferedObservations -= shard.items.size();
+                schedule();
+            }
+            current = shard.items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public ObservationData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Pass each observation to a sink, in timestamp order, on the calling thread.
+     *
+     * @param sink Called with each observation.
+     * @return The number of observations passed to the sink.
+     * @throws ExecutionException If a request fails.
+     */
+    public long forEach(Consumer<ObservationData> sink) throws ExecutionException {
+        long count = 0;
+        try {
+            while (hasNext()) {
+                sink.accept(next());
+                count++;
+            }
+        } catch (CompletionException e) {
+            throw new ExecutionException(e.getCause());
+        } finally {
+            close();
+        }
+        return count;
+    }
+
+    /**
+     * Wrap this download in a sequential stream.
+     * Closing the stream closes this download.
+     */
+    public Stream<ObservationData> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Stop the download and cancel the outstanding requests.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        current = Collections.emptyIterator();
+        synchronized (this) {
+            pendingShards.clear();
+            for (Shard shard : orderedShards) {
+                shard.done.cancel(false);
+            }
+            orderedShards.clear();
+        }
+        synchronized (requests) {
+            for (CompletableFuture<?> request : requests) {
+                request.cancel(false);
+            }
+            requests.clear();
+        }
+    }
+
+    private synchronized void start() {
+        if (started) return;
+        started = true;
+
+        if (maxConcurrency <= 0) {
+            maxConcurrency = shardCount;
+        }
+
+        List<Shard> shards = split(begin, end, true, shardCount);
+        orderedShards.addAll(shards);
+        pendingShards.addAll(shards);
+        schedule();
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Download already started");
+        }
+    }
+
+    /**
+     * Start pending shards until the concurrency limit or the read-ahead limit is reached.
+     * The shard the caller is waiting for is always the earliest pending shard, so it is started regardless of the read-ahead.
+     */
+    private synchronized void schedule() {
+        while (!closed && inFlight < maxConcurrency && !pendingShards.isEmpty()
+                && (bufferedObservations < maxBufferedObservations || pendingShards.peekFirst() == awaitedShard)) {
+            inFlight++;
+            Shard shard = pendingShards.pollFirst();
+            fetch(shard, null);
+        }
+    }
+
+    private synchronized void release(List<Shard> newShards) {
+        inFlight--;
+        for (int i = newShards.size() - 1; i >= 0; i--) {
+            // Earlier shards first, so the caller is unblocked as soon as possible
+            pendingShards.addFirst(newShards.get(i));
+        }
+        schedule();
+    }
+
+    /**
+     * Fetch a page of a shard.
+     *
+     * @param shard   The shard.
+     * @param pageUri The link to the next page of the shard, or null for the first page.
+     */
+    private void fetch(Shard shard, URI pageUri) {
+        long startTime = System.nanoTime();
+        int requestedPageSize = pageSize;
+
+        CompletableFuture<CollectionPage<ObservationData>> request;
+        if (pageUri == null) {
+            String queryString = QueryStringBuilder.fromMap(baseParameters)
+                    .addParameter(PHENOMENON_TIME, TimeExtent.period(shard.start, shard.end))
+                    .addParameter(LIMIT, requestedPageSize)
+                    .getQueryString();
+            request = client.getObservationsPage(dataStreamId, dataStream, queryString);
+        } else {
+            request = client.getObservationsPage(pageUri, dataStream);
+        }
+        requests.add(request);
+
+        request.whenComplete((page, error) -> {
+            requests.remove(request);
+            if (error != null) {
+                shard.done.completeExceptionally(error);
+                release(List.of());
+                return;
+            }
+
+            adaptPageSize(requestedPageSize, System.nanoTime() - startTime);
+            onPage(shard, page);
+        });
+    }
+
+    private void onPage(Shard shard, CollectionPage<ObservationData> page) {
+        Link next = page.getNextLink();
+        if (next == null) {
+            addItems(shard, page.getItems(), null);
+            shard.done.complete(List.of());
+            release(List.of());
+            return;
+        }
+
+        List<ObservationData> items = page.getItems();
+        Instant last = items.isEmpty() ? null : items.get(items.size() - 1).getPhenomenonTime();
+        if (last == null || !last.isAfter(shard.start) || !last.isBefore(shard.end)) {
+            // Cannot split further, e.g., a whole page at the same timestamp: follow the link instead
+            addItems(shard, items, null);
+            try {
+                fetch(shard, next.getHref().toURI());
+            } catch (URISyntaxException e) {
+                shard.done.completeExceptionally(e);
+                release(List.of());
+            }
+            return;
+        }
+
+        // Observations at the last timestamp may continue on the next page, so they go to the remainder
+        addItems(shard, items, last);
+        List<Shard> remainder = split(last, shard.end, shard.includeEnd, estimateShardCount(shard, items, last));
+        shard.done.complete(remainder);
+        release(remainder);
+    }
+
+    private void addItems(Shard shard, List<ObservationData> page, Instant until) {
+        int added = shard.addItems(page, until);
+        synchronized (this) {
+            bufferedObservations += added;
+        }
+    }
+
+    /**
+     * Estimate how many page-sized shards are needed for the remainder of a shard,
+     * based on the density of observations in its first page.
+     */
+    private int estimateShardCount(Shard shard, List<ObservationData> firstPage, Instant last) {
+        double covered = Duration.between(shard.start, last).toNanos();
+        double remaining = Duration.between(last, shard.end).toNanos();
+        double estimatedCount = firstPage.size() * remaining / covered;
+        long count = (long) Math.ceil(estimatedCount / pageSize);
+        return (int) Math.max(1, Math.min(count, maxConcurrency));
+    }
+
+    /**
+     * Move the page size towards the size that would have taken the target request time.
+     */
+    private void adaptPageSize(int requestedPageSize, long elapsedNanos) {
+        if (elapsedNanos <= 0) return;
+
+        double ideal = requestedPageSize * (double) targetRequestNanos / elapsedNanos;
+        int adapted = (int) ((pageSize + ideal) / 2);
+        pageSize = Math.max(minPageSize, Math.min(MAX_PAGE_SIZE, adapted));
+    }
+
+    /**
+     * Split a time range into contiguous shards of equal duration.
+     */
+    private static List<Shard> split(Instant start, Instant end, boolean includeEnd, int count) {
+        long totalNanos = Duration.between(start, end).toNanos();
+        if (count <= 1 || totalNanos < count) {
+            return List.of(new Shard(start, end, includeEnd));
+        }
+
+        List<Shard> shards = new ArrayList<>(count);
+        Instant shardStart = start;
+        for (int i = 1; i <= count; i++) {
+            Instant shardEnd = i == count ? end : start.plusNanos(totalNanos / count * i);
+            shards.add(new Shard(shardStart, shardEnd, i == count && includeEnd));
+            shardStart = shardEnd;
+        }
+        return shards;
+    }
+
+    private static boolean isBounded(Instant instant) {
+        return instant != null && !instant.isBefore(MIN_TIME) && !instant.isAfter(MAX_TIME);
+    }
+
+    /**
+     * A contiguous part of the time range.
+     * When complete, its future holds the shards splitting the remainder of its range, if any,
+     * which follow its own items in timestamp order.
+     */
+    private static class Shard {
+        final Instant start;
+        final Instant end;
+        final boolean includeEnd;
+        final List<ObservationData> items = new ArrayList<>();
+        final CompletableFuture<List<Shard>> done = new CompletableFuture<>();
+
+        Shard(Instant start, Instant end, boolean includeEnd) {
+            this.start = start;
+            this.end = end;
+            this.includeEnd = includeEnd;
+        }
+
+        /**
+         * Add the observations of a page that belong to this shard.
+         *
+         * @param page  The observations of the page.
+         * @param until If not null, only observations strictly before this time are added.
+         * @return The number of observations added.
+         */
+        int addItems(List<ObservationData> page, Instant until) {
+            int added = 0;
+            for (ObservationData obs : page) {
+                Instant time = obs.getPhenomenonTime();
+                if (time.isBefore(start)) continue;
+                if (until != null && !time.isBefore(until)) continue;
+                if (time.isAfter(end) || (time.equals(end) && !includeEnd)) continue;
+                items.add(obs);
+                added++;
+            }
+            return added;
+        }
+    }
+}
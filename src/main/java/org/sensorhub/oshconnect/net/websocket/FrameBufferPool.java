@@ -0,0 +1,109 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of heap buffers receiving WebSocket frames, so high-rate streams do not allocate a new array per frame.
+ * <p>
+ * Buffers are grouped by capacity, rounded up to a power of two.
+ * A buffer taken with {@link #acquire(int)} should be given back with {@link #release(ByteBuffer)}
+ * once its content is no longer used; a buffer that is never released is simply garbage collected.
+ * <p>
+ * This class is thread-safe.
+ */
+public class FrameBufferPool {
+    /**
+     * The default maximum number of idle buffers kept for each capacity.
+     */
+    public static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 64;
+    /**
+     * The capacity of the smallest buffer.
+     */
+    public static final int MIN_CAPACITY = 1024;
+    /**
+     * Buffers larger than this are allocated on demand and never pooled.
+     */
+    public static final int MAX_POOLED_CAPACITY = 1 << 24;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+
+    private final BlockingQueue<ByteBuffer>[] buckets;
+
+    public FrameBufferPool() {
+        this(DEFAULT_MAX_BUFFERS_PER_SIZE);
+    }
+
+    /**
+     * @param maxBuffersPerSize The maximum number of idle buffers kept for each capacity.
+     */
+    @SuppressWarnings("unchecked")
+    public FrameBufferPool(int maxBuffersPerSize) {
+        if (maxBuffersPerSize <= 0) {
+            throw new IllegalArgumentException("Max buffers per size must be greater than 0");
+        }
+
+        int bucketCount = Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY) - MIN_SHIFT + 1;
+        buckets = new BlockingQueue[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new ArrayBlockingQueue<>(maxBuffersPerSize);
+        }
+    }
+
+    /**
+     * Take a buffer with at least the given capacity from the pool, or allocate one if none is available.
+     *
+     * @param minCapacity The minimum capacity.
+     * @return An empty buffer, with its position at zero and its limit at its capacity.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int capacity = capacityFor(minCapacity);
+        if (capacity > MAX_POOLED_CAPACITY) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+
+        ByteBuffer buffer = buckets[bucketIndex(capacity)].poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool.
+     * The buffer must not be used after this call.
+     * Buffers that were not taken from a pool, or that exceed the pool capacity, are dropped.
+     *
+     * @param buffer The buffer.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray() || buffer.arrayOffset() != 0) return;
+
+        int capacity = buffer.capacity();
+        if (capacity < MIN_CAPACITY || capacity > MAX_POOLED_CAPACITY || Integer.bitCount(capacity) != 1) return;
+
+        buckets[bucketIndex(capacity)].offer(buffer);
+    }
+
+    /**
+     * The number of idle buffers in the pool.
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (BlockingQueue<ByteBuffer> bucket : buckets) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    private static int capacityFor(int minCapacity) {
+        if (minCapacity <= MIN_CAPACITY) return MIN_CAPACITY;
+        if (minCapacity > MAX_POOLED_CAPACITY) return Integer.MAX_VALUE;
+        return Integer.highestOneBit(minCapacity - 1) << 1;
+    }
+
+    private static int bucketIndex(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,19 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for receiving the binary messages of a WebSocket connection.
+ */
+@FunctionalInterface
+public interface FrameHandler {
+    /**
+     * Called with each binary message received.
+     *
+     * @param frame The message, between the position and the limit of the buffer.
+     *              The buffer is a slice of the received data; it is not copied.
+     * @param pool  The pool the buffer must be released to once its content is no longer used,
+     *              or null if the buffer is not pooled.
+     */
+    void onFrame(ByteBuffer frame, FrameBufferPool pool);
+}
@@ -0,0 +1,134 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import org.sensorhub.oshconnect.OSHStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Keeps only the latest event of each stream, for consumers that need the current value of many streams
+ * rather than every observation, such as dashboards.
+ * <p>
+ * Each stream has a single slot, created when the stream is added.
+ * A new event replaces the pending event of its stream, which is released, see {@link StreamEventArgs#release()};
+ * the consumer takes the pending events at its own pace with {@link #drainTo(Consumer)} or {@link #poll()}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class LatestValueConflator {
+    private final Map<OSHStream, AtomicReference<StreamEventArgs>> slots = new ConcurrentHashMap<>();
+    private final AtomicLong overwrittenCount = new AtomicLong();
+
+    /**
+     * Create the slot of a stream.
+     * Events of streams without a slot are ignored.
+     *
+     * @param stream The stream.
+     */
+    public void addStream(OSHStream stream) {
+        slots.computeIfAbsent(stream, s -> new AtomicReference<>());
+    }
+
+    /**
+     * Remove the slot of a stream, releasing its pending event.
+     *
+     * @param stream The stream.
+     */
+    public void removeStream(OSHStream stream) {
+        AtomicReference<StreamEventArgs> slot = slots.remove(stream);
+        if (slot != null) {
+            release(slot.getAndSet(null));
+        }
+    }
+
+    /**
+     * Replace the pending event of the stream of an event.
+     *
+     * @param event The event.
+     * @return false if the stream of the event has no slot, in which case the event is released.
+     */
+    public boolean update(StreamEventArgs event) {
+        AtomicReference<StreamEventArgs> slot = slots.get(event.getStream());
+        if (slot == null) {
+            event.release();
+            return false;
+        }
+
+        StreamEventArgs previous = slot.getAndSet(event);
+        if (previous != null) {
+            overwrittenCount.incrementAndGet();
+            previous.release();
+        }
+        return true;
+    }
+
+    /**
+     * Take the pending event of each stream updated since the last call.
+     * The consumer owns the events it receives.
+     *
+     * @param consumer Called with each pending event.
+     * @return The number of events passed to the consumer.
+     */
+    public int drainTo(Consumer<StreamEventArgs> consumer) {
+        int count = 0;
+        for (AtomicReference<StreamEventArgs> slot : slots.values()) {
+            StreamEventArgs event = slot.getAndSet(null);
+            if (event != null) {
+                consumer.accept(event);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Take the pending event of each stream updated since the last call.
+     *
+     * @return The events, one per updated stream.
+     */
+    public List<StreamEventArgs> poll() {
+        List<StreamEventArgs> events = new ArrayList<>();
+        drainTo(events::add);
+        return events;
+    }
+
+    /**
+     * Release the pending events, keeping the slots.
+     */
+    public void clear() {
+        for (AtomicReference<StreamEventArgs> slot : slots.values()) {
+            release(slot.getAndSet(null));
+        }
+    }
+
+    /**
+     * The number of pending events, i.e., the number of streams updated since they were last drained.
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (AtomicReference<StreamEventArgs> slot : slots.values()) {
+            if (slot.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The number of events replaced by a later event of the same stream before being drained.
+     */
+    public long getOverwrittenCount() {
+        return overwrittenCount.get();
+    }
+
+    private static void release(StreamEventArgs event) {
+        if (event != null) {
+            event.release();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import org.sensorhub.oshconnect.OSHDataStream;
+import org.sensorhub.oshconnect.OSHNode;
+import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.util.ByteScanner;
+import org.sensorhub.oshconnect.util.ObservationsQueryBuilder;
+import org.vast.util.TimeExtent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single WebSocket connection to the observations endpoint of a node,
+ * carrying the observations of several data streams of that node.
+ * <p>
+ * The connection is filtered on the IDs of the data streams,
+ * and each observation received is dispatched to the listener of its data stream using its {@code datastream@id} member.
+ * Since only the JSON formats identify the data stream of an observation,
+ * observations are always requested in JSON format.
+ */
+public class MultiplexedStreamConnection {
+    private static final byte[] DATASTREAM_ID_KEY = "\"datastream@id\"".getBytes(StandardCharsets.UTF_8);
+
+    private final OSHNode node;
+    private final Map<String, StreamListener> listeners = new HashMap<>();
+    private final WebSocketConnection connection;
+
+    /**
+     * @param node        The node the data streams belong to.
+     * @param listeners   The listeners of the data streams. Each must listen to an {@link OSHDataStream} of the node.
+     * @param timeExtent  The time period of the request, or null to listen in real-time.
+     * @param replaySpeed The replay speed, only applicable to historical data.
+     */
+    public MultiplexedStreamConnection(OSHNode node, Collection<StreamListener> listeners, TimeExtent timeExtent, double replaySpeed) {
+        this.node = node;
+        for (StreamListener listener : listeners) {
+            if (!(listener.getDataStream() instanceof OSHDataStream dataStream)) {
+                throw new IllegalArgumentException("Only data streams can be multiplexed.");
+            }
+            this.listeners.put(dataStream.getId(), listener);
+        }
+
+        ObservationsQueryBuilder queryString = new ObservationsQueryBuilder()
+                .dataStream(new ArrayList<>(this.listeners.keySet()));
+        queryString.addParameter("format", RequestFormat.JSON.getMimeType());
+        if (timeExtent != null && !timeExtent.isNow()) {
+            queryString.addParameter("phenomenonTime", timeExtent);
+            queryString.addParameter("replaySpeed", replaySpeed);
+        }
+
+        connection = new WebSocketConnection(node, node.getObservationsEndpoint() + queryString, this::onMessage);
+    }
+
+    /**
+     * Whether a stream listener can receive its data through a multiplexed connection with the given format.
+     * Only the JSON formats identify the data stream of each observation.
+     *
+     * @param listener      The listener.
+     * @param requestFormat The format requested by the listener, or null for the default format.
+     */
+    public static boolean canMultiplex(StreamListener listener, RequestFormat requestFormat) {
+        return listener.getDataStream() instanceof OSHDataStream
+                && (requestFormat == null || requestFormat == RequestFormat.JSON || requestFormat == RequestFormat.OM_JSON);
+    }
+
+    /**
+     * Connect to the node and attach the listeners to the connection.
+     */
+    public void connect() {
+        for (StreamListener listener : listeners.values()) {
+            listener.attach(connection);
+        }
+        connection.connect();
+    }
+
+    /**
+     * Detach the listeners still attached to the connection, and close the connection.
+     */
+    public void disconnect() {
+        for (StreamListener listener : listeners.values()) {
+            if (listener.getWebSocketConnection() == connection) {
+                listener.disconnect();
+            }
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * Dispatch an observation to the listener of its data stream,
+     * unless the listener has since been disconnected from this connection.
+     */
+    private void onMessage(ByteBuffer data, FrameBufferPool pool) {
+        String dataStreamId = data.hasArray()
+                ? findDataStreamId(data.array(), data.arrayOffset() + data.position(), data.remaining())
+                : null;
+
+        StreamListener listener = dataStreamId != null ? listeners.get(dataStreamId) : null;
+        if (listener != null && listener.getWebSocketConnection() == connection) {
+            listener.onStreamUpdate(data, pool);
+        } else if (pool != null) {
+            pool.release(data);
+        }
+    }
+
+    /**
+     * Find the value of the {@code datastream@id} member of a JSON observation,
+     * without parsing the rest of the observation.
+     *
+     * @param data   The array holding the JSON observation.
+     * @param offset The index of the first byte of the observation.
+     * @param length The length of the observation.
+     * @return The ID of the data stream, or null if not found.
+     */
+    static String findDataStreamId(byte[] data, int offset, int length) {
+        return ByteScanner.findStringMember(data, offset, length, DATASTREAM_ID_KEY);
+    }
+
+    /**
+     * The node the data streams belong to.
+     */
+    public OSHNode getNode() {
+        return node;
+    }
+
+    /**
+     * The listeners of the data streams carried by this connection.
+     */
+    public List<StreamListener> getListeners() {
+        return new ArrayList<>(listeners.values());
+    }
+
+    /**
+     * The underlying WebSocket connection.
+     */
+    public WebSocketConnection getWebSocketConnection() {
+        return connection;
+    }
+
+    /**
+     * The status of the underlying WebSocket connection.
+     */
+    public StreamStatus getStatus() {
+        return connection.getStatus();
+    }
+}
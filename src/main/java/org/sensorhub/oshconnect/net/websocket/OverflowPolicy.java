@@ -0,0 +1,25 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+/**
+ * What a {@link StreamEventDispatcher} does with a new event when its queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait for the consumer to make room, slowing down the socket that received the event.
+     */
+    BLOCK,
+    /**
+     * Drop the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new event.
+     */
+    DROP_NEWEST,
+    /**
+     * Keep only the latest event of each stream that the consumer has not received yet,
+     * dropping the events it replaces.
+     * The queue then holds at most one event per stream; it only blocks if there are more streams than queue slots.
+     */
+    CONFLATE_LATEST
+}
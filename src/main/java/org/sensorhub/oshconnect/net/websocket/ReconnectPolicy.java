@@ -0,0 +1,118 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When to reconnect a {@link StreamListener} whose connection was closed or failed without being asked to.
+ * <p>
+ * The delay before each attempt grows exponentially from the initial delay up to the maximum delay,
+ * and a random part of it, up to the jitter ratio, is removed,
+ * so listeners dropped by the same network failure do not all reconnect at the same time.
+ * <p>
+ * Instances are immutable.
+ */
+public class ReconnectPolicy {
+    public static final long DEFAULT_INITIAL_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 30_000;
+    public static final double DEFAULT_MULTIPLIER = 2;
+    public static final double DEFAULT_JITTER = 0.5;
+    /**
+     * Value of the maximum number of attempts to retry forever.
+     */
+    public static final int UNLIMITED_ATTEMPTS = -1;
+
+    private final long initialDelayMS;
+    private final long maxDelayMS;
+    private final double multiplier;
+    private final double jitter;
+    private final int maxAttempts;
+
+    /**
+     * Creates a policy retrying forever with the default delays.
+     */
+    public ReconnectPolicy() {
+        this(DEFAULT_INITIAL_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_MULTIPLIER, DEFAULT_JITTER, UNLIMITED_ATTEMPTS);
+    }
+
+    /**
+     * @param initialDelayMS The delay in milliseconds before the first attempt.
+     * @param maxDelayMS     The maximum delay in milliseconds between two attempts.
+     * @param multiplier     The factor applied to the delay after each failed attempt, at least 1.
+     * @param jitter         The maximum part of each delay removed at random, between 0 and 1.
+     * @param maxAttempts    The number of attempts before giving up, or {@link #UNLIMITED_ATTEMPTS}.
+     */
+    public ReconnectPolicy(long initialDelayMS, long maxDelayMS, double multiplier, double jitter, int maxAttempts) {
+        if (initialDelayMS < 0 || maxDelayMS < initialDelayMS) {
+            throw new IllegalArgumentException("Delays must be positive, and the maximum delay at least the initial delay.");
+        }
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Multiplier must be at least 1.");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1.");
+        }
+        if (maxAttempts < 0 && maxAttempts != UNLIMITED_ATTEMPTS) {
+            throw new IllegalArgumentException("Max attempts must be positive or UNLIMITED_ATTEMPTS.");
+        }
+
+        this.initialDelayMS = initialDelayMS;
+        this.maxDelayMS = maxDelayMS;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Whether to make another attempt after the given number of failed attempts.
+     *
+     * @param attempt The number of attempts already made since the connection was lost.
+     */
+    public boolean shouldRetry(int attempt) {
+        return maxAttempts == UNLIMITED_ATTEMPTS || attempt < maxAttempts;
+    }
+
+    /**
+     * The delay in milliseconds before an attempt.
+     *
+     * @param attempt The number of attempts already made since the connection was lost.
+     */
+    public long getDelayMS(int attempt) {
+        double delay = Math.min(maxDelayMS, initialDelayMS * Math.pow(multiplier, attempt));
+        return (long) (delay - delay * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * The delay in milliseconds before the first attempt.
+     */
+    public long getInitialDelayMS() {
+        return initialDelayMS;
+    }
+
+    /**
+     * The maximum delay in milliseconds between two attempts.
+     */
+    public long getMaxDelayMS() {
+        return maxDelayMS;
+    }
+
+    /**
+     * The factor applied to the delay after each failed attempt.
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * The maximum part of each delay removed at random.
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * The number of attempts before giving up, or {@link #UNLIMITED_ATTEMPTS}.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
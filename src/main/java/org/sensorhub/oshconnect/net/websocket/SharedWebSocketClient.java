@@ -0,0 +1,142 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.Executor;
+
+/**
+ * A WebSocket client shared by all the WebSocket connections to a node.
+ * <p>
+ * The client, with its selector, thread pool, and SSL context, is started on the first call to {@link #acquire()}
+ * and stopped when the last connection calls {@link #release()},
+ * so subscribing to many data streams of a node does not create a client per subscription.
+ * <p>
+ * This class is thread-safe.
+ */
+public class SharedWebSocketClient {
+    private final Executor executor;
+    private WebSocketClient client;
+    private int referenceCount;
+
+    /**
+     * @param executor The executor running the selector and the message handlers of the client,
+     *                 or null to let the client create its own thread pool.
+     */
+    public SharedWebSocketClient(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the client, starting it if this is the first reference.
+     * Each call must be matched by a call to {@link #release()}.
+     *
+     * @return The started client.
+     * @throws Exception If the client could not be started.
+     */
+    public synchronized WebSocketClient acquire() throws Exception {
+        if (client == null) {
+            WebSocketClient newClient = createClient();
+            newClient.start();
+            client = newClient;
+        }
+        referenceCount++;
+        return client;
+    }
+
+    /**
+     * Release a reference obtained from {@link #acquire()}, stopping the client if it was the last one.
+     */
+    public synchronized void release() {
+        if (referenceCount == 0) return;
+
+        referenceCount--;
+        if (referenceCount == 0) {
+            stop();
+        }
+    }
+
+    /**
+     * Stop the client regardless of the remaining references.
+     * The open connections are closed, and the next call to {@link #acquire()} starts a new client.
+     */
+    public synchronized void stop() {
+        referenceCount = 0;
+        if (client == null) return;
+
+        try {
+            client.stop();
+        } catch (Exception e) {
+            // The client is discarded either way
+        }
+        client = null;
+    }
+
+    /**
+     * The number of connections currently using the client.
+     */
+    public synchronized int getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * Whether the client is started.
+     */
+    public synchronized boolean isStarted() {
+        return client != null;
+    }
+
+    /**
+     * The executor running the selector and the message handlers of the client,
+     * or null if the client creates its own thread pool.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    private WebSocketClient createClient() throws GeneralSecurityException {
+        HttpClient httpClient = new HttpClient(createSslContextFactory());
+        if (executor != null) {
+            httpClient.setExecutor(executor);
+        }
+        return new WebSocketClient(httpClient);
+    }
+
+    /**
+     * Create the SSL context factory of the client.
+     * Nodes commonly use self-signed certificates, so all certificates are trusted;
+     * the trust manager is scoped to this client and does not change the default SSL context of the process.
+     */
+    private static SslContextFactory.Client createSslContextFactory() throws GeneralSecurityException {
+        TrustManager[] trustAllCerts = new TrustManager[]{
+                new X509TrustManager() {
+                    @Override
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return new X509Certificate[0];
+                    }
+
+                    @Override
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+
+                    @Override
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+                }
+        };
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, trustAllCerts, new SecureRandom());
+        sslContext.getClientSessionContext().setSessionTimeout(0);
+        sslContext.getClientSessionContext().setSessionCacheSize(0);
+
+        SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+        sslContextFactory.setSslContext(sslContext);
+        return sslContextFactory;
+    }
+}
@@ -1,66 +1,225 @@
 package org.sensorhub.oshconnect.net.websocket;
 
-import org.sensorhub.impl.service.consys.obs.ObsHandler;
-import org.sensorhub.impl.service.consys.resource.RequestContext;
-import org.sensorhub.impl.service.consys.resource.ResourceFormat;
 import org.sensorhub.oshconnect.OSHDataStream;
 import org.sensorhub.oshconnect.OSHStream;
-import org.sensorhub.oshconnect.datamodels.ObservationBindingOmJson;
 import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.datamodels.ObservationDecoder;
+import org.sensorhub.oshconnect.net.ConSysApiClientExtras;
 import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.util.ByteScanner;
+import org.sensorhub.oshconnect.util.TimestampScanner;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Event arguments for data stream events.
+ * <p>
+ * The data is held as a slice of the received buffer, without copying.
+ * If the buffer is pooled (see {@link FrameBufferPool}), call {@link #release()} once the data is no longer used,
+ * so the buffer can receive another message; the data must not be accessed after that.
  */
 public class StreamEventArgs {
+    private static final byte[] ID_KEY = "\"id\"".getBytes(StandardCharsets.UTF_8);
     protected final long timestamp;
-    protected final byte[] data;
+    /**
+     * The data as an exact-size array, created on first call to {@link #getData()} if the buffer is a slice.
+     */
+    protected byte[] data;
     protected final RequestFormat format;
     protected final OSHStream stream;
+    /**
+     * The data, or null until the observation of an event created by {@link #fromObservation} is serialized.
+     */
+    private ByteBuffer buffer;
+    private FrameBufferPool pool;
+    private volatile boolean released;
+    private ObservationData observation;
+    private boolean observationDecoded;
 
     public StreamEventArgs(long timestamp, byte[] data, RequestFormat format, OSHStream stream) {
-        this.timestamp = timestamp;
+        this(timestamp, ByteBuffer.wrap(data), format, stream, null);
         this.data = data;
+    }
+
+    /**
+     * @param timestamp The timestamp of the data.
+     * @param buffer    The data, between the position and the limit of the buffer.
+     * @param format    The format of the data.
+     * @param stream    The stream the data was received from.
+     * @param pool      The pool the buffer is released to by {@link #release()}, or null if the buffer is not pooled.
+     */
+    public StreamEventArgs(long timestamp, ByteBuffer buffer, RequestFormat format, OSHStream stream, FrameBufferPool pool) {
+        this.timestamp = timestamp;
+        this.buffer = buffer;
         this.format = format;
         this.stream = stream;
+        this.pool = pool;
     }
 
     /**
-     * Returns the data as an ObservationData object or null if the data is not in JSON format.
+     * Creates the event of an observation fetched from the node rather than received over a connection.
+     * The data is the observation in OM-JSON format, and {@link #getObservation()} returns the observation itself.
+     * The observation is only serialized on first access to the data, so consumers using the observation never pay for it.
      *
-     * @return an ObservationData object.
+     * @param observation The observation.
+     * @param dataStream  The data stream of the observation.
      */
-    public ObservationData getObservation() {
-        if (format != RequestFormat.JSON) return null;
-        OSHDataStream dataStream = (OSHDataStream) this.stream;
+    static StreamEventArgs fromObservation(ObservationData observation, OSHDataStream dataStream) {
+        long timestamp = observation.getPhenomenonTime() != null
+                ? observation.getPhenomenonTime().toEpochMilli()
+                : TimestampScanner.NOT_FOUND;
+        StreamEventArgs args = new StreamEventArgs(timestamp, (ByteBuffer) null, RequestFormat.OM_JSON, dataStream, null);
+        args.setObservation(observation);
+        return args;
+    }
 
-        ObsHandler.ObsHandlerContextData contextData = new ObsHandler.ObsHandlerContextData();
-        contextData.dsInfo = dataStream.getDataStreamResource();
+    /**
+     * The data, serializing the observation of an event created by {@link #fromObservation} on first call.
+     *
+     * @throws UncheckedIOException if the observation cannot be serialized.
+     */
+    private synchronized ByteBuffer buffer() {
+        if (buffer == null) {
+            try {
+                data = ConSysApiClientExtras.serializeObservation(((OSHDataStream) stream).getDataStreamResource(), observation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer = ByteBuffer.wrap(data);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the data as an ObservationData object,
+     * or null if the data cannot be decoded, e.g., if the stream is not a data stream or the data is in XML format.
+     * JSON, SWE JSON, SWE binary, and CSV data are supported;
+     * the last three require the record structure of the data stream to include a time stamp.
+     * The observation is decoded on first call with the decoder cached by the data stream,
+     * and the same object is returned to every later call, so it must not be modified.
+     *
+     * @return an ObservationData object.
+     */
+    public synchronized ObservationData getObservation() {
+        if (observationDecoded) return observation;
+        if (!(stream instanceof OSHDataStream dataStream)) return null;
 
-        ByteArrayInputStream body = new ByteArrayInputStream(data);
-        var ctx = new RequestContext(body);
-        ctx.setData(contextData);
-        ctx.setFormat(ResourceFormat.OM_JSON);
+        ObservationDecoder decoder = dataStream.getObservationDecoder(format);
+        if (decoder == null) return null;
 
+        ensureNotReleased();
+        ByteBuffer buffer = buffer();
         try {
-            var binding = new ObservationBindingOmJson(ctx, null, true);
-            return binding.deserialize();
+            if (buffer.hasArray()) {
+                observation = decoder.decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] bytes = getData();
+                observation = decoder.decode(bytes, 0, bytes.length);
+            }
         } catch (IOException e) {
-            return null;
+            observation = null;
         }
+        observationDecoded = true;
+        return observation;
+    }
+
+    /**
+     * The ID of the observation, found without decoding nor copying the data:
+     * the ID of the observation if it has already been decoded, or the {@code id} member of JSON data.
+     *
+     * @return The ID, or null if the data has no ID or its buffer has been released.
+     */
+    synchronized String findObservationId() {
+        if (observation != null) return observation.getId();
+        if (released || buffer == null || !buffer.hasArray()) return null;
+        if (format != RequestFormat.JSON && format != RequestFormat.OM_JSON) return null;
+
+        return ByteScanner.findStringMember(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), ID_KEY);
+    }
+
+    /**
+     * Sets the observation the data was encoded from, so it is not decoded again by {@link #getObservation()}.
+     */
+    synchronized void setObservation(ObservationData observation) {
+        this.observation = observation;
+        this.observationDecoded = true;
     }
 
     public long getTimestamp() {
         return timestamp;
     }
 
-    public byte[] getData() {
+    /**
+     * The data as an exact-size array.
+     * This copies the data on first call, unless the buffer is not pooled and spans its whole backing array;
+     * use {@link #getBuffer()} to read the data without copying.
+     *
+     * @throws UncheckedIOException if the data is an observation fetched from the node that cannot be serialized.
+     */
+    public synchronized byte[] getData() {
+        if (data == null) {
+            ensureNotReleased();
+            ByteBuffer buffer = buffer();
+            if (data != null) return data;
+            if (pool == null && buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+                data = buffer.array();
+            } else {
+                data = new byte[buffer.remaining()];
+                buffer.duplicate().get(data);
+            }
+        }
         return data;
     }
 
+    /**
+     * The data, between the position and the limit of the returned buffer.
+     * The buffer shares the content of the received data but has its own position and limit;
+     * its content must not be modified.
+     *
+     * @throws IllegalStateException if the buffer has been released.
+     */
+    public ByteBuffer getBuffer() {
+        ensureNotReleased();
+        return buffer().duplicate();
+    }
+
+    /**
+     * The length of the data in bytes.
+     */
+    public int getLength() {
+        return buffer().remaining();
+    }
+
+    /**
+     * Whether the data is held in a pooled buffer, which should be released with {@link #release()}.
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Gives the buffer back to its pool, if it is pooled.
+     * The data and the buffer must not be accessed after this call,
+     * unless {@link #getData()} or {@link #getObservation()} were called before, in which case their results remain valid.
+     * Calling this method more than once has no effect.
+     */
+    public synchronized void release() {
+        if (released || pool == null) return;
+
+        released = true;
+        pool.release(buffer);
+        pool = null;
+    }
+
+    private void ensureNotReleased() {
+        if (released) {
+            throw new IllegalStateException("The buffer of this event has been released.");
+        }
+    }
+
     public RequestFormat getFormat() {
         return format;
     }
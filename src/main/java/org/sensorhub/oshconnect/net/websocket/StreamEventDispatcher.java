@@ -0,0 +1,295 @@
+package org.sensorhub.oshconnect.net.websocket;
+
+import org.sensorhub.oshconnect.OSHStream;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands stream events from the threads receiving them over to a dedicated consumer thread,
+ * through a bounded lock-free queue,
+ * so a slow consumer does not stall the sockets of the streams.
+ * <p>
+ * When the queue is full, new events are handled according to the {@link OverflowPolicy}.
+ * Dropped events are released, see {@link StreamEventArgs#release()}.
+ * <p>
+ * Tasks can also be run on the consumer thread with {@link #execute(Runnable)},
+ * e.g., to pass the events released by a timer to the consumer without running it on the timer thread.
+ * <p>
+ * This class is thread-safe.
+ */
+public class StreamEventDispatcher implements Executor, AutoCloseable {
+    /**
+     * The default maximum number of events waiting for the consumer.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final long BLOCKED_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Holds the events, or, with {@link OverflowPolicy#CONFLATE_LATEST}, the streams whose latest event is pending.
+     */
+    private final RingBuffer<Object> queue;
+    private final Consumer<StreamEventArgs> consumer;
+    /**
+     * The latest event of each stream queued with {@link OverflowPolicy#CONFLATE_LATEST}.
+     */
+    private final Map<OSHStream, StreamEventArgs> latestEvents = new ConcurrentHashMap<>();
+    /**
+     * The tasks to run on the consumer thread, not bounded by the capacity of the queue.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private volatile Thread consumerThread;
+    private volatile boolean consumerWaiting;
+    private volatile boolean closed;
+
+    /**
+     * @param consumer Called on the consumer thread with each event, in the order the events were published.
+     */
+    public StreamEventDispatcher(Consumer<StreamEventArgs> consumer) {
+        this(consumer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param consumer Called on the consumer thread with each event, in the order the events were published.
+     * @param capacity The maximum number of events waiting for the consumer, rounded up to a power of two.
+     */
+    public StreamEventDispatcher(Consumer<StreamEventArgs> consumer, int capacity) {
+        this.consumer = consumer;
+        this.queue = new RingBuffer<>(capacity);
+    }
+
+    /**
+     * Queue an event for the consumer.
+     * The consumer thread is started on the first call.
+     *
+     * @param event The event.
+     * @return false if the event was dropped.
+     */
+    public boolean publish(StreamEventArgs event) {
+        if (closed) {
+            drop(event);
+            return false;
+        }
+        ensureStarted();
+
+        OverflowPolicy policy = overflowPolicy;
+        Object element = event;
+        if (policy == OverflowPolicy.CONFLATE_LATEST) {
+            StreamEventArgs previous = latestEvents.put(event.getStream(), event);
+            if (previous != null) {
+                // The stream is already queued; the consumer will receive this event instead
+                drop(previous);
+                return true;
+            }
+            element = event.getStream();
+        }
+
+        boolean queued = queue.offer(element);
+        while (!queued) {
+            if (closed) {
+                discard(element);
+                return false;
+            }
+
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                discard(element);
+                return false;
+            } else if (policy == OverflowPolicy.DROP_OLDEST) {
+                Object oldest = queue.poll();
+                if (oldest != null) {
+                    discard(oldest);
+                }
+            } else {
+                LockSupport.parkNanos(BLOCKED_WAIT_NANOS);
+            }
+            queued = queue.offer(element);
+        }
+
+        if (consumerWaiting) {
+            consumerWaiting = false;
+            LockSupport.unpark(consumerThread);
+        }
+        return true;
+    }
+
+    /**
+     * Run a task on the consumer thread, after the tasks already submitted.
+     * The task is not subject to the overflow policy, and is not run if the dispatcher is closed.
+     * The consumer thread is started on the first call.
+     *
+     * @param task The task.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (closed) return;
+        ensureStarted();
+
+        tasks.offer(task);
+        if (consumerWaiting) {
+            consumerWaiting = false;
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    private synchronized void ensureStarted() {
+        if (consumerThread != null) return;
+
+        consumerThread = new Thread(this::consume, "oshconnect-dispatch-" + threadCount.incrementAndGet());
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    private void consume() {
+        while (!closed) {
+            runTasks();
+
+            Object element = queue.poll();
+            if (element == null) {
+                consumerWaiting = true;
+                // Check again, in case an event or a task was queued before the flag was visible to the producers
+                element = queue.poll();
+                if (element == null) {
+                    if (tasks.isEmpty()) {
+                        LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+                    }
+                    consumerWaiting = false;
+                    continue;
+                }
+                consumerWaiting = false;
+            }
+
+            StreamEventArgs event = take(element);
+            if (event == null) continue;
+
+            try {
+                consumer.accept(event);
+            } catch (RuntimeException e) {
+                // A failing consumer must not stop the dispatch of later events
+            }
+            deliveredCount.incrementAndGet();
+        }
+
+        Object remaining;
+        while ((remaining = queue.poll()) != null) {
+            StreamEventArgs event = take(remaining);
+            if (event != null) {
+                event.release();
+            }
+        }
+        tasks.clear();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while (!closed && (task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // A failing task must not stop the dispatch of later events
+            }
+        }
+    }
+
+    /**
+     * The event of a queue element, taking the latest event of the stream for a conflated stream.
+     */
+    private StreamEventArgs take(Object element) {
+        if (element instanceof StreamEventArgs event) {
+            return event;
+        }
+        return latestEvents.remove((OSHStream) element);
+    }
+
+    private void discard(Object element) {
+        StreamEventArgs event = take(element);
+        if (event != null) {
+            drop(event);
+        }
+    }
+
+    private void drop(StreamEventArgs event) {
+        droppedCount.incrementAndGet();
+        event.release();
+    }
+
+    /**
+     * Stop the consumer thread and release the events still queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = consumerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * What to do with a new event when the queue is full.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets what to do with a new event when the queue is full.
+     * {@link OverflowPolicy#BLOCK} by default.
+     *
+     * @param overflowPolicy The overflow policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy cannot be null.");
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * The number of events waiting for the consumer.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * The maximum number of events waiting for the consumer.
+     */
+    public int getCapacity() {
+        return queue.capacity();
+    }
+
+    /**
+     * The number of events dropped since the dispatcher was created,
+     * including events replaced by a later event of the same stream with {@link OverflowPolicy#CONFLATE_LATEST}.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The number of events delivered to the consumer since the dispatcher was created.
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * Whether the dispatcher has been closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -1,24 +1,76 @@
 package org.sensorhub.oshconnect.net.websocket;
 
+import org.sensorhub.oshconnect.OSHDataStream;
+import org.sensorhub.oshconnect.OSHNode;
 import org.sensorhub.oshconnect.OSHStream;
 import org.sensorhub.oshconnect.StreamManager;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.net.PagedObservationIterator;
+import org.sensorhub.oshconnect.net.RequestExecutors;
 import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.time.PlaybackEngine;
+import org.sensorhub.oshconnect.time.SharedTimingService;
+import org.sensorhub.oshconnect.time.TemporalMode;
 import org.sensorhub.oshconnect.time.TimeSynchronizer;
+import org.sensorhub.oshconnect.time.TimeSynchronizerEvent;
+import org.sensorhub.oshconnect.time.TimingService;
+import org.sensorhub.oshconnect.util.ObservationsQueryBuilder;
 import org.vast.util.TimeExtent;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
  * A handler for multiple data streams.
  * Override the {@link #onStreamUpdate(StreamEventArgs)} method to receive data from the data streams.
+ * Events are passed to it on a dispatch thread, so a slow handler does not hold up the connections
+ * or the timer shared with the other handlers; see {@link #getDispatcher()}.
  * Use {@link StreamManager#createDataStreamHandler(Consumer)} to create a new handler associated with an OSHConnect instance,
  * which will allow OSHConnect to manage the handler and shut it down when the OSHConnect instance is shut down.
+ * <p>
+ * Historical data can also be played back on the client, see {@link #startPlayback()},
+ * to pause, seek, reverse, or change the speed without reconnecting.
  */
 public abstract class StreamHandler implements StreamEventListener {
-    private final List<StreamListener> dataStreamListeners = new ArrayList<>();
+    private static final Instant MIN_PLAYBACK_TIME = Instant.parse("0000-01-01T00:00:00Z");
+    private static final Instant MAX_PLAYBACK_TIME = Instant.parse("9999-12-31T23:59:59.999Z");
+    /**
+     * The maximum time to wait for a page of archived observations during playback, in milliseconds.
+     */
+    private static final long ARCHIVE_PAGE_TIMEOUT_MS = 30_000;
+    /**
+     * Also read by the playback engine, on the threads loading the archive.
+     */
+    private final List<StreamListener> dataStreamListeners = new CopyOnWriteArrayList<>();
+    /**
+     * The multiplexed connections, by node, when {@link #isMultiplexed()} is true.
+     */
+    private final Map<OSHNode, MultiplexedStreamConnection> multiplexedConnections = new HashMap<>();
     private final TimeSynchronizer<StreamEventArgs> timeSynchronizer;
+    /**
+     * Hands the events received by the listeners over to the time synchronizer, on a thread of its own,
+     * which also passes the synchronized and conflated events to {@link #onStreamUpdate(StreamEventArgs)}.
+     */
+    private final StreamEventDispatcher dispatcher;
+    /**
+     * Holds the latest event of each data stream, when {@link #isConflated()} is true.
+     */
+    private final LatestValueConflator conflator = new LatestValueConflator();
 
     /**
      * The format of the request.
@@ -41,6 +93,45 @@ public abstract class StreamHandler implements StreamEventListener {
      * The status of the data stream handler.
      */
     private StreamStatus status = StreamStatus.DISCONNECTED;
+    /**
+     * Whether the data streams of the same node are received through a single connection.
+     */
+    private boolean multiplexed = false;
+    /**
+     * Whether only the latest event of each data stream is kept.
+     */
+    private volatile boolean conflated = false;
+    /**
+     * The period in milliseconds at which the latest events are passed to {@link #onStreamUpdate(StreamEventArgs)}
+     * when conflated, or 0 if the latest events are only taken from the {@link #getConflator() conflator}.
+     */
+    private int conflationIntervalMS = 0;
+    private ScheduledFuture<?> conflationTimer;
+    /**
+     * Whether the conflated events are waiting to be taken by the dispatch thread,
+     * so the timer does not queue another delivery meanwhile.
+     */
+    private final AtomicBoolean conflationPending = new AtomicBoolean();
+    /**
+     * The timing service running the time synchronizer and the conflation timer.
+     */
+    private TimingService timingService = SharedTimingService.getDefault();
+    /**
+     * When the listeners reconnect after their connection is lost, or null to stay disconnected.
+     */
+    private ReconnectPolicy reconnectPolicy;
+    /**
+     * Plays the time extent back from the archives of the data streams, or null if playback is not active.
+     */
+    private volatile PlaybackEngine<StreamEventArgs> playback;
+    /**
+     * The executor loading the archives for playback, or null to use an executor dedicated to the playback.
+     */
+    private Executor playbackExecutor;
+    /**
+     * The executor dedicated to the current playback, shut down when the playback stops.
+     */
+    private ExecutorService ownPlaybackExecutor;
 
     /**
      * Creates a new data stream handler.
@@ -50,30 +141,120 @@ public abstract class StreamHandler implements StreamEventListener {
      * and shut it down when the OSHConnect instance is shut down.
      */
     protected StreamHandler() {
-        this.timeSynchronizer = new TimeSynchronizer<>(this::onStreamUpdate);
+        this(StreamEventDispatcher.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new data stream handler.
+     *
+     * @param dispatchCapacity The maximum number of events received but not yet passed to
+     *                         {@link #onStreamUpdate(StreamEventArgs)}, before the overflow policy of the
+     *                         {@link #getDispatcher() dispatcher} applies.
+     * @see #StreamHandler()
+     */
+    protected StreamHandler(int dispatchCapacity) {
+        this.dispatcher = new StreamEventDispatcher(this::dispatch, dispatchCapacity);
+        this.timeSynchronizer = new TimeSynchronizer<>(this::onStreamUpdate, SharedTimingService.getDefault(), dispatcher);
+    }
+
+    /**
+     * Passes an event from the dispatcher on to the time synchronizer.
+     */
+    private void dispatch(StreamEventArgs args) {
+        timeSynchronizer.addEvent(args.getStream(), args.getTimestamp(), args);
+    }
+
+    /**
+     * Receives an event of the playback, on the dispatch thread.
+     * Played back events are already in timestamp order and paced by the playback clock,
+     * so they bypass both the time synchronizer and the overflow policy of the dispatcher.
+     */
+    private void receivePlayback(StreamEventArgs args) {
+        if (conflated) {
+            conflator.update(args);
+        } else {
+            onStreamUpdate(args);
+        }
+    }
+
+    /**
+     * Receives an event of a listener.
+     */
+    private void receive(StreamEventArgs args) {
+        if (conflated) {
+            conflator.update(args);
+        } else {
+            dispatcher.publish(args);
+        }
     }
 
     /**
      * Connects to all data streams.
+     * Stops the playback if it is active.
      */
     public void connect() {
         if (getStatus() == StreamStatus.SHUTDOWN) {
             throw new IllegalStateException("Handler has been shut down.");
         }
-
+        stopPlayback();
         for (StreamListener listener : dataStreamListeners) {
-            if (listener.getStatus() != StreamStatus.SHUTDOWN) {
-                listener.connect();
+            timeSynchronizer.addSource(listener.getDataStream());
+        }
+
+        if (multiplexed) {
+            connectMultiplexed(dataStreamListeners);
+        } else {
+            for (StreamListener listener : dataStreamListeners) {
+                if (listener.getStatus() != StreamStatus.SHUTDOWN) {
+                    listener.connect();
+                }
             }
         }
         status = StreamStatus.CONNECTED;
     }
 
+    /**
+     * Connects to the data streams, sharing a single connection for the data streams of the same node.
+     * Data streams that cannot be multiplexed, or that are alone on their node, get their own connection.
+     *
+     * @param listeners the listeners to connect.
+     */
+    private void connectMultiplexed(List<StreamListener> listeners) {
+        Map<OSHNode, List<StreamListener>> listenersByNode = new LinkedHashMap<>();
+        for (StreamListener listener : listeners) {
+            if (listener.getStatus() == StreamStatus.SHUTDOWN) continue;
+
+            if (MultiplexedStreamConnection.canMultiplex(listener, requestFormat)) {
+                OSHNode node = listener.getDataStream().getParentSystem().getParentNode();
+                listenersByNode.computeIfAbsent(node, n -> new ArrayList<>()).add(listener);
+            } else {
+                listener.connect();
+            }
+        }
+
+        listenersByNode.forEach((node, nodeListeners) -> {
+            MultiplexedStreamConnection previous = multiplexedConnections.remove(node);
+            if (previous != null) {
+                previous.disconnect();
+            }
+
+            if (nodeListeners.size() == 1) {
+                nodeListeners.get(0).connect();
+            } else {
+                MultiplexedStreamConnection connection = new MultiplexedStreamConnection(node, nodeListeners, timeExtent, replaySpeed);
+                multiplexedConnections.put(node, connection);
+                connection.connect();
+            }
+        });
+    }
+
     /**
      * Disconnects from all data streams.
      */
     public void disconnect() {
         dataStreamListeners.forEach(StreamListener::disconnect);
+        multiplexedConnections.values().forEach(MultiplexedStreamConnection::disconnect);
+        multiplexedConnections.clear();
         status = StreamStatus.DISCONNECTED;
     }
 
@@ -83,7 +264,13 @@ public abstract class StreamHandler implements StreamEventListener {
      * The handler will no longer be usable after this method is called.
      */
     public void shutdown() {
+        stopPlayback();
         shutdownAllDataStreamListeners();
+        multiplexedConnections.values().forEach(MultiplexedStreamConnection::disconnect);
+        multiplexedConnections.clear();
+        dispatcher.close();
+        stopConflationTimer();
+        conflator.clear();
         status = StreamStatus.SHUTDOWN;
     }
 
@@ -108,17 +295,29 @@ public abstract class StreamHandler implements StreamEventListener {
         StreamListener listener = new StreamListener(dataStream) {
             @Override
             public void onStreamUpdate(StreamEventArgs args) {
-                timeSynchronizer.addEvent(args.getTimestamp(), args);
+                receive(args);
             }
         };
 
         listener.setRequestFormat(requestFormat);
         listener.setReplaySpeed(replaySpeed);
         listener.setTimeExtent(timeExtent);
+        listener.setReconnectPolicy(reconnectPolicy);
         dataStreamListeners.add(listener);
+        conflator.addStream(dataStream);
+        // Wait for the first events of the new data stream before serving the others
+        timeSynchronizer.addSource(dataStream);
 
         if (status == StreamStatus.CONNECTED) {
-            listener.connect();
+            if (multiplexed && MultiplexedStreamConnection.canMultiplex(listener, requestFormat)) {
+                // The data stream filter is part of the request, so the connection to the node is reopened
+                OSHNode node = dataStream.getParentSystem().getParentNode();
+                connectMultiplexed(dataStreamListeners.stream()
+                        .filter(l -> l.getDataStream().getParentSystem().getParentNode().equals(node))
+                        .toList());
+            } else {
+                listener.connect();
+            }
         }
 
         return listener;
@@ -153,6 +352,7 @@ public abstract class StreamHandler implements StreamEventListener {
         boolean removed = dataStreamListeners.remove(listener);
         if (removed) {
             listener.shutdown();
+            removeStreamState(listener.getDataStream());
         }
         return removed;
     }
@@ -161,8 +361,23 @@ public abstract class StreamHandler implements StreamEventListener {
      * Shuts down all data streams and removes them from the handler.
      */
     public void shutdownAllDataStreamListeners() {
-        dataStreamListeners.forEach(StreamListener::shutdown);
-        dataStreamListeners.clear();
+        for (StreamListener listener : dataStreamListeners) {
+            dataStreamListeners.remove(listener);
+            listener.shutdown();
+            removeStreamState(listener.getDataStream());
+        }
+    }
+
+    /**
+     * Removes the conflation slot and the watermark of a data stream,
+     * unless another listener of the handler still receives the data stream.
+     */
+    private void removeStreamState(OSHStream dataStream) {
+        boolean inUse = dataStreamListeners.stream().anyMatch(l -> l.getDataStream().equals(dataStream));
+        if (!inUse) {
+            conflator.removeStream(dataStream);
+            timeSynchronizer.removeSource(dataStream);
+        }
     }
 
     /**
@@ -176,6 +391,15 @@ public abstract class StreamHandler implements StreamEventListener {
         return timeSynchronizer;
     }
 
+    /**
+     * The dispatcher passing the events received by the listeners to {@link #onStreamUpdate(StreamEventArgs)}.
+     * Use it to set the overflow policy applied when events are received faster than they are handled,
+     * and to monitor the number of queued and dropped events.
+     */
+    public StreamEventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
     /**
      * The format of the request.
      * If null, the format will not be specified in the request, i.e., the data will be received in the default format.
@@ -194,9 +418,7 @@ public abstract class StreamHandler implements StreamEventListener {
      */
     public void setRequestFormat(RequestFormat requestFormat) {
         this.requestFormat = requestFormat;
-        for (StreamListener listener : dataStreamListeners) {
-            listener.setRequestFormat(requestFormat);
-        }
+        applyToListeners(listener -> listener.setRequestFormat(requestFormat));
     }
 
     /**
@@ -211,15 +433,23 @@ public abstract class StreamHandler implements StreamEventListener {
      * Sets the time period for the data stream.
      * If null, the time period will not be specified in the request, i.e., will listen to the data stream in real-time.
      * Calling this method will reconnect to the data stream if it is already connected.
+     * While playback is active, a bounded period is applied to the playback without reconnecting,
+     * and any other value stops the playback.
      *
      * @param timeExtent the time period of the request.
      *                   Set to null to remove the previously set time period.
      */
     public void setTimeExtent(TimeExtent timeExtent) {
         this.timeExtent = timeExtent;
-        for (StreamListener listener : dataStreamListeners) {
-            listener.setTimeExtent(timeExtent);
+        PlaybackEngine<StreamEventArgs> engine = playback;
+        if (engine != null) {
+            if (isArchive(timeExtent)) {
+                engine.setTimeRange(timeExtent.begin().toEpochMilli(), timeExtent.end().toEpochMilli());
+            } else {
+                stopPlayback();
+            }
         }
+        applyToListeners(listener -> listener.setTimeExtent(timeExtent));
     }
 
     /**
@@ -238,14 +468,384 @@ public abstract class StreamHandler implements StreamEventListener {
      * 1.0 is the default speed, 0.1 is 10 times slower, 10.0 is 10 times faster.
      * Zero or negative values will result in no data being received.
      * Calling this method will reconnect to the data stream if it is already connected.
+     * While playback is active, the speed is only applied to the playback clock,
+     * zero or negative values pause the playback, and a positive value resumes a playback paused that way.
      *
      * @param replaySpeed the replay speed of the request.
      */
     public void setReplaySpeed(double replaySpeed) {
+        double previousSpeed = this.replaySpeed;
         this.replaySpeed = replaySpeed;
+        PlaybackEngine<StreamEventArgs> engine = playback;
+        if (engine != null) {
+            if (replaySpeed > 0) {
+                engine.setSpeed(replaySpeed);
+                if (previousSpeed <= 0) {
+                    engine.play();
+                }
+            } else {
+                engine.pause();
+            }
+        }
+        applyToListeners(listener -> listener.setReplaySpeed(replaySpeed));
+    }
+
+    /**
+     * Applies a setting to all listeners.
+     * Multiplexed connections are reopened once with the new setting, rather than each listener reconnecting on its own.
+     */
+    private void applyToListeners(Consumer<StreamListener> setting) {
+        boolean reconnect = multiplexed && status == StreamStatus.CONNECTED;
+        if (reconnect) {
+            disconnect();
+        }
+
+        dataStreamListeners.forEach(setting);
+
+        if (reconnect) {
+            connect();
+        }
+    }
+
+    /**
+     * When the listeners reconnect after their connection is lost, or null to stay disconnected.
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Sets when the listeners reconnect after their connection is lost.
+     * See {@link StreamListener#setReconnectPolicy(ReconnectPolicy)}.
+     *
+     * @param reconnectPolicy the reconnect policy, or null to stay disconnected, the default.
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+        dataStreamListeners.forEach(listener -> listener.setReconnectPolicy(reconnectPolicy));
+    }
+
+    /**
+     * Whether the data streams of the same node are received through a single connection
+     * to the observations endpoint of the node, instead of one connection per data stream.
+     */
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    /**
+     * Sets whether the data streams of the same node are received through a single connection
+     * to the observations endpoint of the node, instead of one connection per data stream.
+     * Multiplexing requires the observations to identify their data stream,
+     * so it only applies when the request format is null, {@link RequestFormat#JSON}, or {@link RequestFormat#OM_JSON};
+     * data streams requested in other formats, and control streams, keep their own connection.
+     * Calling this method will reconnect to the data streams if the handler is already connected.
+     *
+     * @param multiplexed true to share a connection per node.
+     */
+    public void setMultiplexed(boolean multiplexed) {
+        if (this.multiplexed == multiplexed) return;
+
+        boolean reconnect = status == StreamStatus.CONNECTED;
+        if (reconnect) {
+            disconnect();
+        }
+        this.multiplexed = multiplexed;
+        if (reconnect) {
+            connect();
+        }
+    }
+
+    /**
+     * The multiplexed connections currently open, one per node.
+     */
+    public List<MultiplexedStreamConnection> getMultiplexedConnections() {
+        return new ArrayList<>(multiplexedConnections.values());
+    }
+
+    /**
+     * Whether only the latest event of each data stream is kept,
+     * instead of passing every event to {@link #onStreamUpdate(StreamEventArgs)}.
+     */
+    public boolean isConflated() {
+        return conflated;
+    }
+
+    /**
+     * Sets whether only the latest event of each data stream is kept,
+     * instead of passing every event to {@link #onStreamUpdate(StreamEventArgs)}.
+     * <p>
+     * When conflated, each new event replaces the pending event of its data stream.
+     * The pending events are either taken by the application at its own pace from the {@link #getConflator() conflator},
+     * or passed to {@link #onStreamUpdate(StreamEventArgs)} at a fixed rate, see {@link #setConflationIntervalMS(int)}.
+     * Conflated events bypass the time synchronizer.
+     *
+     * @param conflated true to keep only the latest event of each data stream.
+     */
+    public void setConflated(boolean conflated) {
+        if (this.conflated == conflated) return;
+
+        this.conflated = conflated;
+        if (conflated) {
+            startConflationTimer();
+        } else {
+            stopConflationTimer();
+            conflator.clear();
+        }
+    }
+
+    /**
+     * The period in milliseconds at which the latest events are passed to {@link #onStreamUpdate(StreamEventArgs)}
+     * when conflated, or 0 if the latest events are only taken from the {@link #getConflator() conflator}.
+     */
+    public int getConflationIntervalMS() {
+        return conflationIntervalMS;
+    }
+
+    /**
+     * Sets the period in milliseconds at which the latest events are passed to {@link #onStreamUpdate(StreamEventArgs)}
+     * when conflated.
+     * Only the data streams updated since the previous tick are passed.
+     *
+     * @param conflationIntervalMS The period in milliseconds,
+     *                             or 0 to only take the latest events from the {@link #getConflator() conflator}.
+     * @throws IllegalArgumentException if conflationIntervalMS is negative.
+     */
+    public void setConflationIntervalMS(int conflationIntervalMS) {
+        if (conflationIntervalMS < 0) {
+            throw new IllegalArgumentException("Conflation interval cannot be negative.");
+        }
+
+        this.conflationIntervalMS = conflationIntervalMS;
+        if (conflated) {
+            stopConflationTimer();
+            startConflationTimer();
+        }
+    }
+
+    /**
+     * The timing service running the time synchronizer and the conflation timer.
+     */
+    public TimingService getTimingService() {
+        return timingService;
+    }
+
+    /**
+     * Sets the timing service running the time synchronizer and the conflation timer.
+     * Handlers added to an OSHConnect instance use its timing service, see {@link StreamManager}.
+     *
+     * @param timingService the timing service, or null to use {@link SharedTimingService#getDefault()}.
+     */
+    public void setTimingService(TimingService timingService) {
+        this.timingService = timingService != null ? timingService : SharedTimingService.getDefault();
+        timeSynchronizer.setTimingService(this.timingService);
+        PlaybackEngine<StreamEventArgs> engine = playback;
+        if (engine != null) {
+            engine.setTimingService(this.timingService);
+        }
+        if (conflationTimer != null) {
+            stopConflationTimer();
+            startConflationTimer();
+        }
+    }
+
+    /**
+     * The latest event of each data stream, when {@link #isConflated()} is true.
+     */
+    public LatestValueConflator getConflator() {
+        return conflator;
+    }
+
+    private void startConflationTimer() {
+        if (conflationIntervalMS == 0) return;
+
+        conflationTimer = timingService.scheduleAtFixedRate(this::requestConflatedDelivery, conflationIntervalMS, conflationIntervalMS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopConflationTimer() {
+        if (conflationTimer != null) {
+            conflationTimer.cancel(false);
+            conflationTimer = null;
+        }
+    }
+
+    /**
+     * Runs on the timer: the conflated events are passed to {@link #onStreamUpdate(StreamEventArgs)} on the dispatch thread.
+     */
+    private void requestConflatedDelivery() {
+        if (conflator.getPendingCount() > 0 && conflationPending.compareAndSet(false, true)) {
+            dispatcher.execute(this::deliverConflatedEvents);
+        }
+    }
+
+    private void deliverConflatedEvents() {
+        conflationPending.set(false);
+        conflator.drainTo(args -> {
+            try {
+                onStreamUpdate(args);
+            } catch (RuntimeException e) {
+                // A failing handler must not prevent the other data streams from being delivered
+            }
+        });
+    }
+
+    /**
+     * Plays the time extent back on the client, from the archives of the data streams, instead of over the connections.
+     * The handler is disconnected, and the observations are requested from the nodes one page at a time,
+     * ahead of the playback position, then passed to {@link #onStreamUpdate(StreamEventArgs)} in timestamp order
+     * at the replay speed, on the dispatch thread; the overflow policy of the dispatcher does not apply to them.
+     * Use the returned engine to pause, resume, seek, reverse, or change the speed without reconnecting;
+     * {@link #setReplaySpeed(double)} and {@link #setTimeExtent(TimeExtent)} also apply to it.
+     * Only data streams are played back, in OM-JSON format; control streams are ignored.
+     * Calling {@link #connect()} stops the playback.
+     *
+     * @return the playback engine, playing unless the replay speed is zero or negative.
+     * @throws IllegalStateException if the time extent is not a bounded period, or if the handler has been shut down.
+     */
+    public PlaybackEngine<StreamEventArgs> startPlayback() {
+        if (getStatus() == StreamStatus.SHUTDOWN) {
+            throw new IllegalStateException("Handler has been shut down.");
+        }
+        if (!isArchive(timeExtent)) {
+            throw new IllegalStateException("Playback requires a time extent with a fixed beginning and end.");
+        }
+
+        PlaybackEngine<StreamEventArgs> engine = playback;
+        if (engine == null) {
+            disconnect();
+            Executor loadExecutor = playbackExecutor;
+            if (loadExecutor == null) {
+                // The loader waits for the pages decoded on the request executors, so it must not run on one of them
+                ownPlaybackExecutor = RequestExecutors.newBoundedExecutor(1);
+                loadExecutor = ownPlaybackExecutor;
+            }
+            engine = new PlaybackEngine<>(this::loadArchive, this::receivePlayback, loadExecutor, timingService, dispatcher);
+            engine.setTimeRange(timeExtent.begin().toEpochMilli(), timeExtent.end().toEpochMilli());
+            if (replaySpeed > 0) {
+                engine.setSpeed(replaySpeed);
+            }
+            playback = engine;
+        }
+        if (replaySpeed > 0) {
+            engine.play();
+        }
+        return engine;
+    }
+
+    /**
+     * Stops the playback and discards its buffer.
+     * The handler stays disconnected; call {@link #connect()} to receive data over the connections again.
+     * Has no effect if playback is not active.
+     */
+    public void stopPlayback() {
+        PlaybackEngine<StreamEventArgs> engine = playback;
+        if (engine != null) {
+            playback = null;
+            engine.close();
+        }
+        if (ownPlaybackExecutor != null) {
+            ownPlaybackExecutor.shutdown();
+            ownPlaybackExecutor = null;
+        }
+    }
+
+    /**
+     * The executor loading the archives for playback, or null if each playback uses an executor of its own.
+     */
+    public Executor getPlaybackExecutor() {
+        return playbackExecutor;
+    }
+
+    /**
+     * Sets the executor loading the archives for playback, from the next call to {@link #startPlayback()}.
+     * The loader waits for the pages of observations, which are decoded on the request executors of the nodes,
+     * so it must not be one of them.
+     *
+     * @param playbackExecutor the executor, or null to create a single thread executor for each playback.
+     */
+    public void setPlaybackExecutor(Executor playbackExecutor) {
+        this.playbackExecutor = playbackExecutor;
+    }
+
+    /**
+     * The playback engine, or null if playback is not active.
+     *
+     * @see #startPlayback()
+     */
+    public PlaybackEngine<StreamEventArgs> getPlayback() {
+        return playback;
+    }
+
+    /**
+     * How the data is received:
+     * {@link TemporalMode#ARCHIVE_SYNC} while playback is active, since its events are ordered across data streams;
+     * otherwise {@link TemporalMode#REAL_TIME} or {@link TemporalMode#ARCHIVE}, depending on the time extent,
+     * or their synchronized variant if time synchronization is enabled.
+     */
+    public TemporalMode getTemporalMode() {
+        if (playback != null) {
+            return TemporalMode.ARCHIVE_SYNC;
+        }
+
+        boolean synchronizedMode = timeSynchronizer.isTimeSynchronizationEnabled();
+        if (timeExtent == null || timeExtent.isNow() || timeExtent.endsNow()) {
+            return synchronizedMode ? TemporalMode.REAL_TIME_SYNC : TemporalMode.REAL_TIME;
+        }
+        return synchronizedMode ? TemporalMode.ARCHIVE_SYNC : TemporalMode.ARCHIVE;
+    }
+
+    /**
+     * Whether a time extent is a bounded period that can be played back from the archives.
+     */
+    private static boolean isArchive(TimeExtent timeExtent) {
+        return timeExtent != null && !timeExtent.isNow()
+                && isBounded(timeExtent.begin()) && isBounded(timeExtent.end());
+    }
+
+    /**
+     * Whether an instant is neither "now", represented by null, nor unbounded.
+     */
+    private static boolean isBounded(Instant instant) {
+        return instant != null && !instant.isBefore(MIN_PLAYBACK_TIME) && !instant.isAfter(MAX_PLAYBACK_TIME);
+    }
+
+    /**
+     * Loads the observations of the data streams in a range, for the playback.
+     * The data streams are requested concurrently, each one page at a time.
+     */
+    private List<TimeSynchronizerEvent<StreamEventArgs>> loadArchive(long begin, long end) throws IOException {
+        TimeExtent range = TimeExtent.period(Instant.ofEpochMilli(begin), Instant.ofEpochMilli(end - 1));
+        ObservationsQueryBuilder query = new ObservationsQueryBuilder().phenomenonTime(range);
+        List<List<TimeSynchronizerEvent<StreamEventArgs>>> eventsByDataStream = new ArrayList<>();
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
         for (StreamListener listener : dataStreamListeners) {
-            listener.setReplaySpeed(replaySpeed);
+            if (!(listener.getDataStream() instanceof OSHDataStream dataStream)) continue;
+
+            List<TimeSynchronizerEvent<StreamEventArgs>> dataStreamEvents = new ArrayList<>();
+            eventsByDataStream.add(dataStreamEvents);
+            loads.add(dataStream.forEachObservationPage(query, PagedObservationIterator.DEFAULT_PAGE_SIZE, ARCHIVE_PAGE_TIMEOUT_MS, page -> {
+                for (ObservationData observation : page) {
+                    if (observation.getPhenomenonTime() == null) continue;
+
+                    StreamEventArgs args = StreamEventArgs.fromObservation(observation, dataStream);
+                    dataStreamEvents.add(new TimeSynchronizerEvent<>(args.getTimestamp(), args));
+                }
+                return true;
+            }));
         }
+
+        try {
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Error loading the archives for playback", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the archives for playback");
+        }
+
+        List<TimeSynchronizerEvent<StreamEventArgs>> events = new ArrayList<>();
+        eventsByDataStream.forEach(events::addAll);
+        return events;
     }
 
     /**
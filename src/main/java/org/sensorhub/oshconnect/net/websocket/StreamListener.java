@@ -1,37 +1,57 @@
 package org.sensorhub.oshconnect.net.websocket;
 
-import org.json.JSONObject;
+import org.sensorhub.oshconnect.OSHDataStream;
+import org.sensorhub.oshconnect.OSHNode;
 import org.sensorhub.oshconnect.OSHStream;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.net.PagedObservationIterator;
+import org.sensorhub.oshconnect.net.RequestExecutors;
 import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.util.ObservationsQueryBuilder;
 import org.sensorhub.oshconnect.util.QueryStringBuilder;
+import org.sensorhub.oshconnect.util.TimestampScanner;
 import org.vast.util.TimeExtent;
 
 import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Listener for a single data stream.
  * Override the {@link #onStreamUpdate(StreamEventArgs)} method to handle the data received from the data stream.
  * To listen to multiple data streams, use a {@link StreamHandler}.
+ * <p>
+ * With a {@link ReconnectPolicy}, the listener reconnects when its connection is lost,
+ * and the observations missed in the meantime are delivered before the live data resumes;
+ * see {@link #setReconnectPolicy(ReconnectPolicy)}.
  */
 public abstract class StreamListener implements StreamEventListener {
-    private static final String DATE_REGEX_TEXT = "\\d{4}-\\d{2}-\\d{2}T\\d{2}:";
-    private static final String DATE_REGEX_XML = "<[^>]+>(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d+Z)</[^>]+>";
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    /**
+     * The maximum time to wait for a page of the observations missed while disconnected, in milliseconds.
+     */
+    private static final long BACKFILL_PAGE_TIMEOUT_MS = 30_000;
     /**
      * The data stream being listened to.
      */
     private final OSHStream dataStream;
     private final List<StatusListener> statusListeners = new ArrayList<>();
+    private final StatusListener connectionStatusListener = this::updateStatus;
     private boolean isShutdown = false;
     /**
      * The WebSocket connection to the data stream.
      */
     private WebSocketConnection webSocketConnection;
+    /**
+     * Whether the WebSocket connection is shared with other listeners, see {@link MultiplexedStreamConnection}.
+     */
+    private boolean isMultiplexed = false;
     /**
      * The format of the request.
      * If null, the format will not be specified in the request, i.e., the data will be received in the default format.
@@ -49,6 +69,44 @@ public abstract class StreamListener implements StreamEventListener {
      * Zero or negative values will result in no data being received.
      */
     private double replaySpeed = 1;
+    /**
+     * When to reconnect after the connection is lost, or null to stay disconnected.
+     */
+    private ReconnectPolicy reconnectPolicy;
+    private int reconnectAttempts;
+    /**
+     * Incremented each time the connection is replaced or closed on purpose,
+     * so the events of previous connections and their pending reconnections are ignored.
+     */
+    private volatile int connectionGeneration;
+    /**
+     * The latest timestamp delivered to {@link #onStreamUpdate(StreamEventArgs)}.
+     */
+    private volatile long lastDeliveredTimestamp = NO_TIMESTAMP;
+    /**
+     * The events delivered at {@link #lastDeliveredTimestamp}, only identified if the connection is lost,
+     * so the live events are neither decoded nor copied to be tracked.
+     * Only tracked with a reconnect policy. Guarded by its own lock, like the fields of the resumption below.
+     */
+    private final List<StreamEventArgs> lastDeliveredEvents = new ArrayList<>();
+    /**
+     * Events before this timestamp were delivered before the connection was lost, and are dropped as duplicates.
+     * Since several observations of the data stream may share a timestamp, events at this timestamp are only dropped
+     * if their observation ID is in {@link #resumeAfterIds},
+     * or in place of an event delivered without an ID, see {@link #resumeAfterAnonymousCount}.
+     */
+    private volatile long resumeAfterTimestamp = NO_TIMESTAMP;
+    private final Set<String> resumeAfterIds = new HashSet<>();
+    /**
+     * The number of events delivered at {@link #resumeAfterTimestamp} whose observation ID could not be found,
+     * e.g., in a format without IDs; as many events at this timestamp are dropped, in the order they are received.
+     */
+    private int resumeAfterAnonymousCount;
+    /**
+     * Whether the missed observations are being fetched, during which live events are held in {@link #resumeBuffer}.
+     */
+    private volatile boolean resuming;
+    private final List<StreamEventArgs> resumeBuffer = new ArrayList<>();
 
     /**
      * Creates a new data stream listener for the specified data stream.
@@ -68,10 +126,121 @@ public abstract class StreamListener implements StreamEventListener {
      * @param data the data received from the data stream.
      */
     public void onStreamUpdate(byte[] data) {
-        RequestFormat format = determineRequestFormat(data);
-        long timestamp = determineTimestamp(format, data);
+        onStreamUpdate(ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * Called when the data stream receives an update.
+     * Parses the data and calls {@link #onStreamUpdate(StreamEventArgs)}, without copying the data.
+     *
+     * @param data the data received from the data stream, between the position and the limit of the buffer.
+     * @param pool the pool the buffer is released to by {@link StreamEventArgs#release()}, or null if it is not pooled.
+     */
+    public void onStreamUpdate(ByteBuffer data, FrameBufferPool pool) {
+        if (!data.hasArray()) {
+            ByteBuffer heapData = ByteBuffer.allocate(data.remaining());
+            heapData.put(data).flip();
+            data = heapData;
+            pool = null;
+        }
+
+        byte[] array = data.array();
+        int offset = data.arrayOffset() + data.position();
+        int length = data.remaining();
+        RequestFormat format = determineRequestFormat(array, offset, length);
+        long timestamp = determineTimestamp(format, array, offset, length);
+
+        deliver(new StreamEventArgs(timestamp, data, format, dataStream, pool));
+    }
 
-        onStreamUpdate(new StreamEventArgs(timestamp, data, format, dataStream));
+    /**
+     * Pass a received event to {@link #onStreamUpdate(StreamEventArgs)},
+     * or hold it until the observations missed while disconnected have been delivered.
+     */
+    private void deliver(StreamEventArgs args) {
+        if (resuming) {
+            synchronized (resumeBuffer) {
+                if (resuming) {
+                    resumeBuffer.add(args);
+                    return;
+                }
+            }
+        }
+        deliverInOrder(args);
+    }
+
+    /**
+     * Pass an event to {@link #onStreamUpdate(StreamEventArgs)}, unless it was already delivered before a reconnection.
+     */
+    private void deliverInOrder(StreamEventArgs args) {
+        long timestamp = args.getTimestamp();
+        if (timestamp != TimestampScanner.NOT_FOUND) {
+            if (timestamp < resumeAfterTimestamp) {
+                args.release();
+                return;
+            }
+
+            synchronized (lastDeliveredEvents) {
+                if (timestamp == resumeAfterTimestamp && isDeliveredAgain(args)) {
+                    args.release();
+                    return;
+                }
+                if (timestamp > lastDeliveredTimestamp) {
+                    lastDeliveredTimestamp = timestamp;
+                    lastDeliveredEvents.clear();
+                }
+                if (reconnectPolicy != null && timestamp == lastDeliveredTimestamp) {
+                    lastDeliveredEvents.add(args);
+                }
+            }
+        }
+        onStreamUpdate(args);
+    }
+
+    /**
+     * Whether an event at {@link #resumeAfterTimestamp} was already delivered before the connection was lost.
+     * Must be called while holding the lock of {@link #lastDeliveredEvents}.
+     */
+    private boolean isDeliveredAgain(StreamEventArgs args) {
+        String id = args.findObservationId();
+        if (id != null && resumeAfterIds.contains(id)) return true;
+
+        if (resumeAfterAnonymousCount > 0) {
+            // Takes the place of an event delivered without an ID, which is now identified
+            resumeAfterAnonymousCount--;
+            if (id != null) {
+                resumeAfterIds.add(id);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop the events delivered up to the given timestamp, when they are received again.
+     * The events delivered at the timestamp are identified by their observation ID, found in their data.
+     * Must be called while holding the lock of {@link #lastDeliveredEvents}.
+     */
+    private void dropDeliveredUpTo(long timestamp) {
+        if (timestamp < resumeAfterTimestamp) return;
+
+        if (timestamp > resumeAfterTimestamp) {
+            resumeAfterTimestamp = timestamp;
+            resumeAfterIds.clear();
+            resumeAfterAnonymousCount = 0;
+        }
+        if (timestamp == lastDeliveredTimestamp) {
+            for (StreamEventArgs delivered : lastDeliveredEvents) {
+                // The ID is not found if the handler released a pooled buffer; the event is then counted instead
+                String id = delivered.findObservationId();
+                if (id == null) {
+                    resumeAfterAnonymousCount++;
+                } else {
+                    resumeAfterIds.add(id);
+                }
+            }
+            lastDeliveredEvents.clear();
+        }
     }
 
     /**
@@ -88,25 +257,203 @@ public abstract class StreamListener implements StreamEventListener {
     /**
      * Connects to the data stream using the specified request format, replay speed, and time period.
      */
-    public void connect() {
+    public synchronized void connect() {
+        if (getStatus() == StreamStatus.SHUTDOWN) {
+            throw new IllegalStateException("Listener has been shut down.");
+        }
+
+        disconnect();
+        synchronized (lastDeliveredEvents) {
+            resumeAfterTimestamp = NO_TIMESTAMP;
+            resumeAfterIds.clear();
+            resumeAfterAnonymousCount = 0;
+        }
+        reconnectAttempts = 0;
+        openConnection(buildRequestString(timeExtent));
+    }
+
+    private void openConnection(String request) {
+        WebSocketConnection connection = new WebSocketConnection(this, request);
+        int generation = connectionGeneration;
+        connection.addStatusListener(status -> onConnectionStatusChanged(generation, status));
+        webSocketConnection = connection;
+        connection.connect();
+    }
+
+    private void onConnectionStatusChanged(int generation, StreamStatus status) {
+        updateStatus(status);
+        if (status == StreamStatus.CONNECTED) {
+            synchronized (this) {
+                if (generation == connectionGeneration) {
+                    reconnectAttempts = 0;
+                }
+            }
+        } else if (status == StreamStatus.DISCONNECTED || status == StreamStatus.ERROR) {
+            onConnectionLost(generation);
+        }
+    }
+
+    /**
+     * Schedule a reconnection according to the reconnect policy,
+     * unless the connection was closed on purpose or a reconnection is already scheduled.
+     */
+    private synchronized void onConnectionLost(int generation) {
+        if (generation != connectionGeneration || isShutdown || reconnectPolicy == null) return;
+        if (!reconnectPolicy.shouldRetry(reconnectAttempts)) return;
+
+        int nextGeneration = ++connectionGeneration;
+        long delay = reconnectPolicy.getDelayMS(reconnectAttempts++);
+        // The reconnection only sends requests without waiting on them, so it can run on the request executor of the node
+        CompletableFuture.runAsync(() -> reconnect(nextGeneration),
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, getReconnectExecutor()));
+    }
+
+    /**
+     * The executor running the reconnections: the request executor of the node, or the default one.
+     */
+    private Executor getReconnectExecutor() {
+        Executor executor = null;
+        if (dataStream.getParentSystem() != null) {
+            OSHNode node = dataStream.getParentSystem().getParentNode();
+            if (node != null) {
+                executor = node.getRequestExecutor();
+            }
+        }
+        return executor != null ? executor : RequestExecutors.getDefaultExecutor();
+    }
+
+    /**
+     * Open a new connection after the previous one was lost.
+     * In real-time, the observations of the data stream since the last delivered event are fetched
+     * from the node and delivered first, while the live events are held back.
+     * For historical data, the request is resumed from the last delivered event.
+     */
+    private void reconnect(int generation) {
+        long resumeAfter;
+        boolean backfill;
+        synchronized (this) {
+            if (generation != connectionGeneration || isShutdown) return;
+
+            WebSocketConnection lost = webSocketConnection;
+            if (lost != null) {
+                lost.disconnect();
+            }
+
+            synchronized (lastDeliveredEvents) {
+                resumeAfter = lastDeliveredTimestamp;
+                dropDeliveredUpTo(resumeAfter);
+            }
+            boolean realTime = timeExtent == null || timeExtent.isNow();
+            backfill = resumeAfter != NO_TIMESTAMP && realTime && dataStream instanceof OSHDataStream;
+            if (backfill) {
+                resuming = true;
+            }
+
+            TimeExtent requestExtent = timeExtent;
+            if (resumeAfter != NO_TIMESTAMP && !realTime) {
+                Instant resumeFrom = Instant.ofEpochMilli(resumeAfter);
+                requestExtent = timeExtent.endsNow() ? TimeExtent.beginAt(resumeFrom) : TimeExtent.period(resumeFrom, timeExtent.end());
+            }
+            openConnection(buildRequestString(requestExtent));
+        }
+
+        if (backfill) {
+            backfill(generation, resumeAfter);
+        }
+    }
+
+    /**
+     * Deliver the observations of the data stream received by the node after the given time,
+     * then the live events held back in the meantime.
+     * The observations are fetched in OM-JSON format, whatever the request format.
+     * No thread waits for the pages, so the reconnections never hold a thread of the request executor,
+     * which decodes the pages.
+     */
+    private void backfill(int generation, long resumeAfter) {
+        OSHDataStream oshDataStream = (OSHDataStream) dataStream;
+        ObservationsQueryBuilder query = new ObservationsQueryBuilder()
+                .phenomenonTime(TimeExtent.period(Instant.ofEpochMilli(resumeAfter), Instant.now()));
+
+        CompletableFuture<Void> observations;
+        try {
+            observations = oshDataStream.forEachObservationPage(query, PagedObservationIterator.DEFAULT_PAGE_SIZE, BACKFILL_PAGE_TIMEOUT_MS, page -> {
+                for (ObservationData observation : page) {
+                    if (generation != connectionGeneration) return false;
+                    deliverInOrder(StreamEventArgs.fromObservation(observation, oshDataStream));
+                }
+                return generation == connectionGeneration;
+            });
+        } catch (RuntimeException e) {
+            observations = CompletableFuture.failedFuture(e);
+        }
+
+        observations.whenComplete((result, e) -> {
+            // On failure, the missed observations are lost; the live data resumes regardless
+            if (generation == connectionGeneration) {
+                endResume(true);
+            }
+        });
+    }
+
+    /**
+     * Stop holding back the live events.
+     *
+     * @param deliver true to deliver the events held back, false to release them.
+     */
+    private void endResume(boolean deliver) {
+        synchronized (resumeBuffer) {
+            synchronized (lastDeliveredEvents) {
+                dropDeliveredUpTo(lastDeliveredTimestamp);
+            }
+            for (StreamEventArgs args : resumeBuffer) {
+                if (deliver) {
+                    deliverInOrder(args);
+                } else {
+                    args.release();
+                }
+            }
+            resumeBuffer.clear();
+            resuming = false;
+        }
+    }
+
+    /**
+     * Receive the data stream through a connection shared with other listeners.
+     * Used by {@link MultiplexedStreamConnection}, which owns the connection.
+     *
+     * @param connection the shared connection.
+     */
+    synchronized void attach(WebSocketConnection connection) {
         if (getStatus() == StreamStatus.SHUTDOWN) {
             throw new IllegalStateException("Listener has been shut down.");
         }
 
         disconnect();
-        String request = buildRequestString();
-        webSocketConnection = new WebSocketConnection(this, request);
-        webSocketConnection.addStatusListener(this::updateStatus);
-        webSocketConnection.connect();
+        webSocketConnection = connection;
+        isMultiplexed = true;
+        connection.addStatusListener(connectionStatusListener);
     }
 
     /**
      * Disconnects from the data stream.
+     * If the connection is shared with other listeners, this listener stops receiving data but the connection stays open.
      */
-    public void disconnect() {
-        if (webSocketConnection != null) {
-            webSocketConnection.disconnect();
-            webSocketConnection = null;
+    public synchronized void disconnect() {
+        connectionGeneration++;
+        if (resuming) {
+            endResume(false);
+        }
+
+        WebSocketConnection connection = webSocketConnection;
+        webSocketConnection = null;
+        if (connection != null) {
+            if (isMultiplexed) {
+                connection.removeStatusListener(connectionStatusListener);
+                isMultiplexed = false;
+                updateStatus(StreamStatus.DISCONNECTED);
+            } else {
+                connection.disconnect();
+            }
         }
     }
 
@@ -133,65 +480,49 @@ public abstract class StreamListener implements StreamEventListener {
     /**
      * Determines the format of the request based on the data.
      *
-     * @param data the data received from the data stream.
+     * @param data   the array holding the data received from the data stream.
+     * @param offset the index of the first byte of the data.
+     * @param length the length of the data.
      * @return the format of the request.
      */
-    private RequestFormat determineRequestFormat(byte[] data) {
+    private RequestFormat determineRequestFormat(byte[] data, int offset, int length) {
         if (requestFormat != null) {
             return requestFormat;
         }
 
-        if (data[0] == '{') {
+        if (length > 0 && data[offset] == '{') {
             return RequestFormat.JSON;
-        } else if (data[0] == '<') {
+        } else if (length > 0 && data[offset] == '<') {
             return RequestFormat.SWE_XML;
+        } else if (TimestampScanner.startsWithDateTime(data, offset, length)) {
+            return RequestFormat.PLAIN_TEXT;
         } else {
-            // Check if the first 14 characters are a date.
-            byte[] first14Bytes = new byte[14];
-            System.arraycopy(data, 0, first14Bytes, 0, 14);
-            String dataString = new String(first14Bytes);
-            if (dataString.length() > 14 && dataString.substring(0, 14).matches(DATE_REGEX_TEXT)) {
-                return RequestFormat.PLAIN_TEXT;
-            } else {
-                return RequestFormat.SWE_BINARY;
-            }
+            return RequestFormat.SWE_BINARY;
         }
     }
 
     /**
      * Determines the timestamp of the data.
+     * The timestamp is read directly from the bytes, without decoding the rest of the data.
      *
      * @param format the format of the request.
-     * @param data   the data received from the data stream.
-     * @return the timestamp of the data.
+     * @param data   the array holding the data received from the data stream.
+     * @param offset the index of the first byte of the data.
+     * @param length the length of the data.
+     * @return the timestamp of the data, or -1 if not found.
      */
-    private long determineTimestamp(RequestFormat format, byte[] data) {
+    private long determineTimestamp(RequestFormat format, byte[] data, int offset, int length) {
         if (format == RequestFormat.JSON || format == RequestFormat.OM_JSON || format == RequestFormat.SWE_JSON) {
-            JSONObject json = new JSONObject(new String(data));
-            String phenomenonTime = json.getString("phenomenonTime");
-            return Instant.parse(phenomenonTime).toEpochMilli();
+            return TimestampScanner.scanJson(data, offset, length);
         } else if (format == RequestFormat.SWE_XML) {
             // Get the timestamp from the first date in the XML
-            String xml = new String(data);
-
-            Pattern pattern = Pattern.compile(DATE_REGEX_XML);
-            Matcher matcher = pattern.matcher(xml);
-
-            if (matcher.find()) {
-                String date = matcher.group(1);
-                return Instant.parse(date).toEpochMilli();
-            }
+            return TimestampScanner.scanXml(data, offset, length);
         } else if (format == RequestFormat.SWE_CSV || format == RequestFormat.PLAIN_TEXT) {
             // Get the timestamp from the first element of the CSV
-            String text = new String(data);
-            String[] parts = text.split(",");
-            return Instant.parse(parts[0]).toEpochMilli();
+            return TimestampScanner.scanCsv(data, offset, length);
         } else if (format == RequestFormat.SWE_BINARY) {
             // Get the timestamp from the first 8 bytes of the binary data
-            byte[] timestampBytes = Arrays.copyOfRange(data, 0, 8);
-            ByteBuffer buffer = ByteBuffer.wrap(timestampBytes);
-            double timestampDouble = buffer.getDouble();
-            return (long) (timestampDouble * 1000);
+            return TimestampScanner.scanBinary(data, offset, length);
         }
 
         return -1;
@@ -200,9 +531,10 @@ public abstract class StreamListener implements StreamEventListener {
     /**
      * Builds the request string for the data stream.
      *
+     * @param timeExtent the time period of the request.
      * @return the request string.
      */
-    private String buildRequestString() {
+    private String buildRequestString(TimeExtent timeExtent) {
         QueryStringBuilder queryString = new QueryStringBuilder();
         if (requestFormat != null) {
             queryString.addParameter("format", requestFormat.getMimeType());
@@ -239,6 +571,44 @@ public abstract class StreamListener implements StreamEventListener {
         }
     }
 
+    /**
+     * When to reconnect after the connection is lost, or null to stay disconnected.
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Sets when to reconnect after the connection is lost without {@link #disconnect()} being called.
+     * After reconnecting to a real-time data stream, the observations received by the node in the meantime
+     * are fetched and delivered, in OM-JSON format, before the live data;
+     * for historical data, the request resumes from the last delivered event.
+     * Events already delivered before the connection was lost are not delivered again;
+     * at the timestamp of the last delivered event, they are told apart by their observation ID,
+     * or, in formats without IDs, the same number of events received at that timestamp are dropped.
+     * Connections shared with other listeners (see {@link MultiplexedStreamConnection}) are not reconnected.
+     *
+     * @param reconnectPolicy the reconnect policy, or null to stay disconnected, the default.
+     */
+    public synchronized void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    /**
+     * The number of reconnections attempted since the connection was lost, or 0 while connected.
+     */
+    public synchronized int getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    /**
+     * The latest timestamp delivered to {@link #onStreamUpdate(StreamEventArgs)},
+     * in milliseconds since the epoch, or {@link Long#MIN_VALUE} if no event has been delivered.
+     */
+    public long getLastDeliveredTimestamp() {
+        return lastDeliveredTimestamp;
+    }
+
     /**
      * The data stream being listened to.
      */
@@ -253,6 +623,13 @@ public abstract class StreamListener implements StreamEventListener {
         return webSocketConnection;
     }
 
+    /**
+     * Whether the WebSocket connection is shared with other listeners, see {@link MultiplexedStreamConnection}.
+     */
+    public boolean isMultiplexed() {
+        return isMultiplexed;
+    }
+
     /**
      * The format of the request.
      * If null, the format will not be specified in the request, i.e., the data will be received in the default format.
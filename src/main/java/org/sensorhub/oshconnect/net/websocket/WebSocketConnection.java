@@ -4,120 +4,173 @@
  */
 package org.sensorhub.oshconnect.net.websocket;
 
-import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WebSocketPartialListener;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
-import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.sensorhub.oshconnect.OSHNode;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import java.net.URI;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 
 /**
  * Class representing an active connection to a WebSocket.
+ * <p>
+ * Binary messages are passed on as slices of the received data, without copying.
+ * If the node has a {@link FrameBufferPool}, messages are assembled from their frames directly into pooled buffers
+ * instead of a new array per message.
+ * <p>
+ * Each connection attempt has its own Jetty listener, so the callbacks of an attempt abandoned by {@link #disconnect()},
+ * e.g., a handshake completing after the disconnection, are ignored and its late session is closed.
  */
-public class WebSocketConnection implements WebSocketListener {
-    private final StreamListener streamListener;
+public class WebSocketConnection {
+    private final OSHNode node;
     private final String request;
-    private WebSocketClient client = null; //new WebSocketClient();
-    private final List<StatusListener> statusListeners = new ArrayList<>();
-    private StreamStatus status = StreamStatus.DISCONNECTED;
-    private SSLContext sslContext = null;
-    private final SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+    private final FrameHandler messageHandler;
+    private final List<StatusListener> statusListeners = new CopyOnWriteArrayList<>();
+    private volatile StreamStatus status = StreamStatus.DISCONNECTED;
+    /**
+     * The client shared by all connections to the node, or null if this connection does not hold a reference to it.
+     */
+    private SharedWebSocketClient sharedClient;
+    private volatile Session session;
+    /**
+     * The Jetty listener of the current connection attempt, or null if disconnected.
+     */
+    private Object activeListener;
+    /**
+     * The handshake of the current connection attempt, until it completes.
+     */
+    private Future<Session> connectFuture;
 
     public WebSocketConnection(StreamListener streamListener, String request) {
-        this.streamListener = streamListener;
+        this(streamListener.getDataStream().getParentSystem().getParentNode(), request, streamListener::onStreamUpdate);
+    }
+
+    /**
+     * @param node           The node to connect to.
+     * @param request        The request, i.e., the endpoint and query string, without the protocol prefix.
+     * @param messageHandler Called with each binary message received.
+     */
+    public WebSocketConnection(OSHNode node, String request, FrameHandler messageHandler) {
+        this.node = node;
         this.request = request;
+        this.messageHandler = messageHandler;
     }
 
-    public void connect() {
-        if (status != StreamStatus.CONNECTED) {
-            OSHNode parentNode = streamListener.getDataStream().getParentSystem().getParentNode();
-            String urlString = parentNode.getWSPrefix() + request;
+    public synchronized void connect() {
+        if (status != StreamStatus.CONNECTED && sharedClient == null) {
+            String urlString = node.getWSPrefix() + request;
             ClientUpgradeRequest clientUpgradeRequest = new ClientUpgradeRequest();
-            clientUpgradeRequest.setHeader("Authorization", "Basic " + parentNode.getAuthorizationToken());
+            if (node.getAuthorizationToken() != null) {
+                clientUpgradeRequest.setHeader("Authorization", "Basic " + node.getAuthorizationToken());
+            }
 
+            SharedWebSocketClient client = node.getWebSocketClient();
             try {
-
-                TrustManager[] trustAllCerts = new TrustManager[]{
-                        new X509TrustManager() {
-                            @Override
-                            public X509Certificate[] getAcceptedIssuers() {
-                                return new X509Certificate[0];
-                            }
-
-                            @Override
-                            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-
-                            @Override
-                            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-                        }
-                };
-
-                if ( null == sslContext ) {
-                    sslContext = SSLContext.getInstance("TLS");
-                    sslContext.init(null, trustAllCerts, new SecureRandom());
-                    SSLContext.setDefault(sslContext);
-
-                    HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-                    HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
-
-                    sslContextFactory.setSslContext(sslContext);
-
-                }
-                sslContextFactory.getSslContext().getClientSessionContext().setSessionTimeout(0);
-                sslContextFactory.getSslContext().getClientSessionContext().setSessionCacheSize(0);
-
-                client = new WebSocketClient(sslContextFactory);
-
-                client.start();
-                client.connect(this, new URI(urlString), clientUpgradeRequest);
+                FrameBufferPool pool = node.getFrameBufferPool();
+                Object listener = pool != null ? new PooledFrameListener(pool) : new SessionListener();
+                activeListener = listener;
+                connectFuture = client.acquire().connect(listener, new URI(urlString), clientUpgradeRequest);
+                sharedClient = client;
             } catch (Exception e) {
+                activeListener = null;
+                client.release();
                 updateStatus(StreamStatus.ERROR);
             }
         }
     }
 
     public void disconnect() {
-        try {
-            client.stop();
-        } catch (Exception e) {
-            updateStatus(StreamStatus.ERROR);
-        }
-    }
+        boolean wasConnected;
+        synchronized (this) {
+            // The callbacks of the abandoned attempt, including the close of its session, are ignored from now on
+            wasConnected = activeListener != null && status == StreamStatus.CONNECTED;
+            activeListener = null;
+            if (connectFuture != null) {
+                // Abort a handshake in progress, so it does not open a session once disconnected
+                connectFuture.cancel(true);
+                connectFuture = null;
+            }
 
-    @Override
-    public void onWebSocketBinary(byte[] bytes, int i, int i1) {
-        streamListener.onStreamUpdate(bytes);
-    }
+            Session openSession = session;
+            session = null;
+            if (openSession != null) {
+                openSession.close();
+            }
+
+            if (sharedClient != null) {
+                sharedClient.release();
+                sharedClient = null;
+            }
+        }
 
-    @Override
-    public void onWebSocketText(String s) {
-        // Not implemented
+        if (wasConnected) {
+            updateStatus(StreamStatus.DISCONNECTED);
+        }
     }
 
-    @Override
-    public void onWebSocketClose(int i, String s) {
-        updateStatus(StreamStatus.DISCONNECTED);
+    /**
+     * Whether a Jetty listener belongs to the current connection attempt.
+     */
+    private synchronized boolean isActive(Object listener) {
+        return listener == activeListener;
     }
 
-    @Override
-    public void onWebSocketConnect(Session session) {
+    /**
+     * Called when the handshake of a connection attempt completes.
+     * The session of an attempt abandoned meanwhile is closed, so it does not keep delivering messages.
+     */
+    private void onSessionOpened(Object listener, Session openedSession) {
+        synchronized (this) {
+            if (listener != activeListener) {
+                openedSession.close();
+                return;
+            }
+            connectFuture = null;
+            session = openedSession;
+        }
         updateStatus(StreamStatus.CONNECTED);
     }
 
-    @Override
-    public void onWebSocketError(Throwable throwable) {
-        updateStatus(StreamStatus.ERROR);
+    /**
+     * Receives the complete binary messages of a connection attempt.
+     */
+    private class SessionListener implements WebSocketListener {
+        @Override
+        public void onWebSocketBinary(byte[] bytes, int offset, int length) {
+            if (isActive(this)) {
+                messageHandler.onFrame(ByteBuffer.wrap(bytes, offset, length).slice(), null);
+            }
+        }
+
+        @Override
+        public void onWebSocketText(String message) {
+            // Not implemented
+        }
+
+        @Override
+        public void onWebSocketClose(int statusCode, String reason) {
+            if (isActive(this)) {
+                updateStatus(StreamStatus.DISCONNECTED);
+            }
+        }
+
+        @Override
+        public void onWebSocketConnect(Session session) {
+            onSessionOpened(this, session);
+        }
+
+        @Override
+        public void onWebSocketError(Throwable cause) {
+            if (isActive(this)) {
+                updateStatus(StreamStatus.ERROR);
+            }
+        }
     }
 
     public void addStatusListener(StatusListener listener) {
@@ -138,4 +191,82 @@ public class WebSocketConnection implements WebSocketListener {
     public StreamStatus getStatus() {
         return status;
     }
+
+    /**
+     * The request, i.e., the endpoint and query string, without the protocol prefix.
+     */
+    public String getRequest() {
+        return request;
+    }
+
+    /**
+     * Receives the frames of each binary message and copies them into a buffer taken from a pool,
+     * so the complete message never needs to be assembled into a new array.
+     */
+    private class PooledFrameListener implements WebSocketPartialListener {
+        private final FrameBufferPool pool;
+        private ByteBuffer message;
+
+        PooledFrameListener(FrameBufferPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void onWebSocketPartialBinary(ByteBuffer payload, boolean fin) {
+            if (message == null) {
+                message = pool.acquire(payload.remaining());
+            } else if (message.remaining() < payload.remaining()) {
+                ByteBuffer larger = pool.acquire(message.position() + payload.remaining());
+                message.flip();
+                larger.put(message);
+                pool.release(message);
+                message = larger;
+            }
+            // The payload belongs to Jetty and is only valid during this call
+            message.put(payload);
+
+            if (fin) {
+                ByteBuffer complete = message.flip();
+                message = null;
+                if (isActive(this)) {
+                    messageHandler.onFrame(complete, pool);
+                } else {
+                    pool.release(complete);
+                }
+            }
+        }
+
+        @Override
+        public void onWebSocketPartialText(String payload, boolean fin) {
+            // Not implemented
+        }
+
+        @Override
+        public void onWebSocketClose(int statusCode, String reason) {
+            discardMessage();
+            if (isActive(this)) {
+                updateStatus(StreamStatus.DISCONNECTED);
+            }
+        }
+
+        @Override
+        public void onWebSocketConnect(Session session) {
+            onSessionOpened(this, session);
+        }
+
+        @Override
+        public void onWebSocketError(Throwable cause) {
+            discardMessage();
+            if (isActive(this)) {
+                updateStatus(StreamStatus.ERROR);
+            }
+        }
+
+        private void discardMessage() {
+            if (message != null) {
+                pool.release(message);
+                message = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package org.sensorhub.oshconnect.time;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Loads the archived events of a time range for a {@link PlaybackEngine}.
+ *
+ * @param <T> The type of the event.
+ */
+@FunctionalInterface
+public interface ArchiveLoader<T> {
+    /**
+     * Load the events with a timestamp in a time range.
+     * Called on a background thread, so it may block, e.g., while requesting pages of observations from a node.
+     * The events may be returned in any order; events outside the range are ignored.
+     *
+     * @param begin The beginning of the range, in milliseconds since the epoch, inclusive.
+     * @param end   The end of the range, in milliseconds since the epoch, exclusive.
+     * @return The events in the range.
+     * @throws IOException if the events cannot be loaded. The range is requested again later.
+     */
+    List<TimeSynchronizerEvent<T>> load(long begin, long end) throws IOException;
+}
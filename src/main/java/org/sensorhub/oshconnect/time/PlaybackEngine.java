@@ -0,0 +1,613 @@
+package org.sensorhub.oshconnect.time;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Plays archived events back on the client, in timestamp order, against a virtual clock.
+ * <p>
+ * The events are loaded by an {@link ArchiveLoader}, one range at a time, into a read-ahead buffer
+ * extending up to {@link #getReadAheadMS()} ahead of the playback position in the direction of play.
+ * Events up to the same duration behind the position are kept,
+ * so seeking within the buffered range, pausing, resuming, reversing, or changing the speed
+ * only moves the virtual clock, without loading the events again.
+ * Seeking outside the buffered range discards the buffer and loads the events around the new position.
+ * When the position reaches the end of the buffered range before the next range is loaded,
+ * the clock is held and the state is {@link PlaybackState#BUFFERING} until the range arrives.
+ * <p>
+ * The clock is advanced by a {@link TimingService}, shared by all the engines and synchronizers of an OSHConnect instance,
+ * which only picks out the events that are due: they are passed to the consumer on a delivery executor,
+ * never on the timer thread, so a slow consumer does not delay the other engines and synchronizers.
+ * Times are in milliseconds since the epoch.
+ *
+ * @param <T> The type of the event.
+ */
+public class PlaybackEngine<T> implements AutoCloseable {
+    /**
+     * The default duration of archive loaded ahead of the playback position, in milliseconds.
+     */
+    public static final long DEFAULT_READ_AHEAD_MS = 60_000;
+    /**
+     * The period at which the clock is advanced and the due events are served, in milliseconds.
+     */
+    private static final long TICK_MS = 20;
+    /**
+     * The delay before loading a range again after the loader failed, in milliseconds.
+     */
+    private static final long LOAD_RETRY_MS = 1000;
+
+    private final ArchiveLoader<T> loader;
+    private final Consumer<T> eventConsumer;
+    private final Executor loadExecutor;
+    /**
+     * Runs the consumer on the events served by a tick, one batch at a time, in order.
+     */
+    private final Executor deliveryExecutor;
+    /**
+     * The buffered events by timestamp, all within the buffered range.
+     * This object, like every field below, is only accessed while holding the lock of this object.
+     */
+    private final NavigableMap<Long, List<T>> buffer = new TreeMap<>();
+    private int bufferedEventCount;
+    /**
+     * The range of timestamps loaded into the buffer, beginning inclusive and end exclusive.
+     */
+    private long bufferedBegin;
+    private long bufferedEnd;
+    private TimingService timingService;
+    private boolean hasTimeRange;
+    private long beginTime;
+    private long endTime;
+    private long readAheadMS = DEFAULT_READ_AHEAD_MS;
+    /**
+     * The playback speed; negative when playing in reverse.
+     */
+    private double speed = 1;
+    private boolean playing;
+    /**
+     * Whether the clock is held until the events at the playback position are loaded.
+     */
+    private boolean buffering;
+    /**
+     * The position of the virtual clock at {@link #anchorWallTime}, from which the current position is computed.
+     */
+    private long anchorTime;
+    private long anchorWallTime;
+    /**
+     * The timestamp up to which events have been served in the direction of play,
+     * including the events at this timestamp unless {@link #positionInclusive} is true.
+     */
+    private long servedPosition;
+    private boolean positionInclusive;
+    private ScheduledFuture<?> ticker;
+    private boolean loading;
+    /**
+     * Incremented when the buffer is discarded or the time range changes,
+     * so the ranges being loaded for the previous buffer are ignored.
+     */
+    private int loadGeneration;
+    private long nextLoadTime;
+    private boolean closed;
+
+    /**
+     * @param loader        Loads the archived events of a range, on the load executor.
+     * @param eventConsumer Called with each event when the virtual clock reaches its timestamp.
+     * @param loadExecutor  The executor running the loader.
+     */
+    public PlaybackEngine(ArchiveLoader<T> loader, Consumer<T> eventConsumer, Executor loadExecutor) {
+        this(loader, eventConsumer, loadExecutor, SharedTimingService.getDefault());
+    }
+
+    /**
+     * @param loader        Loads the archived events of a range, on the load executor.
+     * @param eventConsumer Called with each event when the virtual clock reaches its timestamp.
+     * @param loadExecutor  The executor running the loader.
+     * @param timingService The timing service advancing the clock.
+     */
+    public PlaybackEngine(ArchiveLoader<T> loader, Consumer<T> eventConsumer, Executor loadExecutor, TimingService timingService) {
+        this(loader, eventConsumer, loadExecutor, timingService, null);
+    }
+
+    /**
+     * @param loader           Loads the archived events of a range, on the load executor.
+     * @param eventConsumer    Called with each event when the virtual clock reaches its timestamp.
+     * @param loadExecutor     The executor running the loader.
+     * @param timingService    The timing service advancing the clock.
+     * @param deliveryExecutor The executor passing the events to the consumer.
+     *                         It must run its tasks one at a time, in the order they were submitted.
+     *                         If null, the events are passed on a thread of a shared pool, one engine at a time.
+     */
+    public PlaybackEngine(ArchiveLoader<T> loader, Consumer<T> eventConsumer, Executor loadExecutor, TimingService timingService,
+                          Executor deliveryExecutor) {
+        this.loader = loader;
+        this.eventConsumer = eventConsumer;
+        this.loadExecutor = loadExecutor;
+        this.timingService = timingService != null ? timingService : SharedTimingService.getDefault();
+        this.deliveryExecutor = deliveryExecutor != null ? deliveryExecutor : new SerialExecutor();
+    }
+
+    /**
+     * Sets the range of the archive to play.
+     * The first time, the playback position is set to the beginning of the range;
+     * afterward, the position is kept within the new range and the events already buffered within it are kept.
+     *
+     * @param begin The beginning of the range, inclusive.
+     * @param end   The end of the range, inclusive.
+     * @throws IllegalArgumentException if end is before begin.
+     */
+    public synchronized void setTimeRange(long begin, long end) {
+        if (end < begin) {
+            throw new IllegalArgumentException("End of the time range cannot be before its beginning.");
+        }
+        ensureNotClosed();
+
+        long now = timingService.currentTimeMillis();
+        long position = hasTimeRange ? getCurrentTime(now) : begin;
+        long newPosition = Math.max(begin, Math.min(end, position));
+        boolean firstRange = !hasTimeRange;
+        hasTimeRange = true;
+        beginTime = begin;
+        endTime = end;
+        // Ranges being loaded may extend beyond the new time range
+        loadGeneration++;
+        loading = false;
+        discardBefore(begin);
+        discardAfter(end);
+
+        if (firstRange || newPosition != position || !isBuffered(newPosition)) {
+            seekTo(newPosition);
+        } else {
+            anchorTime = newPosition;
+            anchorWallTime = now;
+            requestLoad(newPosition);
+        }
+    }
+
+    /**
+     * Starts or resumes playing from the current position.
+     * If the position is at the end of the range in the direction of play, playing starts over from the other end.
+     * Has no effect if already playing.
+     *
+     * @throws IllegalStateException if the time range has not been set.
+     */
+    public synchronized void play() {
+        ensureNotClosed();
+        if (!hasTimeRange) {
+            throw new IllegalStateException("Time range has not been set.");
+        }
+        if (playing) return;
+
+        if (speed > 0 && anchorTime >= endTime) {
+            seekTo(beginTime);
+        } else if (speed < 0 && anchorTime <= beginTime) {
+            seekTo(endTime);
+        }
+        playing = true;
+        anchorWallTime = timingService.currentTimeMillis();
+        ticker = timingService.scheduleAtFixedRate(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+        requestLoad(anchorTime);
+    }
+
+    /**
+     * Pauses playing, keeping the current position and the buffer.
+     * Has no effect if not playing.
+     */
+    public synchronized void pause() {
+        if (!playing) return;
+
+        anchorTime = getCurrentTime(timingService.currentTimeMillis());
+        playing = false;
+        stopTicker();
+    }
+
+    /**
+     * Moves the playback position, keeping the state.
+     * The move is immediate if the position is buffered; otherwise, the buffer is discarded and
+     * the events around the position are loaded.
+     * The events at the new position are served next.
+     *
+     * @param time The new position, kept within the time range.
+     * @throws IllegalStateException if the time range has not been set.
+     */
+    public synchronized void seek(long time) {
+        ensureNotClosed();
+        if (!hasTimeRange) {
+            throw new IllegalStateException("Time range has not been set.");
+        }
+        seekTo(Math.max(beginTime, Math.min(endTime, time)));
+    }
+
+    private void seekTo(long time) {
+        anchorTime = time;
+        anchorWallTime = timingService.currentTimeMillis();
+        servedPosition = time;
+        positionInclusive = true;
+
+        if (!isBuffered(time)) {
+            clearBuffer();
+            // Start from the position, including it when loading backward
+            bufferedBegin = speed > 0 ? time : time + 1;
+            bufferedEnd = bufferedBegin;
+            buffering = true;
+        } else {
+            buffering = false;
+        }
+        requestLoad(time);
+    }
+
+    /**
+     * The playback speed.
+     * 1.0 plays in real time, 0.1 is 10 times slower, 10.0 is 10 times faster;
+     * negative values play in reverse.
+     */
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the playback speed, from the current position.
+     * 1.0 plays in real time, 0.1 is 10 times slower, 10.0 is 10 times faster;
+     * negative values play in reverse.
+     * Only the virtual clock is changed: the buffered events are kept.
+     *
+     * @param speed The playback speed.
+     * @throws IllegalArgumentException if speed is zero or not finite. Use {@link #pause()} to stop the clock.
+     */
+    public synchronized void setSpeed(double speed) {
+        if (speed == 0 || !Double.isFinite(speed)) {
+            throw new IllegalArgumentException("Speed must be a finite, non-zero value.");
+        }
+
+        long now = timingService.currentTimeMillis();
+        anchorTime = getCurrentTime(now);
+        anchorWallTime = now;
+        boolean reversed = (speed > 0) != (this.speed > 0);
+        this.speed = speed;
+        if (reversed && hasTimeRange) {
+            // The events missing in the new direction are loaded before the clock moves on
+            if (bufferedBegin == bufferedEnd) {
+                // Nothing is buffered yet; start again from the position, in the new direction
+                clearBuffer();
+                bufferedBegin = speed > 0 ? anchorTime : anchorTime + 1;
+                bufferedEnd = bufferedBegin;
+                buffering = true;
+            } else {
+                buffering = false;
+            }
+            requestLoad(anchorTime);
+        }
+    }
+
+    /**
+     * The current playback position.
+     */
+    public synchronized long getCurrentTime() {
+        return getCurrentTime(timingService.currentTimeMillis());
+    }
+
+    private long getCurrentTime(long now) {
+        if (!playing || buffering) return anchorTime;
+
+        long time = anchorTime + (long) ((now - anchorWallTime) * speed);
+        return Math.max(beginTime, Math.min(endTime, time));
+    }
+
+    /**
+     * The state of the playback.
+     */
+    public synchronized PlaybackState getState() {
+        if (!playing) {
+            return PlaybackState.STOPPED;
+        } else if (buffering) {
+            return PlaybackState.BUFFERING;
+        } else if (speed < 0) {
+            return PlaybackState.REWINDING;
+        } else if (speed > 1) {
+            return PlaybackState.FAST_FORWARDING;
+        }
+        return PlaybackState.PLAYING;
+    }
+
+    /**
+     * Whether the clock is running, including while waiting for the buffer.
+     */
+    public synchronized boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Advance the clock and serve the events passed since the last tick.
+     */
+    private void tick() {
+        List<T> readyEvents = new ArrayList<>();
+        synchronized (this) {
+            if (!playing) return;
+
+            long now = timingService.currentTimeMillis();
+            long time = getCurrentTime(now);
+            if (speed > 0) {
+                if (time >= bufferedEnd && bufferedEnd <= endTime) {
+                    time = holdClock(bufferedEnd - 1, now);
+                }
+                // Only the loaded events can be served, even if the clock is held past them
+                long limit = Math.min(time, bufferedEnd - 1);
+                if (limit > servedPosition || (limit == servedPosition && positionInclusive)) {
+                    collect(buffer.subMap(servedPosition, positionInclusive, limit, true), readyEvents);
+                    servedPosition = limit;
+                    positionInclusive = false;
+                }
+                discardBefore(time - readAheadMS);
+            } else {
+                if (time < bufferedBegin && bufferedBegin > beginTime) {
+                    time = holdClock(bufferedBegin, now);
+                }
+                long limit = Math.max(time, bufferedBegin);
+                if (limit < servedPosition || (limit == servedPosition && positionInclusive)) {
+                    collect(buffer.subMap(limit, true, servedPosition, positionInclusive).descendingMap(), readyEvents);
+                    servedPosition = limit;
+                    positionInclusive = false;
+                }
+                discardAfter(time + readAheadMS);
+            }
+
+            if (!buffering && (speed > 0 ? time >= endTime : time <= beginTime)) {
+                anchorTime = time;
+                playing = false;
+                stopTicker();
+            } else {
+                requestLoad(time);
+            }
+        }
+
+        if (readyEvents.isEmpty()) return;
+        try {
+            deliveryExecutor.execute(() -> deliver(readyEvents));
+        } catch (RejectedExecutionException e) {
+            // The delivery executor was shut down along with the consumer
+        }
+    }
+
+    private void deliver(List<T> events) {
+        for (T event : events) {
+            try {
+                eventConsumer.accept(event);
+            } catch (RuntimeException e) {
+                // A failing consumer must not prevent the next events from being served
+            }
+        }
+    }
+
+    /**
+     * Hold the clock at the edge of the buffer until the next range is loaded.
+     *
+     * @return The position the clock is held at.
+     */
+    private long holdClock(long time, long now) {
+        if (!buffering) {
+            buffering = true;
+            anchorTime = time;
+            anchorWallTime = now;
+        }
+        return anchorTime;
+    }
+
+    private void collect(Map<Long, List<T>> events, List<T> readyEvents) {
+        for (List<T> sameTimeEvents : events.values()) {
+            readyEvents.addAll(sameTimeEvents);
+        }
+    }
+
+    /**
+     * Load the next range in the direction of play, if the buffer does not extend far enough ahead of the position
+     * and no range is being loaded.
+     */
+    private void requestLoad(long time) {
+        if (closed || loading || timingService.currentTimeMillis() < nextLoadTime) return;
+
+        long loadBegin;
+        long loadEnd;
+        if (speed > 0) {
+            if (bufferedEnd > endTime || bufferedEnd - time > readAheadMS) return;
+            loadBegin = bufferedEnd;
+            loadEnd = Math.min(endTime + 1, bufferedEnd + readAheadMS);
+        } else {
+            if (bufferedBegin <= beginTime || time - bufferedBegin > readAheadMS) return;
+            loadBegin = Math.max(beginTime, bufferedBegin - readAheadMS);
+            loadEnd = bufferedBegin;
+        }
+
+        loading = true;
+        int generation = loadGeneration;
+        CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return loader.load(loadBegin, loadEnd);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, loadExecutor)
+                .whenComplete((events, e) -> onRangeLoaded(generation, loadBegin, loadEnd, events, e));
+    }
+
+    private synchronized void onRangeLoaded(int generation, long begin, long end, List<TimeSynchronizerEvent<T>> events, Throwable error) {
+        if (generation != loadGeneration || closed) return;
+
+        loading = false;
+        if (error != null || events == null) {
+            nextLoadTime = timingService.currentTimeMillis() + LOAD_RETRY_MS;
+            return;
+        }
+
+        for (TimeSynchronizerEvent<T> event : events) {
+            long timestamp = event.getTimestamp();
+            if (timestamp < begin || timestamp >= end) continue;
+
+            buffer.computeIfAbsent(timestamp, t -> new ArrayList<>(1)).add(event.getEvent());
+            bufferedEventCount++;
+        }
+        bufferedBegin = Math.min(bufferedBegin, begin);
+        bufferedEnd = Math.max(bufferedEnd, end);
+
+        if (buffering) {
+            buffering = false;
+            anchorWallTime = timingService.currentTimeMillis();
+        }
+        requestLoad(getCurrentTime(timingService.currentTimeMillis()));
+    }
+
+    /**
+     * Remove the buffered events before a time.
+     */
+    private void discardBefore(long time) {
+        if (bufferedBegin >= time) return;
+
+        removeAll(buffer.headMap(time, false));
+        bufferedBegin = time;
+        bufferedEnd = Math.max(bufferedEnd, time);
+    }
+
+    /**
+     * Remove the buffered events after a time.
+     */
+    private void discardAfter(long time) {
+        if (bufferedEnd <= time + 1) return;
+
+        removeAll(buffer.tailMap(time, false));
+        bufferedEnd = time + 1;
+        bufferedBegin = Math.min(bufferedBegin, time + 1);
+    }
+
+    private void removeAll(Map<Long, List<T>> events) {
+        for (List<T> sameTimeEvents : events.values()) {
+            bufferedEventCount -= sameTimeEvents.size();
+        }
+        events.clear();
+    }
+
+    private void clearBuffer() {
+        buffer.clear();
+        bufferedEventCount = 0;
+        loadGeneration++;
+        loading = false;
+        nextLoadTime = 0;
+    }
+
+    /**
+     * Whether the events at a time are in the buffer.
+     *
+     * @param time The time.
+     */
+    public synchronized boolean isBuffered(long time) {
+        return time >= bufferedBegin && time < bufferedEnd;
+    }
+
+    /**
+     * The number of events currently buffered.
+     */
+    public synchronized int getBufferedEventCount() {
+        return bufferedEventCount;
+    }
+
+    /**
+     * The duration of archive loaded ahead of the playback position, and kept behind it, in milliseconds.
+     */
+    public synchronized long getReadAheadMS() {
+        return readAheadMS;
+    }
+
+    /**
+     * Sets the duration of archive loaded ahead of the playback position, and kept behind it, in milliseconds.
+     * Each range requested from the loader spans this duration.
+     * For best results, the loader should return a range in less time than the range takes to play.
+     *
+     * @param readAheadMS The duration in milliseconds.
+     * @throws IllegalArgumentException if readAheadMS is less than or equal to 0.
+     */
+    public synchronized void setReadAheadMS(long readAheadMS) {
+        if (readAheadMS <= 0) {
+            throw new IllegalArgumentException("Read-ahead must be greater than 0.");
+        }
+        this.readAheadMS = readAheadMS;
+    }
+
+    /**
+     * The beginning of the time range, inclusive.
+     */
+    public synchronized long getBeginTime() {
+        return beginTime;
+    }
+
+    /**
+     * The end of the time range, inclusive.
+     */
+    public synchronized long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * The timing service advancing the clock.
+     */
+    public synchronized TimingService getTimingService() {
+        return timingService;
+    }
+
+    /**
+     * Sets the timing service advancing the clock.
+     * The clock keeps its position.
+     *
+     * @param timingService The timing service, or null to use {@link SharedTimingService#getDefault()}.
+     */
+    public synchronized void setTimingService(TimingService timingService) {
+        long position = getCurrentTime(this.timingService.currentTimeMillis());
+        this.timingService = timingService != null ? timingService : SharedTimingService.getDefault();
+        anchorTime = position;
+        anchorWallTime = this.timingService.currentTimeMillis();
+        nextLoadTime = 0;
+        if (playing) {
+            stopTicker();
+            ticker = this.timingService.scheduleAtFixedRate(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopTicker() {
+        if (ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
+        }
+    }
+
+    private void ensureNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Playback engine has been closed.");
+        }
+    }
+
+    /**
+     * Whether the engine has been closed.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops playing and discards the buffer.
+     * The engine can no longer be used after this method is called.
+     */
+    @Override
+    public synchronized void close() {
+        playing = false;
+        stopTicker();
+        clearBuffer();
+        closed = true;
+    }
+}
@@ -1,9 +1,27 @@
 package org.sensorhub.oshconnect.time;
 
+/**
+ * The state of a {@link PlaybackEngine}.
+ */
 public enum PlaybackState {
+    /**
+     * Playing forward at up to real-time speed.
+     */
     PLAYING,
+    /**
+     * Paused, or finished playing.
+     */
     STOPPED,
+    /**
+     * Waiting for the events at the playback position to be loaded.
+     */
     BUFFERING,
+    /**
+     * Playing forward faster than real time.
+     */
     FAST_FORWARDING,
+    /**
+     * Playing in reverse.
+     */
     REWINDING,
 }
@@ -0,0 +1,58 @@
+package org.sensorhub.oshconnect.time;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a pool of daemon threads shared by all the instances.
+ * <p>
+ * Used to pass events to the consumers of time synchronizers and playback engines off the timer thread,
+ * so a slow consumer only delays its own events, while keeping them in order.
+ * <p>
+ * This class is thread-safe.
+ */
+class SerialExecutor implements Executor {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService SHARED_POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "oshconnect-delivery-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+            SHARED_POOL.execute(this::runTasks);
+        }
+    }
+
+    private void runTasks() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // A failing task must not prevent the next tasks from running
+                }
+            }
+        } finally {
+            running.set(false);
+            // Tasks submitted after the queue was found empty
+            schedule();
+        }
+    }
+}
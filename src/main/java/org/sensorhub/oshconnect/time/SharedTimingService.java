@@ -0,0 +1,78 @@
+package org.sensorhub.oshconnect.time;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timing service running all its tasks on a single daemon timer thread,
+ * which sleeps until the earliest task is due.
+ * <p>
+ * The thread is started when the first task is scheduled.
+ * Once {@link #shutdown() shut down}, the service cannot be reused: tasks scheduled afterwards are rejected.
+ * <p>
+ * This class is thread-safe.
+ */
+public class SharedTimingService implements TimingService {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final SharedTimingService DEFAULT = new SharedTimingService();
+
+    private ScheduledThreadPoolExecutor executor;
+    private boolean shutdown;
+
+    /**
+     * The timing service used by time synchronizers and stream handlers not associated with an OSHConnect instance.
+     */
+    public static SharedTimingService getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return getExecutor().schedule(task, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return getExecutor().scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    /**
+     * Stop the timer thread, dropping the scheduled tasks.
+     * The service cannot be used afterwards: scheduling a task throws a {@link RejectedExecutionException},
+     * so the synchronizers and stream handlers using it must be given another timing service.
+     * The {@link #getDefault() default} service is never shut down by the library.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * The number of tasks waiting to run.
+     */
+    public synchronized int getScheduledTaskCount() {
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Timing service has been shut down.");
+        }
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "oshconnect-timer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Synchronizers cancel their wakeup whenever an earlier one is needed
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+}
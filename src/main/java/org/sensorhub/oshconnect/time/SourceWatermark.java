@@ -0,0 +1,87 @@
+package org.sensorhub.oshconnect.time;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of the event time of a single source of events, such as a data stream.
+ * <p>
+ * The watermark is the latest timestamp received from the source, minus the lateness observed on the source,
+ * i.e., how far behind the latest timestamp an event of the source has recently arrived.
+ * The lateness follows increases immediately and decreases gradually.
+ * A source registered before its first event has a watermark of {@link Long#MIN_VALUE},
+ * which holds back the events of the other sources until the buffer time.
+ */
+final class SourceWatermark {
+    /**
+     * The share of the difference between a sample and the lateness estimate applied when the lateness decreases.
+     */
+    private static final int LATENESS_DECAY = 16;
+
+    private final AtomicLong maxTimestamp = new AtomicLong(Long.MIN_VALUE);
+    private volatile long latenessMS;
+    private volatile long lastArrivalTime;
+
+    /**
+     * @param registrationTime The time the source was registered, which counts as its last arrival until its first event.
+     */
+    SourceWatermark(long registrationTime) {
+        this.lastArrivalTime = registrationTime;
+    }
+
+    /**
+     * Register the source again, e.g., when its stream is reconnected.
+     * Has no effect once an event has been received.
+     *
+     * @param registrationTime The time the source was registered.
+     */
+    void register(long registrationTime) {
+        if (maxTimestamp.get() == Long.MIN_VALUE) {
+            lastArrivalTime = registrationTime;
+        }
+    }
+
+    /**
+     * Record an event of the source.
+     *
+     * @param timestamp   The timestamp of the event.
+     * @param arrivalTime The time the event was received.
+     * @return true if the watermark advanced.
+     */
+    boolean update(long timestamp, long arrivalTime) {
+        lastArrivalTime = arrivalTime;
+        long previousMax = maxTimestamp.getAndAccumulate(timestamp, Math::max);
+        if (previousMax == Long.MIN_VALUE) return true;
+
+        long sample = Math.max(0, previousMax - timestamp);
+        long lateness = latenessMS;
+        if (sample >= lateness) {
+            latenessMS = sample;
+        } else {
+            latenessMS = lateness - (lateness - sample + LATENESS_DECAY - 1) / LATENESS_DECAY;
+        }
+        return timestamp > previousMax;
+    }
+
+    /**
+     * The timestamp up to which all the events of the source are expected to have been received,
+     * or {@link Long#MIN_VALUE} if no event has been received.
+     */
+    long getWatermark() {
+        long max = maxTimestamp.get();
+        return max == Long.MIN_VALUE ? Long.MIN_VALUE : max - latenessMS;
+    }
+
+    /**
+     * How far behind the latest timestamp the events of the source arrive, in milliseconds.
+     */
+    long getLatenessMS() {
+        return latenessMS;
+    }
+
+    /**
+     * The time the last event of the source was received.
+     */
+    long getLastArrivalTime() {
+        return lastArrivalTime;
+    }
+}
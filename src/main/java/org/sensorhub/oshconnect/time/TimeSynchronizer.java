@@ -3,9 +3,17 @@ package org.sensorhub.oshconnect.time;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
@@ -19,20 +27,66 @@ import java.util.function.Consumer;
  * making it possible to switch between real-time and synchronized processing without separate code paths.
  * Add an event using the {@link #addEvent(long, Object)} method, and it will be either buffered and processed later
  * or fired immediately depending on whether time synchronization is enabled.
+ * <p>
+ * Buffered events are kept in a heap ordered by timestamp,
+ * and the buffer is only processed when its earliest event is due, rather than at a fixed interval.
+ * Events can be added from any number of threads: they are appended to a lock-free queue,
+ * which is moved into the heap by the thread processing the buffer.
+ * The buffer is processed by a {@link TimingService}, shared by all the synchronizers of an OSHConnect instance,
+ * which only picks out the events that are due: they are passed to the consumer on a delivery executor,
+ * never on the timer thread, so a slow consumer does not delay the other synchronizers.
+ * <p>
+ * With watermarks enabled (see {@link #setWatermarkEnabled(boolean)}), events are added with their source,
+ * using {@link #addEvent(Object, long, Object)}, and each source keeps a watermark:
+ * its latest timestamp minus the lateness measured on its events.
+ * An event is served as soon as the watermarks of all the active sources have passed it,
+ * and at the latest after the buffer time, instead of always waiting for the buffer time.
+ * Register the sources with {@link #addSource(Object)} before their first event,
+ * so the events of the first source to deliver are not served before the other sources had a chance to catch up.
  *
  * @param <T> The type of the event.
  */
 public class TimeSynchronizer<T> {
-    private static final int TIME_BETWEEN_UPDATES_MS = 10;
-    private final List<TimeSynchronizerEvent<T>> receivedEvents = new ArrayList<>();
+    private static final Comparator<TimeSynchronizerEvent<?>> EVENT_ORDER = Comparator
+            .<TimeSynchronizerEvent<?>>comparingLong(TimeSynchronizerEvent::getTimestamp)
+            .thenComparingLong(TimeSynchronizerEvent::getSequence);
+    /**
+     * The events added since the buffer was last processed.
+     * Producers only append to this queue, without locking; the events are moved to {@link #receivedEvents}
+     * by the thread processing the buffer.
+     */
+    private final Queue<TimeSynchronizerEvent<T>> incomingEvents = new ConcurrentLinkedQueue<>();
+    /**
+     * The buffered events, ordered by timestamp. Only accessed while holding the lock of this object.
+     */
+    private final PriorityQueue<TimeSynchronizerEvent<T>> receivedEvents = new PriorityQueue<>(EVENT_ORDER);
     private final Consumer<T> eventConsumer;
-    private ScheduledExecutorService executorService;
-    private boolean timeSynchronizationEnabled;
+    /**
+     * Runs the consumer on the events ready to be served, one batch at a time, in order.
+     */
+    private final Executor deliveryExecutor;
+    private volatile TimingService timingService;
+    /**
+     * The latest processing of the buffer scheduled.
+     */
+    private final AtomicReference<ScheduledFuture<?>> scheduledProcessing = new AtomicReference<>();
+    /**
+     * The earliest time, in milliseconds since the epoch, at which the buffer is scheduled to be processed,
+     * or {@link Long#MAX_VALUE} if it is not scheduled.
+     */
+    private final AtomicLong nextProcessingTime = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong eventCount = new AtomicLong();
+    /**
+     * The watermark of each source, when watermarks are enabled.
+     */
+    private final Map<Object, SourceWatermark> watermarks = new ConcurrentHashMap<>();
+    private volatile boolean watermarkEnabled;
+    private volatile boolean timeSynchronizationEnabled;
     private long lastUpdateTimestamp;
     /**
      * The time in milliseconds to buffer events for time synchronization.
      */
-    private int bufferTimeMS = 1000;
+    private volatile int bufferTimeMS = 1000;
     /**
      * When time synchronization is enabled, events with a timestamp outside the buffer time will be discarded.
      * True by default.
@@ -49,20 +103,44 @@ public class TimeSynchronizer<T> {
      *                      either immediately if time synchronization is disabled or after time synchronization.
      */
     public TimeSynchronizer(Consumer<T> eventConsumer) {
+        this(eventConsumer, SharedTimingService.getDefault());
+    }
+
+    /**
+     * @param eventConsumer A Consumer that processes events.
+     *                      This is called when an event is ready to be processed,
+     *                      either immediately if time synchronization is disabled or after time synchronization.
+     * @param timingService The timing service processing the buffer.
+     */
+    public TimeSynchronizer(Consumer<T> eventConsumer, TimingService timingService) {
+        this(eventConsumer, timingService, null);
+    }
+
+    /**
+     * @param eventConsumer    A Consumer that processes events.
+     *                         This is called when an event is ready to be processed,
+     *                         either immediately if time synchronization is disabled or after time synchronization.
+     * @param timingService    The timing service processing the buffer.
+     * @param deliveryExecutor The executor passing the synchronized events to the consumer.
+     *                         It must run its tasks one at a time, in the order they were submitted.
+     *                         If null, the events are passed on a thread of a shared pool, one synchronizer at a time.
+     */
+    public TimeSynchronizer(Consumer<T> eventConsumer, TimingService timingService, Executor deliveryExecutor) {
         this.eventConsumer = eventConsumer;
+        this.timingService = timingService != null ? timingService : SharedTimingService.getDefault();
+        this.deliveryExecutor = deliveryExecutor != null ? deliveryExecutor : new SerialExecutor();
     }
 
     /**
      * Enables time synchronization.
      * Events will be buffered for the specified buffer time.
+     * Has no effect if time synchronization is already enabled.
      */
-    public void enableTimeSynchronization() {
-        this.timeSynchronizationEnabled = true;
+    public synchronized void enableTimeSynchronization() {
+        if (timeSynchronizationEnabled) return;
 
-        if (executorService == null || executorService.isShutdown()) {
-            executorService = Executors.newSingleThreadScheduledExecutor();
-        }
-        executorService.scheduleWithFixedDelay(this::processBufferedEvents, 0, TIME_BETWEEN_UPDATES_MS, TimeUnit.MILLISECONDS);
+        nextProcessingTime.set(Long.MAX_VALUE);
+        this.timeSynchronizationEnabled = true;
     }
 
     /**
@@ -70,28 +148,100 @@ public class TimeSynchronizer<T> {
      * Further events will be processed immediately.
      */
     public void disableTimeSynchronization() {
-        this.timeSynchronizationEnabled = false;
+        List<T> remainingEvents;
+        synchronized (this) {
+            this.timeSynchronizationEnabled = false;
 
-        if (executorService != null) {
-            executorService.shutdown();
+            ScheduledFuture<?> processing = scheduledProcessing.getAndSet(null);
+            if (processing != null) {
+                processing.cancel(false);
+            }
+
+            remainingEvents = clearBuffer();
         }
+        remainingEvents.forEach(eventConsumer);
+    }
 
-        clearBuffer();
+    /**
+     * Whether time synchronization is enabled.
+     */
+    public boolean isTimeSynchronizationEnabled() {
+        return timeSynchronizationEnabled;
     }
 
     /**
      * Adds an event to the buffer.
      * If time synchronization is disabled, the event is processed immediately.
+     * This method can be called from any number of threads concurrently, and never blocks.
      *
      * @param timestamp The timestamp of the event.
      * @param args      The event arguments to pass to the consumer.
      */
     public void addEvent(long timestamp, T args) {
+        addEvent(null, timestamp, args);
+    }
+
+    /**
+     * Adds an event received from a source to the buffer.
+     * If time synchronization is disabled, the event is processed immediately.
+     * If watermarks are enabled, the event advances the watermark of its source.
+     * This method can be called from any number of threads concurrently, and never blocks.
+     *
+     * @param source    The source of the event, e.g., its data stream, or null if unknown.
+     * @param timestamp The timestamp of the event.
+     * @param args      The event arguments to pass to the consumer.
+     */
+    public void addEvent(Object source, long timestamp, T args) {
         if (timeSynchronizationEnabled) {
-            TimeSynchronizerEvent<T> timeSynchronizerEvent = new TimeSynchronizerEvent<>(timestamp, args);
-            receivedEvents.add(timeSynchronizerEvent);
-        } else {
-            eventConsumer.accept(args);
+            TimeSynchronizerEvent<T> event = new TimeSynchronizerEvent<>(timestamp, args, eventCount.getAndIncrement());
+            incomingEvents.offer(event);
+            if (timeSynchronizationEnabled) {
+                requestProcessing(timestamp + bufferTimeMS);
+                if (watermarkEnabled && source != null) {
+                    TimingService timer = timingService;
+                    SourceWatermark watermark = watermarks.computeIfAbsent(source, s -> new SourceWatermark(timer.currentTimeMillis()));
+                    if (watermark.update(timestamp, timer.currentTimeMillis())) {
+                        // Events of other sources may now be passed by every watermark
+                        requestProcessing(timer.currentTimeMillis());
+                    }
+                }
+                return;
+            }
+            // Disabled meanwhile: process the event now, unless the buffer was already cleared with it
+            if (!incomingEvents.remove(event)) return;
+        }
+        eventConsumer.accept(args);
+    }
+
+    /**
+     * Schedules the processing of the buffer at the given time,
+     * unless it is already scheduled for that time or earlier.
+     *
+     * @param dueTime The time, in milliseconds since the epoch, at which an event is due.
+     */
+    private void requestProcessing(long dueTime) {
+        long scheduledTime;
+        do {
+            scheduledTime = nextProcessingTime.get();
+            if (scheduledTime <= dueTime) return;
+        } while (!nextProcessingTime.compareAndSet(scheduledTime, dueTime));
+
+        TimingService timer = timingService;
+        ScheduledFuture<?> processing;
+        try {
+            long delay = Math.max(0, dueTime - timer.currentTimeMillis());
+            processing = timer.schedule(this::processBufferedEvents, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The timing service was shut down; the events are served when the buffer is cleared,
+            // or when another timing service is set, so the next request must not assume this processing is scheduled
+            nextProcessingTime.compareAndSet(dueTime, Long.MAX_VALUE);
+            return;
+        }
+
+        // Cancel the previous processing if it is later, so the timer does not wake up for nothing
+        ScheduledFuture<?> previous = scheduledProcessing.getAndSet(processing);
+        if (previous != null && previous.getDelay(TimeUnit.MILLISECONDS) > processing.getDelay(TimeUnit.MILLISECONDS)) {
+            previous.cancel(false);
         }
     }
 
@@ -100,43 +250,194 @@ public class TimeSynchronizer<T> {
      * Events that are outside the buffer time will be discarded if discardOutdatedEvents is true.
      */
     private void processBufferedEvents() {
-        if (!timeSynchronizationEnabled || receivedEvents.isEmpty()) return;
+        List<T> readyEvents = new ArrayList<>();
+        synchronized (this) {
+            // Reset before moving the incoming events, so events added from now on schedule another processing
+            nextProcessingTime.set(Long.MAX_VALUE);
+            if (!timeSynchronizationEnabled) return;
 
-        long bufferTime = System.currentTimeMillis() - bufferTimeMS;
-        List<TimeSynchronizerEvent<T>> toServe = new ArrayList<>();
+            moveIncomingEvents();
+            long now = timingService.currentTimeMillis();
+            long bufferTime = now - bufferTimeMS;
+            long releaseTime = watermarkEnabled ? Math.max(bufferTime, getWatermark(now)) : bufferTime;
+            TimeSynchronizerEvent<T> head;
+            while ((head = receivedEvents.peek()) != null && head.getTimestamp() <= releaseTime) {
+                receivedEvents.poll();
+                if (discardOutdatedEvents && head.getTimestamp() < lastUpdateTimestamp) continue;
+
+                readyEvents.add(head.getEvent());
+                lastUpdateTimestamp = head.getTimestamp();
+            }
 
-        for (TimeSynchronizerEvent<T> timeSynchronizerEvent : receivedEvents) {
-            if (timeSynchronizerEvent.getTimestamp() <= bufferTime) {
-                toServe.add(timeSynchronizerEvent);
+            if (head != null) {
+                requestProcessing(head.getTimestamp() + bufferTimeMS);
             }
         }
-        if (toServe.isEmpty()) return;
 
-        toServe.sort(Comparator.comparingLong(TimeSynchronizerEvent::getTimestamp));
+        if (readyEvents.isEmpty()) return;
+        // The consumer is called off the timer thread and without holding the lock,
+        // so neither the other users of the timing service nor the producers wait for it
+        try {
+            deliveryExecutor.execute(() -> deliver(readyEvents));
+        } catch (RejectedExecutionException e) {
+            // The delivery executor was shut down along with the consumer
+        }
+    }
+
+    private void deliver(List<T> events) {
+        for (T event : events) {
+            try {
+                eventConsumer.accept(event);
+            } catch (RuntimeException e) {
+                // A failing consumer must not prevent the next events from being served
+            }
+        }
+    }
 
-        for (TimeSynchronizerEvent<T> timeSynchronizerEvent : toServe) {
-            if (discardOutdatedEvents && timeSynchronizerEvent.getTimestamp() < lastUpdateTimestamp) {
-                receivedEvents.remove(timeSynchronizerEvent);
-                continue;
+    /**
+     * The lowest watermark of the sources that sent an event within the buffer time,
+     * or {@link Long#MIN_VALUE} if there is none.
+     */
+    private long getWatermark(long now) {
+        long watermark = Long.MAX_VALUE;
+        for (SourceWatermark sourceWatermark : watermarks.values()) {
+            if (now - sourceWatermark.getLastArrivalTime() <= bufferTimeMS) {
+                watermark = Math.min(watermark, sourceWatermark.getWatermark());
             }
+        }
+        return watermark == Long.MAX_VALUE ? Long.MIN_VALUE : watermark;
+    }
 
-            eventConsumer.accept(timeSynchronizerEvent.getEvent());
-            receivedEvents.remove(timeSynchronizerEvent);
-            lastUpdateTimestamp = timeSynchronizerEvent.getTimestamp();
+    /**
+     * Moves the events added since the last processing into the ordered buffer.
+     */
+    private void moveIncomingEvents() {
+        TimeSynchronizerEvent<T> event;
+        while ((event = incomingEvents.poll()) != null) {
+            receivedEvents.add(event);
         }
     }
 
     /**
-     * Clears the buffer and processes any remaining events.
+     * Clears the buffer.
+     *
+     * @return The buffered events in order, if they are not discarded, to be processed by the caller.
      */
-    private void clearBuffer() {
+    private List<T> clearBuffer() {
+        moveIncomingEvents();
+        List<T> remainingEvents = new ArrayList<>();
         if (!discardBuffer) {
-            receivedEvents.sort(Comparator.comparingLong(TimeSynchronizerEvent::getTimestamp));
-            for (TimeSynchronizerEvent<T> event : receivedEvents) {
-                eventConsumer.accept(event.getEvent());
+            TimeSynchronizerEvent<T> event;
+            while ((event = receivedEvents.poll()) != null) {
+                remainingEvents.add(event.getEvent());
             }
         }
         receivedEvents.clear();
+        return remainingEvents;
+    }
+
+    /**
+     * Whether events are served once the watermarks of all the active sources have passed them,
+     * rather than only after the buffer time.
+     */
+    public boolean isWatermarkEnabled() {
+        return watermarkEnabled;
+    }
+
+    /**
+     * Sets whether events are served once the watermarks of all the active sources have passed them,
+     * rather than only after the buffer time.
+     * The watermark of a source is its latest timestamp minus the lateness measured on its events,
+     * so the added latency adapts to each source.
+     * A source that has not sent an event within the buffer time is no longer waited for,
+     * and every event is served after the buffer time at the latest.
+     * Only events added with their source, see {@link #addEvent(Object, long, Object)}, advance the watermarks;
+     * sources registered with {@link #addSource(Object)} are waited for from their registration.
+     * Disabling watermarks forgets the sources.
+     *
+     * @param watermarkEnabled true to enable watermarks.
+     */
+    public void setWatermarkEnabled(boolean watermarkEnabled) {
+        this.watermarkEnabled = watermarkEnabled;
+        if (!watermarkEnabled) {
+            watermarks.clear();
+        }
+    }
+
+    /**
+     * The timestamp up to which events are served, according to the watermarks of the active sources,
+     * or {@link Long#MIN_VALUE} if watermarks are disabled or no source is active.
+     */
+    public long getWatermark() {
+        return watermarkEnabled ? getWatermark(timingService.currentTimeMillis()) : Long.MIN_VALUE;
+    }
+
+    /**
+     * How far behind its latest timestamp the events of a source arrive, in milliseconds,
+     * as measured for its watermark.
+     *
+     * @param source The source.
+     * @return The lateness, or 0 if no event was received from the source.
+     */
+    public long getLatenessMS(Object source) {
+        SourceWatermark watermark = watermarks.get(source);
+        return watermark != null ? watermark.getLatenessMS() : 0;
+    }
+
+    /**
+     * Registers a source before its first event, e.g., when its stream is opened.
+     * Until the source sends an event, its watermark is {@link Long#MIN_VALUE},
+     * so the events of the other sources are held for the buffer time, as without watermarks;
+     * after the buffer time without an event, the source is no longer waited for.
+     * Registering a source again restarts this wait, unless it has already sent an event.
+     *
+     * @param source The source.
+     */
+    public void addSource(Object source) {
+        if (source == null) return;
+
+        long now = timingService.currentTimeMillis();
+        watermarks.computeIfAbsent(source, s -> new SourceWatermark(now)).register(now);
+    }
+
+    /**
+     * Stops waiting for the watermark of a source, e.g., when its stream is closed.
+     *
+     * @param source The source.
+     */
+    public void removeSource(Object source) {
+        if (source != null && watermarks.remove(source) != null && timeSynchronizationEnabled) {
+            requestProcessing(timingService.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The timing service processing the buffer.
+     */
+    public TimingService getTimingService() {
+        return timingService;
+    }
+
+    /**
+     * Sets the timing service processing the buffer.
+     * Processing already scheduled on the previous timing service still takes place.
+     *
+     * @param timingService The timing service, or null to use {@link SharedTimingService#getDefault()}.
+     */
+    public void setTimingService(TimingService timingService) {
+        this.timingService = timingService != null ? timingService : SharedTimingService.getDefault();
+        nextProcessingTime.set(Long.MAX_VALUE);
+        if (timeSynchronizationEnabled) {
+            // Process the buffer now on the new timing service, which schedules the next processing
+            requestProcessing(this.timingService.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The number of events currently buffered.
+     */
+    public synchronized int getBufferedEventCount() {
+        return receivedEvents.size() + incomingEvents.size();
     }
 
     /**
@@ -148,12 +449,13 @@ public class TimeSynchronizer<T> {
 
     /**
      * Sets the buffer time in milliseconds.
+     * With watermarks enabled, this is the maximum time an event is held.
      *
      * @param bufferTimeMS The buffer time in milliseconds.
      *                     For best results, this should be greater than the expected network latency.
      * @throws IllegalArgumentException if bufferTimeMS is less than or equal to 0.
      */
-    private void setBufferTimeMS(int bufferTimeMS) {
+    public void setBufferTimeMS(int bufferTimeMS) {
         if (bufferTimeMS <= 0) {
             throw new IllegalArgumentException("Buffer time must be greater than 0");
         }
@@ -8,10 +8,19 @@ package org.sensorhub.oshconnect.time;
 public class TimeSynchronizerEvent<T> {
     private final long timestamp;
     private final T event;
+    /**
+     * The order in which the event was added, to serve events with the same timestamp in that order.
+     */
+    private final long sequence;
 
     public TimeSynchronizerEvent(long timestamp, T event) {
+        this(timestamp, event, 0);
+    }
+
+    TimeSynchronizerEvent(long timestamp, T event, long sequence) {
         this.timestamp = timestamp;
         this.event = event;
+        this.sequence = sequence;
     }
 
     public long getTimestamp() {
@@ -21,4 +30,8 @@ public class TimeSynchronizerEvent<T> {
     public T getEvent() {
         return event;
     }
+
+    long getSequence() {
+        return sequence;
+    }
 }
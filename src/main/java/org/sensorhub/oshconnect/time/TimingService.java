@@ -0,0 +1,44 @@
+package org.sensorhub.oshconnect.time;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the timed work of time synchronizers and stream handlers,
+ * so that they share a timer instead of each running their own.
+ * <p>
+ * Tasks should return quickly, since a single thread may run the tasks of every synchronizer:
+ * they only pick out the work that is due, and hand it to other threads rather than calling application code.
+ * The default implementation is {@link SharedTimingService}.
+ */
+public interface TimingService {
+    /**
+     * Run a task once after a delay.
+     *
+     * @param task  The task.
+     * @param delay The delay.
+     * @param unit  The unit of the delay.
+     * @return The future of the task, which can be used to cancel it.
+     * @throws java.util.concurrent.RejectedExecutionException if the service has been shut down.
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Run a task periodically.
+     *
+     * @param task         The task.
+     * @param initialDelay The delay before the first run.
+     * @param period       The period between the start of two runs.
+     * @param unit         The unit of the delay and period.
+     * @return The future of the task, which can be used to cancel it.
+     * @throws java.util.concurrent.RejectedExecutionException if the service has been shut down.
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * The current time of the clock the tasks are scheduled against, in milliseconds since the epoch.
+     */
+    default long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
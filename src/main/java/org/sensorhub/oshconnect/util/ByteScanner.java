@@ -0,0 +1,61 @@
+package org.sensorhub.oshconnect.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Searches encoded messages directly in their bytes, without decoding them into strings.
+ */
+public final class ByteScanner {
+    private ByteScanner() {
+    }
+
+    /**
+     * Find the first occurrence of a sequence of bytes.
+     *
+     * @param data   The array to search.
+     * @param start  The index of the first byte to search, inclusive.
+     * @param end    The index of the last byte to search, exclusive.
+     * @param target The bytes to find.
+     * @return The index of the first byte of the occurrence, or -1 if not found.
+     */
+    public static int indexOf(byte[] data, int start, int end, byte[] target) {
+        outer:
+        for (int i = start; i <= end - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the value of the first string member of a JSON object with the given name,
+     * without parsing the rest of the object.
+     *
+     * @param data      The array holding the JSON object.
+     * @param offset    The index of the first byte of the object.
+     * @param length    The length of the object.
+     * @param quotedKey The name of the member, in double quotes.
+     * @return The value of the member, or null if not found or not a string.
+     */
+    public static String findStringMember(byte[] data, int offset, int length, byte[] quotedKey) {
+        int end = offset + length;
+        int keyIndex = indexOf(data, offset, end, quotedKey);
+        if (keyIndex < 0) return null;
+
+        int i = keyIndex + quotedKey.length;
+        while (i < end && (data[i] == ':' || Character.isWhitespace(data[i]))) {
+            i++;
+        }
+        if (i >= end || data[i] != '"') return null;
+
+        int start = ++i;
+        while (i < end && data[i] != '"') {
+            i++;
+        }
+        if (i >= end) return null;
+
+        return new String(data, start, i - start, StandardCharsets.UTF_8);
+    }
+}
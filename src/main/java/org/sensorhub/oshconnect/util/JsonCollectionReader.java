@@ -0,0 +1,203 @@
+package org.sensorhub.oshconnect.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.sensorhub.oshconnect.datamodels.Link;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the items of a JSON collection document, i.e., {@code {"items": [...], ...}},
+ * in a single pass over the document, without building a tree of the whole response.
+ * A bare JSON array of items is also accepted.
+ */
+public class JsonCollectionReader {
+    /**
+     * Name of the array property holding the items of a collection.
+     */
+    public static final String ITEMS = "items";
+    /**
+     * Name of the array property holding the links of a collection.
+     */
+    public static final String LINKS = "links";
+    /**
+     * Relation type of the link to the next page of a collection.
+     */
+    public static final String REL_NEXT = "next";
+
+    private JsonCollectionReader() {
+    }
+
+    /**
+     * Callback reading a single item of a collection.
+     */
+    @FunctionalInterface
+    public interface ItemReader {
+        /**
+         * Read one item from the reader.
+         * Implementations must consume exactly one JSON value.
+         *
+         * @param reader The reader, positioned at the start of the item.
+         */
+        void readItem(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Read each item of a collection document, in document order.
+     * The reader must be positioned at the start of the document.
+     * Properties other than the items are skipped.
+     *
+     * @param reader     The reader.
+     * @param itemReader Called once for each item.
+     * @throws IOException If the document is not a valid collection.
+     */
+    public static void readItems(JsonReader reader, ItemReader itemReader) throws IOException {
+        readCollection(reader, itemReader, null);
+    }
+
+    /**
+     * Read each item of a collection document, in document order, and return the links of the collection,
+     * such as the {@value #REL_NEXT} link to the next page of results.
+     * The reader must be positioned at the start of the document.
+     * Other properties are skipped.
+     *
+     * @param reader     The reader.
+     * @param itemReader Called once for each item.
+     * @param baseUri    The URI the document was retrieved from, used to resolve relative links.
+     *                   If null, relative links are ignored.
+     * @return The links of the collection, or an empty list if there are none.
+     * @throws IOException If the document is not a valid collection.
+     */
+    public static List<Link> readCollection(JsonReader reader, ItemReader itemReader, URI baseUri) throws IOException {
+        List<Link> links = new ArrayList<>();
+
+        try {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readArray(reader, itemReader);
+                return links;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (ITEMS.equals(name)) {
+                    readArray(reader, itemReader);
+                } else if (LINKS.equals(name)) {
+                    readArray(reader, linkReader -> {
+                        Link link = readLink(linkReader, baseUri);
+                        if (link != null)
+                            links.add(link);
+                    });
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Invalid JSON collection at " + reader.getPath() + ": " + e.getMessage(), e);
+        }
+
+        return links;
+    }
+
+    /**
+     * Find the link with the given relation type.
+     *
+     * @param links The links.
+     * @param rel   The relation type.
+     * @return The first link with the relation type, or null if there is none.
+     */
+    public static Link findLink(List<Link> links, String rel) {
+        if (links == null) return null;
+
+        for (Link link : links) {
+            if (rel.equals(link.getRel()))
+                return link;
+        }
+        return null;
+    }
+
+    /**
+     * Read the ID of each item of a collection document.
+     * Other properties of the items are skipped.
+     *
+     * @param reader     The reader.
+     * @param idConsumer Called once with the ID of each item.
+     * @throws IOException If the document is not a valid collection or an item has no ID.
+     */
+    public static void readItemIds(JsonReader reader, Consumer<String> idConsumer) throws IOException {
+        readItems(reader, itemReader -> {
+            String id = null;
+
+            itemReader.beginObject();
+            while (itemReader.hasNext()) {
+                if ("id".equals(itemReader.nextName())) {
+                    id = itemReader.nextString();
+                } else {
+                    itemReader.skipValue();
+                }
+            }
+            itemReader.endObject();
+
+            if (id == null) {
+                throw new IOException("No id found in feature");
+            }
+            idConsumer.accept(id);
+        });
+    }
+
+    /**
+     * Read a link object.
+     *
+     * @return The link, or null if its href is missing or cannot be resolved to an absolute URL.
+     */
+    private static Link readLink(JsonReader reader, URI baseUri) throws IOException {
+        String href = null;
+        String rel = null;
+        String type = null;
+        String title = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if ("href".equals(name)) {
+                href = reader.nextString();
+            } else if ("rel".equals(name)) {
+                rel = reader.nextString();
+            } else if ("type".equals(name)) {
+                type = reader.nextString();
+            } else if ("title".equals(name)) {
+                title = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (href == null) return null;
+
+        try {
+            URI uri = baseUri != null ? baseUri.resolve(href) : new URI(href);
+            if (!uri.isAbsolute()) return null;
+            return new Link(uri.toURL(), rel, type, null, title, null, null, null);
+        } catch (URISyntaxException | IllegalArgumentException | MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static void readArray(JsonReader reader, ItemReader itemReader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            itemReader.readItem(reader);
+        }
+        reader.endArray();
+    }
+}
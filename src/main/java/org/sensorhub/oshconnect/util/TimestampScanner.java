@@ -0,0 +1,200 @@
+package org.sensorhub.oshconnect.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts the time stamp of an observation directly from its encoded bytes,
+ * without decoding the payload into strings or JSON objects.
+ * <p>
+ * Text time stamps must be ISO 8601 date-times with a time zone designator,
+ * as written by OpenSensorHub, e.g., {@code 2024-01-01T12:00:00.123Z}.
+ * All methods return the time stamp in milliseconds since the epoch, or {@link #NOT_FOUND}.
+ */
+public final class TimestampScanner {
+    /**
+     * Value returned when no valid time stamp is found.
+     */
+    public static final long NOT_FOUND = -1;
+    private static final byte[] PHENOMENON_TIME_KEY = "\"phenomenonTime\"".getBytes(StandardCharsets.UTF_8);
+    /**
+     * The length of the shortest date-time accepted, i.e., {@code yyyy-MM-ddTHH:mm:ssZ}.
+     */
+    private static final int MIN_DATE_TIME_LENGTH = 20;
+
+    private TimestampScanner() {
+    }
+
+    /**
+     * Find the {@code phenomenonTime} member of a JSON observation.
+     */
+    public static long scanJson(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int keyIndex = ByteScanner.indexOf(data, offset, end, PHENOMENON_TIME_KEY);
+        if (keyIndex < 0) return NOT_FOUND;
+
+        int i = keyIndex + PHENOMENON_TIME_KEY.length;
+        while (i < end && (data[i] == ':' || isWhitespace(data[i]))) {
+            i++;
+        }
+        if (i >= end || data[i] != '"') return NOT_FOUND;
+
+        return parseDateTime(data, i + 1, end);
+    }
+
+    /**
+     * Find the first element of an XML observation whose whole content is a date-time.
+     */
+    public static long scanXml(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i + MIN_DATE_TIME_LENGTH < end; i++) {
+            if (data[i] == '>' && isDigit(data[i + 1])) {
+                int dateEnd = findDateTimeEnd(data, i + 1, end);
+                if (dateEnd > 0 && dateEnd < end && data[dateEnd] == '<') {
+                    long timestamp = parseDateTime(data, i + 1, dateEnd);
+                    if (timestamp != NOT_FOUND) return timestamp;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Parse the first field of a CSV or plain text observation.
+     */
+    public static long scanCsv(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end && isWhitespace(data[i])) {
+            i++;
+        }
+        return parseDateTime(data, i, end);
+    }
+
+    /**
+     * Read the first field of a SWE binary observation, a big-endian double in seconds since the epoch.
+     */
+    public static long scanBinary(byte[] data, int offset, int length) {
+        if (length < Double.BYTES) return NOT_FOUND;
+
+        long bits = 0;
+        for (int i = 0; i < Double.BYTES; i++) {
+            bits = (bits << 8) | (data[offset + i] & 0xFF);
+        }
+        return (long) (Double.longBitsToDouble(bits) * 1000);
+    }
+
+    /**
+     * Whether the bytes at the given offset start with a date and an hour, i.e., {@code yyyy-MM-ddTHH:}.
+     */
+    public static boolean startsWithDateTime(byte[] data, int offset, int length) {
+        if (length < 14) return false;
+
+        return isDigit(data[offset]) && isDigit(data[offset + 1]) && isDigit(data[offset + 2]) && isDigit(data[offset + 3])
+                && data[offset + 4] == '-' && isDigit(data[offset + 5]) && isDigit(data[offset + 6])
+                && data[offset + 7] == '-' && isDigit(data[offset + 8]) && isDigit(data[offset + 9])
+                && data[offset + 10] == 'T' && isDigit(data[offset + 11]) && isDigit(data[offset + 12])
+                && data[offset + 13] == ':';
+    }
+
+    /**
+     * Parse an ISO 8601 date-time, i.e., {@code yyyy-MM-ddTHH:mm:ss[.fraction](Z|+HH:mm|-HH:mm)},
+     * ignoring any trailing bytes.
+     *
+     * @param data  The bytes.
+     * @param start The index of the first digit of the year.
+     * @param end   The index after the last byte that may be read.
+     * @return The date-time in milliseconds since the epoch, truncated to the millisecond, or {@link #NOT_FOUND}.
+     */
+    public static long parseDateTime(byte[] data, int start, int end) {
+        if (end - start < MIN_DATE_TIME_LENGTH || !startsWithDateTime(data, start, end - start)) return NOT_FOUND;
+
+        int year = digits(data, start, 4);
+        int month = digits(data, start + 5, 2);
+        int day = digits(data, start + 8, 2);
+        int hour = digits(data, start + 11, 2);
+        int minute = digits(data, start + 14, 2);
+        int second = digits(data, start + 17, 2);
+        if (minute < 0 || second < 0 || data[start + 16] != ':') return NOT_FOUND;
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) return NOT_FOUND;
+
+        int i = start + 19;
+        int millis = 0;
+        if (data[i] == '.') {
+            i++;
+            int fractionStart = i;
+            while (i < end && isDigit(data[i])) {
+                if (i - fractionStart < 3) {
+                    millis = millis * 10 + (data[i] - '0');
+                }
+                i++;
+            }
+            int fractionDigits = i - fractionStart;
+            if (fractionDigits == 0) return NOT_FOUND;
+            for (int d = fractionDigits; d < 3; d++) {
+                millis *= 10;
+            }
+        }
+
+        if (i >= end) return NOT_FOUND;
+        int offsetSeconds;
+        if (data[i] == 'Z') {
+            offsetSeconds = 0;
+        } else if ((data[i] == '+' || data[i] == '-') && i + 6 <= end && data[i + 3] == ':') {
+            int offsetHours = digits(data, i + 1, 2);
+            int offsetMinutes = digits(data, i + 4, 2);
+            if (offsetHours < 0 || offsetMinutes < 0 || offsetHours > 18 || offsetMinutes > 59) return NOT_FOUND;
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (data[i] == '-' ? -1 : 1);
+        } else {
+            return NOT_FOUND;
+        }
+
+        long epochSeconds = epochDay(year, month, day) * 86400 + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochSeconds * 1000 + millis;
+    }
+
+    /**
+     * The index after the last byte of a date-time starting at the given index, or -1 if it is not a date-time.
+     */
+    private static int findDateTimeEnd(byte[] data, int start, int end) {
+        if (!startsWithDateTime(data, start, end - start)) return -1;
+
+        for (int i = start + 14; i < end; i++) {
+            byte b = data[i];
+            if (b == 'Z') return i + 1;
+            if (!isDigit(b) && b != ':' && b != '.' && b != '+' && b != '-') return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The number of days since the epoch of a date of the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Parse a fixed number of decimal digits, or return -1 if any byte is not a digit.
+     */
+    private static int digits(byte[] data, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (!isDigit(data[i])) return -1;
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,48 @@
+package org.sensorhub.oshconnect;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.sensorhub.oshconnect.TestConstants.*;
+import static org.sensorhub.oshconnect.tools.DataStreamTools.newDataStreamInfo;
+import static org.sensorhub.oshconnect.tools.SystemTools.newSystem;
+
+class DiscoveryManagerTest extends TestBase {
+    private OSHSystem system;
+
+    @BeforeEach
+    void setup() throws ExecutionException, InterruptedException {
+        system = node.createSystem(newSystem());
+        assertNotNull(system);
+        assertNotNull(system.createDataStream(newDataStreamInfo()));
+    }
+
+    @Test
+    void discoverAll() throws ExecutionException, InterruptedException {
+        DiscoveryResult result = oshConnect.getDiscoveryManager().discoverAll().get();
+
+        assertTrue(result.isComplete());
+        assertEquals(1, result.getSystems().size());
+        assertEquals(1, result.getDataStreams().size());
+        assertEquals(0, result.getControlStreams().size());
+    }
+
+    @Test
+    void discoverAllWithUnreachableNode() throws ExecutionException, InterruptedException {
+        OSHNode unreachableNode = oshConnect.createNode("localhost:1/sensorhub", IS_SECURE, USERNAME, PASSWORD);
+        DiscoveryManager discoveryManager = oshConnect.getDiscoveryManager();
+        discoveryManager.setNodeTimeout(Duration.ofSeconds(5));
+
+        DiscoveryResult result = discoveryManager.discoverAll().get();
+
+        assertFalse(result.isComplete());
+        assertTrue(result.getFailures().containsKey(unreachableNode));
+        assertFalse(result.getFailures().containsKey(node));
+        assertEquals(1, result.getSystems().size());
+        assertEquals(1, result.getDataStreams().size());
+    }
+}
@@ -2,13 +2,25 @@ package org.sensorhub.oshconnect;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sensorhub.impl.service.consys.resource.ResourceFormat;
 import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.net.ObservationBatchPublisher;
+import org.sensorhub.oshconnect.net.ObservationSpool;
+import org.sensorhub.oshconnect.net.PagedObservationIterator;
 import org.sensorhub.oshconnect.util.ObservationsQueryBuilder;
 import org.vast.util.TimeExtent;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.sensorhub.oshconnect.tools.DataStreamTools.*;
 import static org.sensorhub.oshconnect.tools.ObservationTools.*;
@@ -65,6 +77,46 @@ class OSHDataStreamTest extends TestBase {
         assertNotNull(observationID);
     }
 
+    @Test
+    void pushObservations() throws ExecutionException, InterruptedException {
+        List<ObservationData> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(newObservationData(newDataBlockWithData()));
+        }
+        dataStream.pushObservations(batch);
+
+        List<ObservationData> observations = dataStream.getObservations();
+        assertEquals(5, observations.size());
+    }
+
+    @Test
+    void publishObservationsInBatches() throws ExecutionException, InterruptedException {
+        ObservationBatchPublisher publisher = dataStream.newObservationPublisher(3, Duration.ofSeconds(10));
+        for (int i = 0; i < 7; i++) {
+            publisher.publish(newObservationData(newDataBlockWithData()));
+        }
+        publisher.close();
+        publisher.flush().get();
+
+        List<ObservationData> observations = dataStream.getObservations();
+        assertEquals(7, observations.size());
+        assertThrows(IllegalStateException.class, () -> publisher.publish(newObservationData(newDataBlockWithData())));
+    }
+
+    @Test
+    void pushObservationsThroughSpool(@TempDir Path spoolDirectory) throws Exception {
+        ObservationSpool spool = dataStream.enableSpool(spoolDirectory);
+        for (int i = 0; i < 10; i++) {
+            assertNull(dataStream.pushObservation(newObservationData(newDataBlockWithData())));
+        }
+
+        await().until(() -> spool.getPendingCount() == 0);
+        dataStream.disableSpool();
+
+        assertEquals(10, spool.getUploadedCount());
+        assertEquals(10, dataStream.getObservations().size());
+    }
+
     @Test
     void getObservation() throws ExecutionException, InterruptedException {
         ObservationData observationData = newObservationData(newDataBlockWithData());
@@ -133,6 +185,19 @@ class OSHDataStreamTest extends TestBase {
         verifyObservation(observations.get(1), observationData3.getPhenomenonTime(), 1.1, 2.2, 3.3);
     }
 
+    @Test
+    void getObservationsSweBinary() throws ExecutionException, InterruptedException {
+        dataStream.pushObservation(newObservationData(newDataBlockWithData()));
+        dataStream.pushObservation(newObservationData(newDataBlockWithData(1.0, 2.0, 3.0)));
+
+        List<ObservationData> observations = dataStream.getObservations(new ObservationsQueryBuilder(), ResourceFormat.SWE_BINARY);
+        assertEquals(2, observations.size());
+        assertEquals(OBS_LAT, observations.get(0).getResult().getDoubleValue(OBS_LAT_INDEX));
+        assertEquals(1.0, observations.get(1).getResult().getDoubleValue(OBS_LAT_INDEX));
+        assertEquals(3.0, observations.get(1).getResult().getDoubleValue(OBS_ALT_INDEX));
+        assertNotNull(observations.get(1).getPhenomenonTime());
+    }
+
     @Test
     void getObservationsWithLimit() throws ExecutionException, InterruptedException {
         int numObservations = 25;
@@ -145,4 +210,54 @@ class OSHDataStreamTest extends TestBase {
         List<ObservationData> observations = dataStream.getObservations(queryBuilder);
         assertEquals(limit, observations.size());
     }
+
+    @Test
+    void iterateObservationsAcrossPages() throws ExecutionException, InterruptedException {
+        int numObservations = 25;
+        int pageSize = 10;
+        for (int i = 0; i < numObservations; i++) {
+            dataStream.pushObservation(newObservationData(newDataBlockWithData()));
+        }
+
+        List<ObservationData> observations;
+        try (Stream<ObservationData> stream = dataStream.streamObservations(new ObservationsQueryBuilder(), pageSize, 2)) {
+            observations = stream.collect(Collectors.toList());
+        }
+        assertEquals(numObservations, observations.size());
+    }
+
+    @Test
+    void iterateObservationsClosedEarly() throws ExecutionException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            dataStream.pushObservation(newObservationData(newDataBlockWithData()));
+        }
+
+        try (PagedObservationIterator iterator = dataStream.iterateObservations(new ObservationsQueryBuilder(), 2, 1)) {
+            assertTrue(iterator.hasNext());
+            assertNotNull(iterator.next());
+            iterator.close();
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    void downloadObservationsInOrder() throws ExecutionException, InterruptedException {
+        int numObservations = 40;
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < numObservations; i++) {
+            dataStream.pushObservation(newObservationData(newDataBlockWithData(), start.plusSeconds(i)));
+        }
+
+        List<ObservationData> observations = new ArrayList<>();
+        long count = dataStream.newObservationDownload(TimeExtent.period(start, start.plusSeconds(numObservations - 1)), null)
+                .shardCount(4)
+                .pageSize(5)
+                .forEach(observations::add);
+
+        assertEquals(numObservations, count);
+        assertEquals(numObservations, observations.size());
+        for (int i = 0; i < numObservations; i++) {
+            assertEquals(start.plusSeconds(i), observations.get(i).getPhenomenonTime());
+        }
+    }
 }
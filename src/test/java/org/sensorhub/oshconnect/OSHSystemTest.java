@@ -4,6 +4,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.sensorhub.oshconnect.notification.INotificationDataStream;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -92,6 +96,31 @@ class OSHSystemTest extends TestBase {
         assertEquals(id, dataStreams.get(0).getId());
     }
 
+    @Test
+    void discoverDataStreams_SchemaFallback() throws ExecutionException, InterruptedException {
+        // ConSysApiClient fails this way when the node cannot provide the schema as swe+json
+        List<Boolean> requests = new ArrayList<>();
+        var result = OSHSystem.withSchemaFallback(withSchema -> {
+            requests.add(withSchema);
+            return withSchema
+                    ? CompletableFuture.<String>failedFuture(new CompletionException("HTTP error 400", null))
+                    : CompletableFuture.completedFuture("resource");
+        }).get();
+        assertEquals("resource", result);
+        assertEquals(List.of(true, false), requests);
+    }
+
+    @Test
+    void discoverDataStreams_NoFallbackOnOtherErrors() {
+        List<Boolean> requests = new ArrayList<>();
+        var result = OSHSystem.withSchemaFallback(withSchema -> {
+            requests.add(withSchema);
+            return CompletableFuture.<String>failedFuture(new CompletionException("HTTP error 500", null));
+        });
+        assertThrows(ExecutionException.class, result::get);
+        assertEquals(List.of(true), requests);
+    }
+
     @Test
     void discoverControlStreams() throws ExecutionException, InterruptedException {
         var controlStreams = system.discoverControlStreams();
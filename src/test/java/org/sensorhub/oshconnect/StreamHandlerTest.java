@@ -2,17 +2,30 @@ package org.sensorhub.oshconnect;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.sensorhub.oshconnect.datamodels.ObservationData;
 import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.net.websocket.OverflowPolicy;
 import org.sensorhub.oshconnect.net.websocket.StreamEventArgs;
+import org.sensorhub.oshconnect.net.websocket.StreamEventDispatcher;
 import org.sensorhub.oshconnect.net.websocket.StreamHandler;
 import org.sensorhub.oshconnect.net.websocket.StreamStatus;
+import org.sensorhub.oshconnect.time.PlaybackState;
+import org.sensorhub.oshconnect.time.TemporalMode;
 import org.vast.util.TimeExtent;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.sensorhub.oshconnect.tools.DataStreamTools.newDataStreamInfo;
+import static org.sensorhub.oshconnect.tools.ObservationTools.newDataBlockWithData;
+import static org.sensorhub.oshconnect.tools.ObservationTools.newObservationData;
 import static org.sensorhub.oshconnect.tools.SystemTools.newSystem;
 
 class StreamHandlerTest extends TestBase {
@@ -274,4 +287,196 @@ class StreamHandlerTest extends TestBase {
         assertNotNull(dataStreamListener);
         assertEquals(timeExtent, dataStreamListener.getTimeExtent());
     }
+
+    @Test
+    void startPlayback() throws ExecutionException, InterruptedException {
+        Instant begin = Instant.now().minusSeconds(60).truncatedTo(ChronoUnit.MILLIS);
+        List<ObservationData> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(newObservationData(newDataBlockWithData(), begin.plusSeconds(i)));
+        }
+        dataStream.pushObservations(batch);
+
+        List<StreamEventArgs> received = new CopyOnWriteArrayList<>();
+        StreamHandler handler = dataStreamManager.createDataStreamHandler(received::add);
+        handler.addDataStreamListener(dataStream);
+        handler.setTimeExtent(TimeExtent.period(begin, begin.plusSeconds(4)));
+        handler.setReplaySpeed(100);
+        var playback = handler.startPlayback();
+        assertSame(playback, handler.getPlayback());
+        assertEquals(TemporalMode.ARCHIVE_SYNC, handler.getTemporalMode());
+
+        await().until(() -> playback.getState() == PlaybackState.STOPPED && received.size() == 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(begin.plusSeconds(i).toEpochMilli(), received.get(i).getTimestamp());
+            assertNotNull(received.get(i).getObservation());
+        }
+
+        // Back from the end, without requesting the observations again
+        received.clear();
+        playback.setSpeed(-100);
+        playback.play();
+        await().until(() -> playback.getState() == PlaybackState.STOPPED && received.size() == 4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(begin.plusSeconds(3 - i).toEpochMilli(), received.get(i).getTimestamp());
+        }
+
+        handler.stopPlayback();
+        assertNull(handler.getPlayback());
+        assertTrue(playback.isClosed());
+    }
+
+    @Test
+    void startPlayback_ResumedBySpeed() throws ExecutionException, InterruptedException {
+        Instant begin = Instant.now().minusSeconds(60).truncatedTo(ChronoUnit.MILLIS);
+        List<ObservationData> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(newObservationData(newDataBlockWithData(), begin.plusSeconds(i)));
+        }
+        dataStream.pushObservations(batch);
+
+        List<StreamEventArgs> received = new CopyOnWriteArrayList<>();
+        StreamHandler handler = dataStreamManager.createDataStreamHandler(received::add);
+        handler.addDataStreamListener(dataStream);
+        handler.setTimeExtent(TimeExtent.period(begin, begin.plusSeconds(2)));
+        handler.setReplaySpeed(0);
+        var playback = handler.startPlayback();
+        assertEquals(PlaybackState.STOPPED, playback.getState());
+
+        handler.setReplaySpeed(100);
+        await().until(() -> playback.getState() == PlaybackState.STOPPED && received.size() == 3);
+        // The observations are serialized on first access to the data
+        assertTrue(received.get(0).getLength() > 0);
+        handler.stopPlayback();
+    }
+
+    @Test
+    void startPlayback_RealTime() {
+        assertThrows(IllegalStateException.class, dataStreamHandler::startPlayback);
+        assertEquals(TemporalMode.REAL_TIME, dataStreamHandler.getTemporalMode());
+    }
+
+    @Test
+    void getTimingService() {
+        assertSame(oshConnect.getTimingService(), dataStreamHandler.getTimingService());
+        assertSame(oshConnect.getTimingService(), dataStreamHandler.getTimeSynchronizer().getTimingService());
+    }
+
+    @Test
+    void getDispatcher() {
+        var dispatcher = dataStreamHandler.getDispatcher();
+        assertNotNull(dispatcher);
+        assertEquals(OverflowPolicy.BLOCK, dispatcher.getOverflowPolicy());
+        assertEquals(StreamEventDispatcher.DEFAULT_CAPACITY, dispatcher.getCapacity());
+        dataStreamHandler.shutdown();
+        assertTrue(dispatcher.isClosed());
+    }
+
+    @Test
+    void dispatcher_DropNewest() {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<StreamEventArgs> received = new CopyOnWriteArrayList<>();
+        try (var dispatcher = new StreamEventDispatcher(args -> {
+            received.add(args);
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2)) {
+            dispatcher.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+
+            // The first event is taken by the consumer, which then blocks
+            assertTrue(dispatcher.publish(newEvent(0)));
+            await().until(() -> received.size() == 1);
+            assertTrue(dispatcher.publish(newEvent(1)));
+            assertTrue(dispatcher.publish(newEvent(2)));
+            assertFalse(dispatcher.publish(newEvent(3)));
+            assertEquals(2, dispatcher.getQueueDepth());
+            assertEquals(1, dispatcher.getDroppedCount());
+
+            latch.countDown();
+            await().until(() -> dispatcher.getDeliveredCount() == 3);
+            assertEquals(List.of(0L, 1L, 2L), received.stream().map(StreamEventArgs::getTimestamp).toList());
+        }
+    }
+
+    @Test
+    void dispatcher_ConflateLatest() {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<StreamEventArgs> received = new CopyOnWriteArrayList<>();
+        try (var dispatcher = new StreamEventDispatcher(args -> {
+            received.add(args);
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2)) {
+            dispatcher.setOverflowPolicy(OverflowPolicy.CONFLATE_LATEST);
+
+            assertTrue(dispatcher.publish(newEvent(0)));
+            await().until(() -> received.size() == 1);
+            for (long i = 1; i <= 10; i++) {
+                assertTrue(dispatcher.publish(newEvent(i)));
+            }
+            assertEquals(1, dispatcher.getQueueDepth());
+            assertEquals(9, dispatcher.getDroppedCount());
+
+            latch.countDown();
+            await().until(() -> dispatcher.getDeliveredCount() == 2);
+            assertEquals(List.of(0L, 10L), received.stream().map(StreamEventArgs::getTimestamp).toList());
+        }
+    }
+
+    @Test
+    void dispatcher_Execute() {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        try (var dispatcher = new StreamEventDispatcher(args -> threads.add(Thread.currentThread().getName()))) {
+            dispatcher.publish(newEvent(0));
+            dispatcher.execute(() -> threads.add(Thread.currentThread().getName()));
+            await().until(() -> threads.size() == 2);
+            assertEquals(threads.get(0), threads.get(1));
+        }
+    }
+
+    @Test
+    void setConflated() {
+        var dataStreamListener = dataStreamHandler.addDataStreamListener(dataStream);
+        dataStreamHandler.setConflated(true);
+        assertTrue(dataStreamHandler.isConflated());
+
+        for (long i = 0; i < 10; i++) {
+            dataStreamListener.onStreamUpdate(newEvent(i));
+        }
+        var conflator = dataStreamHandler.getConflator();
+        assertEquals(1, conflator.getPendingCount());
+        assertEquals(9, conflator.getOverwrittenCount());
+
+        var latest = conflator.poll();
+        assertEquals(1, latest.size());
+        assertEquals(9, latest.get(0).getTimestamp());
+        assertEquals(0, conflator.poll().size());
+    }
+
+    @Test
+    void setConflationIntervalMS() {
+        List<StreamEventArgs> received = new CopyOnWriteArrayList<>();
+        var handler = dataStreamManager.createDataStreamHandler(received::add);
+        var dataStreamListener = handler.addDataStreamListener(dataStream);
+        handler.setConflationIntervalMS(50);
+        handler.setConflated(true);
+        assertEquals(50, handler.getConflationIntervalMS());
+
+        for (long i = 0; i < 10; i++) {
+            dataStreamListener.onStreamUpdate(newEvent(i));
+        }
+        await().until(() -> received.size() == 1);
+        assertEquals(9, received.get(0).getTimestamp());
+        assertThrows(IllegalArgumentException.class, () -> handler.setConflationIntervalMS(-1));
+    }
+
+    private StreamEventArgs newEvent(long timestamp) {
+        return new StreamEventArgs(timestamp, new byte[0], RequestFormat.JSON, dataStream);
+    }
 }
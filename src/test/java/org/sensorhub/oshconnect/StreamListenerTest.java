@@ -3,18 +3,28 @@ package org.sensorhub.oshconnect;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.sensorhub.oshconnect.datamodels.ObservationData;
+import org.sensorhub.oshconnect.net.RequestFormat;
+import org.sensorhub.oshconnect.net.websocket.FrameBufferPool;
+import org.sensorhub.oshconnect.net.websocket.ReconnectPolicy;
 import org.sensorhub.oshconnect.net.websocket.StatusListener;
 import org.sensorhub.oshconnect.net.websocket.StreamEventArgs;
 import org.sensorhub.oshconnect.net.websocket.StreamStatus;
 import org.vast.util.TimeExtent;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.sensorhub.oshconnect.tools.DataStreamTools.newDataStreamInfo;
+import static org.sensorhub.oshconnect.tools.ObservationTools.OBS_LAT;
+import static org.sensorhub.oshconnect.tools.ObservationTools.OBS_LAT_INDEX;
 import static org.sensorhub.oshconnect.tools.ObservationTools.newDataBlockWithData;
 import static org.sensorhub.oshconnect.tools.ObservationTools.newObservationData;
 import static org.sensorhub.oshconnect.tools.SystemTools.newSystem;
@@ -47,6 +57,31 @@ class StreamListenerTest extends TestBase {
         assertEquals(1, dataStreamListener.getReplaySpeed());
     }
 
+    @Test
+    void listenersShareWebSocketClient() throws ExecutionException, InterruptedException {
+        OSHDataStream otherDataStream = system.createDataStream(newDataStreamInfo());
+        assertNotNull(otherDataStream);
+
+        var handler = dataStreamManager.createDataStreamHandler(emptyEvent);
+        var listener1 = handler.addDataStreamListener(dataStream);
+        var listener2 = handler.addDataStreamListener(otherDataStream);
+        var webSocketClient = node.getWebSocketClient();
+        assertFalse(webSocketClient.isStarted());
+
+        handler.connect();
+        await().until(() -> listener1.getStatus() == StreamStatus.CONNECTED && listener2.getStatus() == StreamStatus.CONNECTED);
+        assertTrue(webSocketClient.isStarted());
+        assertEquals(2, webSocketClient.getReferenceCount());
+
+        listener1.disconnect();
+        assertTrue(webSocketClient.isStarted());
+        assertEquals(1, webSocketClient.getReferenceCount());
+
+        handler.disconnect();
+        assertFalse(webSocketClient.isStarted());
+        assertEquals(0, webSocketClient.getReferenceCount());
+    }
+
     @Test
     void connect() {
         var handler = dataStreamManager.createDataStreamHandler(emptyEvent);
@@ -153,6 +188,10 @@ class StreamListenerTest extends TestBase {
         assertEquals(dataStream, receivedArgs[0].getStream());
         assertEquals(dataStream.getId(), receivedArgs[0].getObservation().getDataStreamId());
         assertEquals(observationTime, receivedArgs[0].getObservation().getPhenomenonTime());
+
+        // The observation is decoded once per event, with the decoder cached by the data stream.
+        assertSame(receivedArgs[0].getObservation(), receivedArgs[0].getObservation());
+        assertSame(dataStream.getObservationDecoder(), dataStream.getObservationDecoder());
     }
 
     @Test
@@ -188,6 +227,173 @@ class StreamListenerTest extends TestBase {
         assertTrue(obsTime.isBefore(listenEnd));
     }
 
+    @Test
+    void dataStreamListener_SweBinary() throws ExecutionException, InterruptedException {
+        StreamEventArgs[] receivedArgs = new StreamEventArgs[1];
+        var handler = dataStreamManager.createDataStreamHandler(args -> receivedArgs[0] = args);
+        handler.setRequestFormat(RequestFormat.SWE_BINARY);
+        var dataStreamListener = handler.addDataStreamListener(dataStream);
+        handler.connect();
+        await().until(() -> dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+
+        Instant observationTime = Instant.now();
+        pushObservation(observationTime);
+        await().until(() -> receivedArgs[0] != null);
+
+        assertEquals(RequestFormat.SWE_BINARY, receivedArgs[0].getFormat());
+        ObservationData observation = receivedArgs[0].getObservation();
+        assertNotNull(observation);
+        assertEquals(dataStream.getId(), observation.getDataStreamId());
+        assertEquals(observationTime.toEpochMilli(), observation.getPhenomenonTime().toEpochMilli());
+        assertEquals(OBS_LAT, observation.getResult().getDoubleValue(OBS_LAT_INDEX));
+    }
+
+    @Test
+    void dataStreamListener_PooledBuffers() throws ExecutionException, InterruptedException {
+        FrameBufferPool pool = new FrameBufferPool();
+        node.setFrameBufferPool(pool);
+
+        StreamEventArgs[] receivedArgs = new StreamEventArgs[1];
+        ObservationData[] receivedObservation = new ObservationData[1];
+        var handler = dataStreamManager.createDataStreamHandler(args -> {
+            receivedObservation[0] = args.getObservation();
+            receivedArgs[0] = args;
+            args.release();
+        });
+        var dataStreamListener = handler.addDataStreamListener(dataStream);
+        handler.connect();
+        await().until(() -> dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+
+        Instant observationTime = Instant.now();
+        pushObservation(observationTime);
+        await().until(() -> receivedArgs[0] != null);
+
+        assertTrue(receivedArgs[0].isPooled());
+        assertEquals(observationTime.toEpochMilli(), receivedArgs[0].getTimestamp());
+        assertEquals(observationTime, receivedObservation[0].getPhenomenonTime());
+        assertThrows(IllegalStateException.class, receivedArgs[0]::getBuffer);
+        assertEquals(1, pool.getIdleCount());
+        node.setFrameBufferPool(null);
+    }
+
+    @Test
+    void multiplexedListeners() throws ExecutionException, InterruptedException {
+        OSHDataStream otherDataStream = system.createDataStream(newDataStreamInfo("dataStream2", "dataStream2"));
+        assertNotNull(otherDataStream);
+
+        Map<OSHStream, StreamEventArgs> receivedArgs = new ConcurrentHashMap<>();
+        var handler = dataStreamManager.createDataStreamHandler(args -> receivedArgs.put(args.getStream(), args));
+        handler.setMultiplexed(true);
+        var listener1 = handler.addDataStreamListener(dataStream);
+        var listener2 = handler.addDataStreamListener(otherDataStream);
+
+        handler.connect();
+        await().until(() -> listener1.getStatus() == StreamStatus.CONNECTED && listener2.getStatus() == StreamStatus.CONNECTED);
+        assertEquals(1, handler.getMultiplexedConnections().size());
+        assertTrue(listener1.isMultiplexed());
+        assertSame(listener1.getWebSocketConnection(), listener2.getWebSocketConnection());
+
+        Instant observationTime = Instant.now();
+        pushObservation(observationTime);
+        String otherObservationID = otherDataStream.pushObservation(newObservationData(newDataBlockWithData(), observationTime));
+        assertNotNull(otherObservationID);
+
+        await().until(() -> receivedArgs.size() == 2);
+        assertEquals(dataStream.getId(), receivedArgs.get(dataStream).getObservation().getDataStreamId());
+        assertEquals(otherDataStream.getId(), receivedArgs.get(otherDataStream).getObservation().getDataStreamId());
+
+        listener1.disconnect();
+        assertEquals(StreamStatus.DISCONNECTED, listener1.getStatus());
+        assertEquals(StreamStatus.CONNECTED, listener2.getStatus());
+
+        handler.disconnect();
+        assertEquals(StreamStatus.DISCONNECTED, listener2.getStatus());
+        assertTrue(handler.getMultiplexedConnections().isEmpty());
+    }
+
+    @Test
+    void dataStreamListener_Reconnect() throws ExecutionException, InterruptedException {
+        List<StreamEventArgs> receivedArgs = new CopyOnWriteArrayList<>();
+        var handler = dataStreamManager.createDataStreamHandler(receivedArgs::add);
+        handler.setReconnectPolicy(new ReconnectPolicy(500, 1000, 2, 0, ReconnectPolicy.UNLIMITED_ATTEMPTS));
+        var dataStreamListener = handler.addDataStreamListener(dataStream);
+        handler.connect();
+        await().until(() -> dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+
+        Instant observationTime = Instant.now();
+        pushObservation(observationTime);
+        await().until(() -> receivedArgs.size() == 1);
+
+        // Drop the connection without disconnecting the listener
+        node.getWebSocketClient().stop();
+        await().until(() -> dataStreamListener.getStatus() != StreamStatus.CONNECTED);
+        Instant missedTime = observationTime.plusMillis(100);
+        pushObservation(missedTime);
+
+        await().until(() -> receivedArgs.size() == 2 && dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+        assertEquals(missedTime.toEpochMilli(), receivedArgs.get(1).getTimestamp());
+        assertEquals(missedTime.toEpochMilli(), dataStreamListener.getLastDeliveredTimestamp());
+        assertEquals(0, dataStreamListener.getReconnectAttempts());
+
+        handler.disconnect();
+        assertEquals(2, receivedArgs.size());
+    }
+
+    @Test
+    void dataStreamListener_ReconnectSameTimestamp() throws ExecutionException, InterruptedException {
+        List<StreamEventArgs> receivedArgs = new CopyOnWriteArrayList<>();
+        var handler = dataStreamManager.createDataStreamHandler(receivedArgs::add);
+        handler.setReconnectPolicy(new ReconnectPolicy(500, 1000, 2, 0, ReconnectPolicy.UNLIMITED_ATTEMPTS));
+        var dataStreamListener = handler.addDataStreamListener(dataStream);
+        handler.connect();
+        await().until(() -> dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+
+        Instant observationTime = Instant.now();
+        pushObservation(observationTime);
+        await().until(() -> receivedArgs.size() == 1);
+
+        // The missed observation shares the timestamp of the delivered one, but is a different observation
+        node.getWebSocketClient().stop();
+        await().until(() -> dataStreamListener.getStatus() != StreamStatus.CONNECTED);
+        pushObservation(observationTime);
+
+        await().until(() -> receivedArgs.size() == 2 && dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+        assertEquals(observationTime.toEpochMilli(), receivedArgs.get(1).getTimestamp());
+        assertNotEquals(receivedArgs.get(0).getObservation().getId(), receivedArgs.get(1).getObservation().getId());
+
+        handler.disconnect();
+        assertEquals(2, receivedArgs.size());
+    }
+
+    @Test
+    void dataStreamListener_ReconnectSameTimestampWithoutIds() throws ExecutionException, InterruptedException {
+        List<StreamEventArgs> receivedArgs = new CopyOnWriteArrayList<>();
+        var handler = dataStreamManager.createDataStreamHandler(receivedArgs::add);
+        handler.setReconnectPolicy(new ReconnectPolicy(500, 1000, 2, 0, ReconnectPolicy.UNLIMITED_ATTEMPTS));
+        // The live frames carry no observation ID, unlike the backfilled observations
+        handler.setRequestFormat(RequestFormat.SWE_CSV);
+        var dataStreamListener = handler.addDataStreamListener(dataStream);
+        handler.connect();
+        await().until(() -> dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+
+        Instant observationTime = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        pushObservation(observationTime);
+        await().until(() -> receivedArgs.size() == 1);
+
+        // The backfill returns both the delivered observation and the missed one, at the same timestamp
+        node.getWebSocketClient().stop();
+        await().until(() -> dataStreamListener.getStatus() != StreamStatus.CONNECTED);
+        pushObservation(observationTime);
+
+        await().until(() -> receivedArgs.size() == 2 && dataStreamListener.getStatus() == StreamStatus.CONNECTED);
+        assertEquals(RequestFormat.SWE_CSV, receivedArgs.get(0).getFormat());
+        assertEquals(RequestFormat.OM_JSON, receivedArgs.get(1).getFormat());
+        assertEquals(observationTime.toEpochMilli(), receivedArgs.get(1).getTimestamp());
+
+        handler.disconnect();
+        assertEquals(2, receivedArgs.size());
+    }
+
     private void pushObservation(Instant time) throws ExecutionException, InterruptedException {
         ObservationData observationData = newObservationData(newDataBlockWithData(), time);
         String observationID = dataStream.pushObservation(observationData);
@@ -0,0 +1,119 @@
+package org.sensorhub.oshconnect.time;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timing service whose clock only moves when {@link #advance(long)} is called,
+ * running the due tasks on the calling thread, so tests do not depend on the scheduling of a timer thread.
+ */
+class ManualTimingService implements TimingService {
+    private final List<ManualTask> tasks = new ArrayList<>();
+    private long now;
+    private boolean rejecting;
+
+    ManualTimingService(long startTime) {
+        this.now = startTime;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public synchronized ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        if (rejecting) throw new RejectedExecutionException("Rejected by the test.");
+        ManualTask scheduled = new ManualTask(task, now + unit.toMillis(delay), 0);
+        tasks.add(scheduled);
+        return scheduled;
+    }
+
+    @Override
+    public synchronized ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (rejecting) throw new RejectedExecutionException("Rejected by the test.");
+        ManualTask scheduled = new ManualTask(task, now + unit.toMillis(initialDelay), unit.toMillis(period));
+        tasks.add(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Sets whether new tasks are rejected, as by a timing service that has been shut down.
+     */
+    synchronized void setRejecting(boolean rejecting) {
+        this.rejecting = rejecting;
+    }
+
+    /**
+     * Move the clock forward, running the tasks that become due, in due time order.
+     *
+     * @param millis The duration in milliseconds, or 0 to only run the tasks already due.
+     */
+    void advance(long millis) {
+        long target;
+        synchronized (this) {
+            target = now + millis;
+        }
+
+        ManualTask task;
+        while ((task = nextDueTask(target)) != null) {
+            task.runTask();
+            synchronized (this) {
+                if (task.period > 0 && !task.isCancelled()) {
+                    task.dueTime += task.period;
+                    tasks.add(task);
+                }
+            }
+        }
+        synchronized (this) {
+            now = target;
+        }
+    }
+
+    private synchronized ManualTask nextDueTask(long target) {
+        tasks.removeIf(FutureTask::isCancelled);
+        ManualTask next = tasks.stream().min(Comparator.comparingLong(t -> t.dueTime)).orElse(null);
+        if (next == null || next.dueTime > target) return null;
+
+        tasks.remove(next);
+        now = Math.max(now, next.dueTime);
+        return next;
+    }
+
+    private class ManualTask extends FutureTask<Void> implements ScheduledFuture<Void> {
+        private final long period;
+        private long dueTime;
+
+        ManualTask(Runnable task, long dueTime, long period) {
+            super(task, null);
+            this.dueTime = dueTime;
+            this.period = period;
+        }
+
+        void runTask() {
+            if (period > 0) {
+                runAndReset();
+            } else {
+                run();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            synchronized (ManualTimingService.this) {
+                return unit.convert(dueTime - now, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
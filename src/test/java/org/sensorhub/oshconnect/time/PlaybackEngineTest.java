@@ -0,0 +1,143 @@
+package org.sensorhub.oshconnect.time;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackEngineTest {
+    /**
+     * The archive holds an event every 100 ms, whose value is its timestamp.
+     */
+    static final long EVENT_PERIOD_MS = 100;
+
+    List<Long> received;
+    AtomicInteger loadCount;
+    CountDownLatch loadGate;
+    ExecutorService loadExecutor;
+    PlaybackEngine<Long> playback;
+
+    @BeforeEach
+    void setup() {
+        received = new CopyOnWriteArrayList<>();
+        loadCount = new AtomicInteger();
+        loadGate = new CountDownLatch(0);
+        loadExecutor = Executors.newCachedThreadPool();
+        playback = new PlaybackEngine<>(this::load, received::add, loadExecutor);
+        playback.setReadAheadMS(2000);
+        playback.setTimeRange(0, 10_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        playback.close();
+        loadExecutor.shutdownNow();
+    }
+
+    List<TimeSynchronizerEvent<Long>> load(long begin, long end) {
+        loadCount.incrementAndGet();
+        try {
+            loadGate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<TimeSynchronizerEvent<Long>> events = new ArrayList<>();
+        // In reverse order, since the loader does not have to sort the events
+        for (long time = (end - 1) / EVENT_PERIOD_MS * EVENT_PERIOD_MS; time >= begin; time -= EVENT_PERIOD_MS) {
+            events.add(new TimeSynchronizerEvent<>(time, time));
+        }
+        return events;
+    }
+
+    @Test
+    void play_ServedInOrder() {
+        playback.setSpeed(50);
+        playback.play();
+        assertEquals(PlaybackState.FAST_FORWARDING, playback.getState());
+
+        await().until(() -> playback.getState() == PlaybackState.STOPPED);
+        // The last events may still be on their way to the consumer
+        await().until(() -> received.size() == 101);
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(i * EVENT_PERIOD_MS, received.get(i));
+        }
+        assertEquals(10_000, playback.getCurrentTime());
+    }
+
+    @Test
+    void play_Reverse() {
+        playback.seek(1000);
+        playback.setSpeed(-20);
+        playback.play();
+        assertEquals(PlaybackState.REWINDING, playback.getState());
+
+        await().until(() -> playback.getState() == PlaybackState.STOPPED);
+        await().until(() -> received.size() == 11);
+        assertEquals(List.of(1000L, 900L, 800L, 700L, 600L, 500L, 400L, 300L, 200L, 100L, 0L), received);
+        assertEquals(0, playback.getCurrentTime());
+    }
+
+    @Test
+    void seek_WithinBuffer() {
+        await().until(() -> playback.isBuffered(1500));
+        int loads = loadCount.get();
+
+        playback.seek(1500);
+        assertTrue(playback.isBuffered(500));
+        playback.seek(500);
+        assertEquals(500, playback.getCurrentTime());
+        assertEquals(loads, loadCount.get());
+    }
+
+    @Test
+    void pause() throws InterruptedException {
+        playback.setSpeed(5);
+        playback.play();
+        await().until(() -> received.size() >= 3);
+
+        playback.pause();
+        long position = playback.getCurrentTime();
+        // Let the events served before the pause reach the consumer
+        Thread.sleep(100);
+        int count = received.size();
+        Thread.sleep(200);
+        assertEquals(PlaybackState.STOPPED, playback.getState());
+        assertEquals(position, playback.getCurrentTime());
+        assertEquals(count, received.size());
+
+        playback.play();
+        await().until(() -> received.size() > count);
+        assertEquals(received.get(count - 1) + EVENT_PERIOD_MS, received.get(count));
+    }
+
+    @Test
+    void play_Buffering() {
+        loadGate = new CountDownLatch(1);
+        playback.seek(5000);
+        playback.play();
+        assertEquals(PlaybackState.BUFFERING, playback.getState());
+        assertEquals(5000, playback.getCurrentTime());
+        assertTrue(received.isEmpty());
+
+        loadGate.countDown();
+        await().until(() -> !received.isEmpty());
+        assertEquals(5000, received.get(0));
+        assertEquals(PlaybackState.PLAYING, playback.getState());
+    }
+
+    @Test
+    void setSpeed_Zero() {
+        assertThrows(IllegalArgumentException.class, () -> playback.setSpeed(0));
+    }
+}
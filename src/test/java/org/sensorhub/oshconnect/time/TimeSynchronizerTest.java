@@ -0,0 +1,270 @@
+package org.sensorhub.oshconnect.time;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSynchronizerTest {
+    List<Long> received;
+    TimeSynchronizer<Long> timeSynchronizer;
+
+    @BeforeEach
+    void setup() {
+        received = new CopyOnWriteArrayList<>();
+        timeSynchronizer = new TimeSynchronizer<>(received::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timeSynchronizer.disableTimeSynchronization();
+    }
+
+    @Test
+    void addEvent_Disabled() {
+        timeSynchronizer.addEvent(2, 2L);
+        timeSynchronizer.addEvent(1, 1L);
+        assertEquals(List.of(2L, 1L), received);
+    }
+
+    @Test
+    void addEvent_ServedInOrder() {
+        long now = System.currentTimeMillis();
+        var timingService = new ManualTimingService(now);
+        var synchronizer = new TimeSynchronizer<Long>(received::add, timingService, Runnable::run);
+        synchronizer.enableTimeSynchronization();
+        long delay = synchronizer.getBufferTimeMS();
+        for (long offset : new long[]{300, 100, 200, 100, 0}) {
+            synchronizer.addEvent(now - delay - offset, offset);
+        }
+        assertTrue(received.isEmpty());
+
+        timingService.advance(0);
+        assertEquals(List.of(300L, 200L, 100L, 100L, 0L), received);
+        assertEquals(0, synchronizer.getBufferedEventCount());
+        synchronizer.disableTimeSynchronization();
+    }
+
+    @Test
+    void addEvent_AfterRejectedProcessing() {
+        long now = System.currentTimeMillis();
+        var timingService = new ManualTimingService(now);
+        var synchronizer = new TimeSynchronizer<Long>(received::add, timingService, Runnable::run);
+        synchronizer.enableTimeSynchronization();
+        long dueTime = now - synchronizer.getBufferTimeMS();
+
+        timingService.setRejecting(true);
+        synchronizer.addEvent(dueTime, 0L);
+        timingService.setRejecting(false);
+
+        // The rejected processing must not stop a later one from being scheduled
+        synchronizer.addEvent(dueTime + 100, 1L);
+        timingService.advance(100);
+        assertEquals(List.of(0L, 1L), received);
+        synchronizer.disableTimeSynchronization();
+    }
+
+    @Test
+    void addEvent_HeldForBufferTime() {
+        timeSynchronizer.enableTimeSynchronization();
+        long now = System.currentTimeMillis();
+        timeSynchronizer.addEvent(now, 1L);
+        assertEquals(1, timeSynchronizer.getBufferedEventCount());
+        assertTrue(received.isEmpty());
+
+        // An earlier event is served first, even though it was added later
+        timeSynchronizer.addEvent(now - timeSynchronizer.getBufferTimeMS(), 0L);
+        await().until(() -> received.size() == 2);
+        assertEquals(List.of(0L, 1L), received);
+        assertTrue(System.currentTimeMillis() >= now + timeSynchronizer.getBufferTimeMS());
+    }
+
+    @Test
+    void addEvent_DiscardOutdatedEvents() {
+        timeSynchronizer.enableTimeSynchronization();
+        long dueTime = System.currentTimeMillis() - timeSynchronizer.getBufferTimeMS();
+        timeSynchronizer.addEvent(dueTime, 1L);
+        await().until(() -> received.size() == 1);
+
+        timeSynchronizer.addEvent(dueTime - 100, 0L);
+        timeSynchronizer.addEvent(dueTime + 100, 2L);
+        await().until(() -> received.size() == 2);
+        assertEquals(List.of(1L, 2L), received);
+    }
+
+    @Test
+    void addEvent_ConcurrentProducers() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        AtomicLong lastTimestamp = new AtomicLong();
+        AtomicBoolean inOrder = new AtomicBoolean(true);
+        long now = System.currentTimeMillis();
+        var timingService = new ManualTimingService(now);
+        var synchronizer = new TimeSynchronizer<Long>(timestamp -> {
+            count.incrementAndGet();
+            if (timestamp < lastTimestamp.getAndSet(timestamp)) {
+                inOrder.set(false);
+            }
+        }, timingService, Runnable::run);
+        synchronizer.setDiscardOutdatedEvents(false);
+        synchronizer.enableTimeSynchronization();
+
+        long dueTime = now - synchronizer.getBufferTimeMS() + 200;
+        Thread[] producers = new Thread[8];
+        for (int i = 0; i < producers.length; i++) {
+            int producer = i;
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    long timestamp = dueTime + (j * producers.length + producer) % 100;
+                    synchronizer.addEvent(timestamp, timestamp);
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(0, count.get());
+
+        // Every event is due once the clock passes the latest timestamp plus the buffer time
+        timingService.advance(300);
+        assertEquals(80000, count.get());
+        assertTrue(inOrder.get());
+        synchronizer.disableTimeSynchronization();
+    }
+
+    @Test
+    void enableTimeSynchronization_Twice() {
+        var timingService = new SharedTimingService();
+        var synchronizer = new TimeSynchronizer<Long>(received::add, timingService);
+        synchronizer.enableTimeSynchronization();
+        synchronizer.enableTimeSynchronization();
+        assertEquals(0, timingService.getScheduledTaskCount());
+
+        synchronizer.addEvent(System.currentTimeMillis(), 1L);
+        assertEquals(1, timingService.getScheduledTaskCount());
+        synchronizer.disableTimeSynchronization();
+        assertEquals(0, timingService.getScheduledTaskCount());
+        timingService.shutdown();
+    }
+
+    @Test
+    void sharedTimingService() {
+        var timingService = new SharedTimingService();
+        List<TimeSynchronizer<Long>> synchronizers = new ArrayList<>();
+        long dueTime = System.currentTimeMillis() - timeSynchronizer.getBufferTimeMS();
+        for (long i = 0; i < 100; i++) {
+            var synchronizer = new TimeSynchronizer<Long>(received::add, timingService);
+            synchronizer.enableTimeSynchronization();
+            synchronizer.addEvent(dueTime + i, i);
+            synchronizers.add(synchronizer);
+        }
+
+        await().until(() -> received.size() == 100);
+        assertEquals(0, timingService.getScheduledTaskCount());
+        synchronizers.forEach(TimeSynchronizer::disableTimeSynchronization);
+        timingService.shutdown();
+    }
+
+    @Test
+    void slowConsumer_DoesNotHoldUpTimer() {
+        var timingService = new SharedTimingService();
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        var slow = new TimeSynchronizer<Long>(event -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, timingService);
+        var fast = new TimeSynchronizer<Long>(received::add, timingService);
+        slow.enableTimeSynchronization();
+        fast.enableTimeSynchronization();
+
+        long dueTime = System.currentTimeMillis() - timeSynchronizer.getBufferTimeMS();
+        slow.addEvent(dueTime, 0L);
+        await().until(() -> threads.size() == 1);
+        fast.addEvent(dueTime, 1L);
+        await().until(() -> received.size() == 1);
+        assertFalse(threads.get(0).startsWith("oshconnect-timer-"));
+
+        blocked.countDown();
+        slow.disableTimeSynchronization();
+        fast.disableTimeSynchronization();
+        timingService.shutdown();
+    }
+
+    @Test
+    void addEvent_Watermark() {
+        timeSynchronizer.setBufferTimeMS(60_000);
+        timeSynchronizer.setWatermarkEnabled(true);
+        timeSynchronizer.enableTimeSynchronization();
+        long now = System.currentTimeMillis();
+
+        timeSynchronizer.addEvent("a", now - 1000, 1L);
+        timeSynchronizer.addEvent("b", now - 990, 2L);
+        await().until(() -> received.size() == 1);
+        assertEquals(List.of(1L), received);
+
+        timeSynchronizer.addEvent("a", now - 980, 3L);
+        await().until(() -> received.size() == 2);
+
+        // Late event: the watermark of "a" falls back behind it
+        timeSynchronizer.addEvent("a", now - 985, 4L);
+        assertEquals(5, timeSynchronizer.getLatenessMS("a"));
+        assertEquals(now - 990, timeSynchronizer.getWatermark());
+
+        timeSynchronizer.addEvent("b", now - 900, 5L);
+        await().until(() -> received.size() == 3);
+        assertEquals(List.of(1L, 2L, 4L), received);
+
+        // Without "b", only the watermark of "a" is waited for
+        timeSynchronizer.removeSource("b");
+        assertEquals(now - 985, timeSynchronizer.getWatermark());
+        assertEquals(2, timeSynchronizer.getBufferedEventCount());
+    }
+
+    @Test
+    void addSource_WaitsForFirstEvent() {
+        timeSynchronizer.setBufferTimeMS(60_000);
+        timeSynchronizer.setWatermarkEnabled(true);
+        timeSynchronizer.enableTimeSynchronization();
+        timeSynchronizer.addSource("a");
+        timeSynchronizer.addSource("b");
+        long now = System.currentTimeMillis();
+
+        // "b" has not sent an event yet, so the events of "a" are held
+        timeSynchronizer.addEvent("a", now - 1000, 1L);
+        assertEquals(Long.MIN_VALUE, timeSynchronizer.getWatermark());
+        assertEquals(1, timeSynchronizer.getBufferedEventCount());
+        assertTrue(received.isEmpty());
+
+        // The earlier event of "b" is not outdated
+        timeSynchronizer.addEvent("b", now - 1010, 0L);
+        timeSynchronizer.addEvent("b", now - 900, 2L);
+        await().until(() -> received.size() == 2);
+        assertEquals(List.of(0L, 1L), received);
+    }
+
+    @Test
+    void disableTimeSynchronization_KeepBuffer() {
+        timeSynchronizer.setDiscardBuffer(false);
+        timeSynchronizer.enableTimeSynchronization();
+        long now = System.currentTimeMillis();
+        timeSynchronizer.addEvent(now + 200, 2L);
+        timeSynchronizer.addEvent(now + 100, 1L);
+        timeSynchronizer.disableTimeSynchronization();
+        assertEquals(List.of(1L, 2L), received);
+    }
+}
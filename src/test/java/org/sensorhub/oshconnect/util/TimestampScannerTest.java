@@ -0,0 +1,86 @@
+package org.sensorhub.oshconnect.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimestampScannerTest {
+    private static final String[] DATE_TIMES = {
+            "2024-01-01T12:00:00.123Z",
+            "1969-12-31T23:59:59.5Z",
+            "2000-02-29T01:02:03Z",
+            "2024-03-10T05:06:07.123456789+02:30",
+            "1800-07-04T00:00:00-05:00"
+    };
+
+    @Test
+    void scanJson() {
+        for (String dateTime : DATE_TIMES) {
+            byte[] data = bytes("{\"id\":\"abc\", \"phenomenonTime\" : \"" + dateTime + "\",\"result\":{\"temp\":1.0}}");
+            assertEquals(epochMillis(dateTime), TimestampScanner.scanJson(data, 0, data.length));
+        }
+    }
+
+    @Test
+    void scanJson_NoPhenomenonTime() {
+        byte[] data = bytes("{\"id\":\"abc\",\"resultTime\":\"2024-01-01T12:00:00Z\"}");
+        assertEquals(TimestampScanner.NOT_FOUND, TimestampScanner.scanJson(data, 0, data.length));
+    }
+
+    @Test
+    void scanXml() {
+        for (String dateTime : DATE_TIMES) {
+            byte[] data = bytes("<swe:DataRecord><swe:label>1234</swe:label><swe:time>" + dateTime + "</swe:time></swe:DataRecord>");
+            assertEquals(epochMillis(dateTime), TimestampScanner.scanXml(data, 0, data.length));
+        }
+    }
+
+    @Test
+    void scanCsv() {
+        for (String dateTime : DATE_TIMES) {
+            byte[] data = bytes(dateTime + ",1.0,2.0\n");
+            assertEquals(epochMillis(dateTime), TimestampScanner.scanCsv(data, 0, data.length));
+        }
+    }
+
+    @Test
+    void scanCsv_Invalid() {
+        byte[] data = bytes("2024-13-01T12:00:00Z,1.0");
+        assertEquals(TimestampScanner.NOT_FOUND, TimestampScanner.scanCsv(data, 0, data.length));
+    }
+
+    @Test
+    void scanBinary() {
+        byte[] data = ByteBuffer.allocate(16).putDouble(1700000000.25).putDouble(1.0).array();
+        assertEquals(1700000000250L, TimestampScanner.scanBinary(data, 0, data.length));
+        assertEquals(TimestampScanner.NOT_FOUND, TimestampScanner.scanBinary(data, 0, 4));
+    }
+
+    @Test
+    void scan_WithOffset() {
+        byte[] data = bytes("xxxx2024-01-01T12:00:00.123Z,1.0");
+        assertEquals(epochMillis("2024-01-01T12:00:00.123Z"), TimestampScanner.scanCsv(data, 4, data.length - 4));
+    }
+
+    @Test
+    void startsWithDateTime() {
+        byte[] text = bytes("2024-01-01T12:00:00Z,1.0");
+        assertTrue(TimestampScanner.startsWithDateTime(text, 0, text.length));
+        byte[] shortData = bytes("2024");
+        assertFalse(TimestampScanner.startsWithDateTime(shortData, 0, shortData.length));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long epochMillis(String dateTime) {
+        return OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+    }
+}